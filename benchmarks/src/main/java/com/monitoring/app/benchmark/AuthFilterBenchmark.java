@@ -0,0 +1,72 @@
+package com.monitoring.app.benchmark;
+
+import com.monitoring.app.security.AuthenticationFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Authentication of an API request, with the access token of the seeded user and with an unknown one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AuthFilterBenchmark {
+
+    private static final String VALID_TOKEN = "93f39e2f-80de-4033-99ee-249d92736a25";
+    private static final String UNKNOWN_TOKEN = "00000000-0000-0000-0000-000000000000";
+    private static final FilterChain NO_OP_CHAIN = (request, response) -> { };
+
+    private ConfigurableApplicationContext context;
+    private AuthenticationFilter authenticationFilter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start("auth");
+        authenticationFilter = context.getBean(AuthenticationFilter.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int validToken() throws ServletException, IOException {
+        return authenticate(VALID_TOKEN);
+    }
+
+    @Benchmark
+    public int unknownToken() throws ServletException, IOException {
+        return authenticate(UNKNOWN_TOKEN);
+    }
+
+    private int authenticate(String accessToken) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/endpoints");
+        request.setServletPath("/api/endpoints");
+        request.addHeader("X-Access-Token", accessToken);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        authenticationFilter.doFilter(request, response, NO_OP_CHAIN);
+        return response.getStatus();
+    }
+}
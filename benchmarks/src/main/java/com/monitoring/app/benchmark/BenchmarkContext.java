@@ -0,0 +1,44 @@
+package com.monitoring.app.benchmark;
+
+import com.monitoring.app.MonitoringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Starts the application without a web server against an in-memory H2 database in MySQL mode
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    /**
+     * Start the application context
+     *
+     * @param databaseName name of the in-memory database, one per benchmark keeps their data apart
+     * @return the running context, to be closed by the caller
+     */
+    static ConfigurableApplicationContext start(String databaseName) {
+        // Passed as arguments, so they take precedence over application.properties
+        return new SpringApplicationBuilder(MonitoringApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(
+                        "--spring.datasource.url=jdbc:h2:mem:" + databaseName
+                                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                        "--spring.jpa.show-sql=false",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.monitoring=WARN",
+                        "--logging.level.org.hibernate.SQL=WARN",
+                        "--logging.level.org.hibernate.type.descriptor.sql.BasicBinder=WARN",
+                        "--monitoring.retention.enabled=false",
+                        "--monitoring.payload.migration-enabled=false",
+                        "--monitoring.export.fetch-size=1000"
+                );
+    }
+}
@@ -0,0 +1,110 @@
+package com.monitoring.app.benchmark;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.config.ProbeHttpClientConfig;
+import com.monitoring.app.probe.ProbeExecutor;
+import com.monitoring.app.probe.ProbeRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes through the pooled HTTP client against a local stub server, from submission to the result
+ * callback. Reported per probe, for the default and a raised connection limit per host.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ProbeThroughputBenchmark {
+
+    private static final int PROBES = 1000;
+
+    @Param({"8", "64"})
+    private int maxConnectionsPerHost;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private CloseableHttpClient httpClient;
+    private ProbeExecutor probeExecutor;
+    private ProbeRequest request;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        byte[] body = new byte[512];
+        Arrays.fill(body, (byte) 'x');
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            exchange.getResponseHeaders().add("Content-Type", "text/plain");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        serverExecutor = Executors.newFixedThreadPool(64);
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getProbeClient().setMaxConnectionsPerHost(maxConnectionsPerHost);
+        // Wired by hand, the benchmark needs the probe client but none of the rest of the application
+        ProbeHttpClientConfig config = new ProbeHttpClientConfig();
+        PoolingHttpClientConnectionManager connectionManager =
+                config.probeConnectionManager(properties, new SimpleMeterRegistry());
+        httpClient = config.probeHttpClient(connectionManager, properties);
+        RestTemplate restTemplate = config.restTemplate(new RestTemplateBuilder(),
+                config.probeRequestFactory(httpClient, properties));
+        probeExecutor = new ProbeExecutor(restTemplate, properties);
+        request = new ProbeRequest("http://127.0.0.1:" + server.getAddress().getPort() + "/", null, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        probeExecutor.shutdown();
+        httpClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROBES)
+    public void probe() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(PROBES);
+        for (int i = 0; i < PROBES; i++) {
+            // All probe slots busy, wait for one like the dispatcher would on its next tick
+            while (!probeExecutor.trySubmit(request, result -> done.countDown())) {
+                Thread.onSpinWait();
+            }
+        }
+        done.await();
+    }
+}
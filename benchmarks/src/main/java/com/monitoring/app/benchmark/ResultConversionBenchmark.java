@@ -0,0 +1,79 @@
+package com.monitoring.app.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.repository.MonitoringResultRepository;
+import com.monitoring.app.service.MonitoringResultRow;
+import com.monitoring.app.service.MonitoringResultService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning a page of result rows into the API response: DTO conversion through
+ * {@link MonitoringResultService#getLatestResults} and JSON serialization. The repository is stubbed
+ * to return the same page, so only the conversion is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResultConversionBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    private MonitoringResultService monitoringResultService;
+    private ObjectMapper objectMapper;
+    private List<MonitoringResultDto> dtos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        LocalDateTime checkDate = LocalDateTime.now();
+        List<MonitoringResultRow> results = new ArrayList<>(PAGE_SIZE);
+        for (long id = 1; id <= PAGE_SIZE; id++) {
+            results.add(new MonitoringResultRow(id, checkDate.plusSeconds(id), 200,
+                    "{\"status\":\"UP\",\"id\":" + id + "}", null, 24L, null, 15L, 1L, 1, null));
+        }
+        MonitoringResultRepository repository = (MonitoringResultRepository) Proxy.newProxyInstance(
+                MonitoringResultRepository.class.getClassLoader(),
+                new Class<?>[]{MonitoringResultRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findLatestByEndpointId")) {
+                        return results;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+
+        // Inline payloads, so the conversion does not need the payload store
+        monitoringResultService = new MonitoringResultService(repository, null, null, null, null, null, null);
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        dtos = monitoringResultService.getLatestResults(1L, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<MonitoringResultDto> convert() {
+        return monitoringResultService.getLatestResults(1L, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public String serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(dtos);
+    }
+}
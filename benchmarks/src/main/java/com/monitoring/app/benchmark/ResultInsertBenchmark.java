@@ -0,0 +1,98 @@
+package com.monitoring.app.benchmark;
+
+import com.monitoring.app.service.MonitoringResultService;
+import com.monitoring.app.service.PendingResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persisting a writer batch of check results: payload deduplication, the result inserts, rollups and
+ * last check dates, in one transaction against H2. Reported per result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ResultInsertBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+    private static final int DISTINCT_PAYLOADS = 10;
+    private static final String SEEDED_USER_TOKEN = "93f39e2f-80de-4033-99ee-249d92736a25";
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+    private MonitoringResultService monitoringResultService;
+    private Long endpointId;
+    private String[] payloads;
+    private LocalDateTime checkDate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = BenchmarkContext.start("insert");
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        monitoringResultService = context.getBean(MonitoringResultService.class);
+
+        // Inserted directly, so the running scheduler does not start probing it
+        Long ownerId = jdbcTemplate.queryForObject("SELECT id FROM users WHERE access_token = ?",
+                Long.class, SEEDED_USER_TOKEN);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.update("INSERT INTO monitored_endpoints (name, url, creation_date, monitoring_interval, " +
+                        "owner_id, deleted, modified_at) VALUES (?, ?, ?, ?, ?, FALSE, ?)",
+                "benchmark", "http://127.0.0.1/benchmark", now, 60, ownerId, now);
+        endpointId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM monitored_endpoints", Long.class);
+
+        payloads = new String[DISTINCT_PAYLOADS];
+        for (int i = 0; i < DISTINCT_PAYLOADS; i++) {
+            char[] body = new char[1024];
+            Arrays.fill(body, (char) ('a' + i));
+            payloads[i] = new String(body);
+        }
+        checkDate = LocalDateTime.now();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearResults() {
+        jdbcTemplate.update("DELETE FROM monitoring_results");
+        jdbcTemplate.update("DELETE FROM result_rollups");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void saveBatch() {
+        List<PendingResult> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            checkDate = checkDate.plusSeconds(1);
+            String payload = payloads[i % DISTINCT_PAYLOADS];
+            batch.add(new PendingResult(endpointId, checkDate, 200, payload, (long) payload.length(),
+                    null, 15L, false));
+        }
+        monitoringResultService.saveResults(batch);
+    }
+}
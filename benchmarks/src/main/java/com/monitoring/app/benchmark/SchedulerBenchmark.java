@@ -0,0 +1,82 @@
+package com.monitoring.app.benchmark;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One scheduler tick: take up to a probe pool's worth of due endpoints out of the deadline heap and
+ * re-queue them as checked. The virtual clock advances a second per tick, so large schedules keep a backlog.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SchedulerBenchmark {
+
+    private static final int PROBE_SLOTS = 256;
+
+    @Param({"10000", "100000", "1000000"})
+    private int endpoints;
+
+    private EndpointScheduler scheduler;
+    private LocalDateTime now;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        now = LocalDateTime.now();
+        List<ScheduledEndpoint> schedules = new ArrayList<>(endpoints);
+        for (long id = 1; id <= endpoints; id++) {
+            int interval = 30 + random.nextInt(270);
+            schedules.add(new ScheduledEndpoint(id, 1L, "https://example.com/" + id, interval, null, null,
+                    now.minusSeconds(random.nextInt(interval))));
+        }
+
+        MonitoredEndpointRepository repository = (MonitoredEndpointRepository) Proxy.newProxyInstance(
+                MonitoredEndpointRepository.class.getClassLoader(),
+                new Class<?>[]{MonitoredEndpointRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findAllSchedules")) {
+                        return schedules;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        scheduler = new EndpointScheduler(repository, new MonitoringProperties(), Clock.systemDefaultZone());
+        scheduler.init();
+    }
+
+    @Benchmark
+    public int tick() {
+        now = now.plusSeconds(1);
+        List<ScheduledEndpoint> due = scheduler.pollDue(now, PROBE_SLOTS);
+        for (ScheduledEndpoint endpoint : due) {
+            scheduler.recordOutcome(endpoint, null);
+            scheduler.complete(endpoint, now);
+        }
+        return due.size();
+    }
+}
@@ -0,0 +1,535 @@
+package com.monitoring.app.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@ConfigurationProperties(prefix = "monitoring")
+public class MonitoringProperties {
+
+    private Scheduler scheduler = new Scheduler();
+    private Probe probe = new Probe();
+    private ProbeClient probeClient = new ProbeClient();
+    private Backoff backoff = new Backoff();
+    private Coalescing coalescing = new Coalescing();
+    private Fairness fairness = new Fairness();
+    private Persistence persistence = new Persistence();
+    private Payload payload = new Payload();
+    private Auth auth = new Auth();
+    private RateLimit rateLimit = new RateLimit();
+    private RecentResults recentResults = new RecentResults();
+    private Latency latency = new Latency();
+    private Rollup rollup = new Rollup();
+    private Retention retention = new Retention();
+    private Deletion deletion = new Deletion();
+    private Stream stream = new Stream();
+    private Export export = new Export();
+    private BulkImport bulkImport = new BulkImport();
+    private Cluster cluster = new Cluster();
+
+    @Data
+    public static class Scheduler {
+        /**
+         * How long the most overdue endpoint may wait for its check, or the scheduler may go without a tick,
+         * before the scheduler health turns DOWN
+         */
+        private Duration maxLag = Duration.ofMinutes(1);
+
+        /**
+         * Whether every endpoint is checked at a fixed phase within its interval, derived from its ID,
+         * so endpoints created or restarted together do not keep firing in the same second
+         */
+        private boolean phaseSpread = true;
+
+        /**
+         * Endpoints overdue after downtime are checked spread over this window instead of all at once
+         */
+        private Duration catchUpWindow = Duration.ofMinutes(1);
+
+        /**
+         * Most checks started per scheduler tick, the rest stay due for the next tick
+         */
+        private int maxChecksPerTick = 1000;
+    }
+
+    @Data
+    public static class Probe {
+        /**
+         * Maximum number of probes running at the same time
+         */
+        private int concurrency = 256;
+
+        /**
+         * Timeout for establishing the connection to a monitored URL
+         */
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        /**
+         * Timeout for waiting on data from a monitored URL
+         */
+        private Duration readTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Upper bound of a whole check, from waiting for a connection to the last body byte
+         */
+        private Duration totalTimeout = Duration.ofSeconds(30);
+
+        /**
+         * Default number of body bytes stored per check for endpoints without their own capture limit
+         */
+        private DataSize captureLimit = DataSize.ofKilobytes(64);
+
+        /**
+         * Upper bound of stored body bytes for any endpoint, including the ones in full capture mode
+         */
+        private DataSize maxCaptureSize = DataSize.ofMegabytes(10);
+
+        /**
+         * Whether the whole body is read to record its length and hash, also past the capture limit and for
+         * endpoints capturing no body. Otherwise reading stops at the capture limit and the connection is
+         * dropped, and length and hash are only recorded for bodies that fit within the limit.
+         */
+        private boolean fullBodyHash = true;
+
+        /**
+         * How long shutdown waits for in-flight probes to finish
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class ProbeClient {
+        /**
+         * Maximum number of pooled connections to all monitored hosts together
+         */
+        private int maxConnections = 512;
+
+        /**
+         * Maximum number of connections to one host, further checks of the host wait for a free one
+         */
+        private int maxConnectionsPerHost = 8;
+
+        /**
+         * Maximum time a check waits for a pooled connection
+         */
+        private Duration poolTimeout = Duration.ofSeconds(5);
+
+        /**
+         * How long an idle connection is kept when the server does not send a Keep-Alive timeout
+         */
+        private Duration keepAlive = Duration.ofSeconds(30);
+
+        /**
+         * Idle connections are closed after this time, bounds the keep-alive announced by servers
+         */
+        private Duration idleTimeout = Duration.ofMinutes(1);
+
+        /**
+         * Connections idle for longer than this are checked for staleness before being reused
+         */
+        private Duration validateAfterInactivity = Duration.ofSeconds(2);
+
+        /**
+         * Whether gzip and deflate responses are requested and decoded, stored bodies are always decoded
+         */
+        private boolean compression = true;
+    }
+
+    @Data
+    public static class Backoff {
+        /**
+         * Whether endpoints that keep failing are checked less often until they recover
+         */
+        private boolean enabled = true;
+
+        /**
+         * Consecutive failed checks after which the circuit of an endpoint opens and its checks back off
+         */
+        private int failureThreshold = 3;
+
+        /**
+         * Factor the delay between checks grows by with each further failure while the circuit is open
+         */
+        private double multiplier = 2.0;
+
+        /**
+         * Longest delay between checks of a failing endpoint, never shorter than its own interval
+         */
+        private Duration maxDelay = Duration.ofHours(1);
+
+        /**
+         * Whether a failure identical to the previous one only increments the repeat count of its result
+         */
+        private boolean collapseRepeats = true;
+    }
+
+    @Data
+    public static class Coalescing {
+        /**
+         * Whether endpoints probing the same URL with the same capture settings share one request
+         */
+        private boolean enabled = true;
+
+        /**
+         * Endpoints sharing a probe that fall due within this window are checked early with it
+         */
+        private Duration window = Duration.ofSeconds(5);
+    }
+
+    @Data
+    public static class Fairness {
+        /**
+         * Whether due checks are dispatched round-robin across users instead of strictly by due time
+         */
+        private boolean enabled = true;
+
+        /**
+         * Quota of users without an entry of their own
+         */
+        private Tenant defaults = new Tenant();
+
+        /**
+         * Quotas of single users by user ID, e.g. monitoring.fairness.tenants.42.weight=4,
+         * replacing the defaults entirely
+         */
+        private Map<Long, Tenant> tenants = new HashMap<>();
+
+        /**
+         * Whether check lateness is reported per user, which adds a meter per user
+         */
+        private boolean tenantMetrics = false;
+    }
+
+    @Data
+    public static class Tenant {
+        /**
+         * Share of the probe capacity relative to the other users with due checks
+         */
+        private int weight = 1;
+
+        /**
+         * Most checks of the user running at once, 0 for no limit
+         */
+        private int maxConcurrency = 0;
+
+        /**
+         * Most checks of the user started per second, 0 for no limit
+         */
+        private double maxRate = 0;
+    }
+
+    @Data
+    public static class Persistence {
+        /**
+         * Maximum number of results waiting to be written, probes block when it is full
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * Maximum number of results written in one batch
+         */
+        private int batchSize = 100;
+
+        /**
+         * Maximum time a result waits for its batch to fill up
+         */
+        private Duration flushInterval = Duration.ofMillis(500);
+
+        /**
+         * How long shutdown waits for the queue to be drained
+         */
+        private Duration shutdownTimeout = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Payload {
+        /**
+         * Memory used for caching decompressed payloads on the read path
+         */
+        private DataSize cacheSize = DataSize.ofMegabytes(16);
+
+        /**
+         * Number of payload hashes remembered as already stored, to skip the existence check
+         */
+        private int knownHashes = 100000;
+
+        /**
+         * How long a payload content stays unreferenced before the retention job purges it, zero keeps it forever.
+         * Known hashes are checked again after half of it.
+         */
+        private Duration orphanGrace = Duration.ofHours(1);
+
+        /**
+         * Whether payloads of rows written before deduplication are moved to the payload store
+         */
+        private boolean migrationEnabled = true;
+
+        /**
+         * Number of legacy rows migrated per run of the migration job
+         */
+        private int migrationBatchSize = 500;
+    }
+
+    @Data
+    public static class Auth {
+        /**
+         * Maximum number of valid access tokens kept in memory
+         */
+        private int cacheSize = 10000;
+
+        /**
+         * How long a valid access token is trusted without asking the database
+         */
+        private Duration cacheTtl = Duration.ofMinutes(5);
+
+        /**
+         * Maximum number of unknown access tokens kept in memory
+         */
+        private int negativeCacheSize = 10000;
+
+        /**
+         * How long an unknown access token is rejected without asking the database
+         */
+        private Duration negativeCacheTtl = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class RateLimit {
+        /**
+         * Whether API requests are limited per access token
+         */
+        private boolean enabled = true;
+
+        /**
+         * Limit of users without an entry of their own
+         */
+        private Limit defaults = new Limit();
+
+        /**
+         * Limits of single users by user ID, e.g. monitoring.rate-limit.users.42.requests-per-second=50,
+         * replacing the defaults entirely
+         */
+        private Map<Long, Limit> users = new HashMap<>();
+
+        /**
+         * Maximum number of access tokens whose request budget is kept in memory
+         */
+        private int cacheSize = 10000;
+
+        /**
+         * How long the budget of an unused access token is kept, it starts out full again afterwards
+         */
+        private Duration idleTimeout = Duration.ofMinutes(10);
+    }
+
+    @Data
+    public static class Limit {
+        /**
+         * Sustained number of requests per second, 0 for no limit
+         */
+        private double requestsPerSecond = 10;
+
+        /**
+         * Number of requests that can be made at once after a quiet period
+         */
+        private int burst = 20;
+    }
+
+    @Data
+    public static class RecentResults {
+        /**
+         * Number of latest results kept in memory per endpoint
+         */
+        private int size = 10;
+
+        /**
+         * Upper bound of memory used by the latest results of all endpoints
+         */
+        private DataSize maxMemory = DataSize.ofMegabytes(64);
+    }
+
+    @Data
+    public static class Latency {
+        /**
+         * Highest latency tracked exactly, slower probes are recorded as this value
+         */
+        private Duration highestTrackable = Duration.ofMinutes(1);
+
+        /**
+         * Number of significant decimal digits kept by the latency histograms
+         */
+        private int significantDigits = 2;
+
+        /**
+         * Upper bound of memory used by the latency histograms of all endpoints
+         */
+        private DataSize maxMemory = DataSize.ofMegabytes(64);
+    }
+
+    @Data
+    public static class Rollup {
+        /**
+         * Maximum number of buckets returned by a history request, finer resolutions are used while they fit
+         */
+        private int maxPoints = 720;
+
+        /**
+         * History range returned when the request does not specify one
+         */
+        private Duration defaultRange = Duration.ofDays(1);
+    }
+
+    @Data
+    public static class Retention {
+        /**
+         * Whether old results and rollups are purged
+         */
+        private boolean enabled = true;
+
+        /**
+         * How long results are kept for endpoints without their own retention, zero keeps them forever
+         */
+        private Duration results = Duration.ofDays(90);
+
+        /**
+         * How many newest results are kept per endpoint without its own retention, zero means no limit
+         */
+        private int resultRows = 0;
+
+        /**
+         * How long minute rollups are kept, zero keeps them forever
+         */
+        private Duration minuteRollups = Duration.ofDays(7);
+
+        /**
+         * How long hour rollups are kept, zero keeps them forever
+         */
+        private Duration hourRollups = Duration.ofDays(180);
+
+        /**
+         * How long day rollups are kept, zero keeps them forever
+         */
+        private Duration dayRollups = Duration.ZERO;
+
+        /**
+         * Maximum number of rows removed by one delete statement
+         */
+        private int batchSize = 1000;
+
+        /**
+         * Pause after each delete statement, keeps lock time and replication lag low
+         */
+        private Duration pause = Duration.ofMillis(50);
+
+        /**
+         * Maximum time spent purging per run, the next run continues where this one stopped
+         */
+        private Duration maxRunTime = Duration.ofMinutes(1);
+    }
+
+    @Data
+    public static class Deletion {
+        /**
+         * Maximum number of results of a deleted endpoint removed by one delete statement
+         */
+        private int batchSize = 5000;
+
+        /**
+         * Pause after each delete statement, keeps lock time and replication lag low
+         */
+        private Duration pause = Duration.ofMillis(20);
+
+        /**
+         * Maximum time spent purging deleted endpoints per run
+         */
+        private Duration maxRunTime = Duration.ofSeconds(30);
+    }
+
+    @Data
+    public static class Stream {
+        /**
+         * Maximum number of events waiting to be sent to one subscriber, the oldest are dropped beyond it
+         */
+        private int bufferSize = 256;
+
+        /**
+         * Number of latest events kept for subscribers resuming with Last-Event-ID
+         */
+        private int replaySize = 10000;
+
+        /**
+         * Maximum number of open streams per user
+         */
+        private int maxSubscribersPerUser = 16;
+
+        /**
+         * Number of threads sending events to subscribers
+         */
+        private int dispatchThreads = 4;
+
+        /**
+         * How long a stream stays open before the client has to reconnect
+         */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        /**
+         * How long a write to one subscriber may block before the subscriber is dropped, checked with the heartbeat
+         */
+        private Duration sendTimeout = Duration.ofSeconds(10);
+
+        /**
+         * Subscribers losing events this many times in a row are dropped, the client resumes after reconnecting
+         */
+        private int maxOverflows = 3;
+    }
+
+    @Data
+    public static class Export {
+        /**
+         * JDBC fetch size of export queries, Integer.MIN_VALUE makes MySQL Connector/J stream rows one by one
+         */
+        private int fetchSize = Integer.MIN_VALUE;
+    }
+
+    @Data
+    public static class BulkImport {
+        /**
+         * Endpoints written per transaction
+         */
+        private int batchSize = 500;
+
+        /**
+         * Maximum number of endpoints in one import request, the rest is rejected
+         */
+        private int maxItems = 50000;
+    }
+
+    @Data
+    public static class Cluster {
+        /**
+         * Whether several instances share the endpoints through partition leases,
+         * a single instance checks all endpoints otherwise
+         */
+        private boolean enabled = false;
+
+        /**
+         * Number of partitions endpoints are spread over, must be the same on all instances
+         */
+        private int partitions = 64;
+
+        /**
+         * How long a lease stays valid without renewal, partitions of a dead instance move after it
+         */
+        private Duration leaseDuration = Duration.ofSeconds(30);
+
+        /**
+         * Name of this instance in the lease table, a random one is generated when empty
+         */
+        private String nodeId;
+    }
+}
@@ -0,0 +1,251 @@
+package com.monitoring.app.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client used by the probes. Connections are pooled and kept alive per host, so repeated checks
+ * of a host skip the TCP and TLS handshakes, and the number of connections to one host is capped so
+ * a burst of checks against it cannot exhaust local ports.
+ */
+@Configuration
+public class ProbeHttpClientConfig {
+
+    @Bean
+    public PoolingHttpClientConnectionManager probeConnectionManager(MonitoringProperties properties,
+                                                                     MeterRegistry meterRegistry) {
+        MonitoringProperties.ProbeClient client = properties.getProbeClient();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(client.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(client.getMaxConnectionsPerHost());
+        connectionManager.setValidateAfterInactivity((int) client.getValidateAfterInactivity().toMillis());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "probe").bindTo(meterRegistry);
+        return connectionManager;
+    }
+
+    @Bean
+    public CloseableHttpClient probeHttpClient(PoolingHttpClientConnectionManager probeConnectionManager,
+                                               MonitoringProperties properties) {
+        MonitoringProperties.Probe probe = properties.getProbe();
+        MonitoringProperties.ProbeClient client = properties.getProbeClient();
+        long keepAliveMillis = client.getKeepAlive().toMillis();
+        long idleTimeoutMillis = client.getIdleTimeout().toMillis();
+
+        // Servers announcing a Keep-Alive timeout are trusted up to the idle timeout
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long announced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return announced > 0 ? Math.min(announced, idleTimeoutMillis) : keepAliveMillis;
+        };
+
+        HttpClientBuilder builder = HttpClientBuilder.create()
+                .setConnectionManager(probeConnectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+                .evictExpiredConnections()
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout((int) probe.getConnectTimeout().toMillis())
+                        .setSocketTimeout((int) probe.getReadTimeout().toMillis())
+                        .setConnectionRequestTimeout((int) client.getPoolTimeout().toMillis())
+                        .build())
+                // A retried check would report the latency of several attempts
+                .disableAutomaticRetries()
+                .disableCookieManagement();
+        if (!client.isCompression()) {
+            builder.disableContentCompression();
+        }
+        return builder.build();
+    }
+
+    @Bean
+    public HttpComponentsClientHttpRequestFactory probeRequestFactory(CloseableHttpClient probeHttpClient,
+                                                                      MonitoringProperties properties) {
+        return new TotalTimeoutRequestFactory(probeHttpClient, properties.getProbe().getTotalTimeout().toMillis());
+    }
+
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder restTemplateBuilder,
+                                     HttpComponentsClientHttpRequestFactory probeRequestFactory) {
+        return restTemplateBuilder
+                .requestFactory(() -> probeRequestFactory)
+                // 4xx and 5xx responses are check results like any other, with their status, body and latency
+                .errorHandler(new IgnoringResponseErrorHandler())
+                .build();
+    }
+
+    private static final class IgnoringResponseErrorHandler implements ResponseErrorHandler {
+
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+
+        @Override
+        public void handleError(ClientHttpResponse response) {
+        }
+    }
+
+    /**
+     * Aborts requests that are still running after the total timeout, which connect and socket
+     * timeouts alone do not bound when a server keeps trickling bytes. The abort is cancelled as soon
+     * as the response is closed, so finished probes leave nothing behind in the timer.
+     */
+    private static final class TotalTimeoutRequestFactory extends HttpComponentsClientHttpRequestFactory {
+
+        private final long totalTimeoutMillis;
+        private final ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "probe-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Hands the request created by the superclass over to createRequest on the same thread
+        private final ThreadLocal<HttpRequestBase> createdRequest = new ThreadLocal<>();
+
+        private TotalTimeoutRequestFactory(CloseableHttpClient httpClient, long totalTimeoutMillis) {
+            super(httpClient);
+            this.totalTimeoutMillis = totalTimeoutMillis;
+            timer.setRemoveOnCancelPolicy(true);
+        }
+
+        @Override
+        public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+            try {
+                ClientHttpRequest request = super.createRequest(uri, httpMethod);
+                HttpRequestBase httpRequest = createdRequest.get();
+                return httpRequest != null ? new TotalTimeoutRequest(request, httpRequest) : request;
+            } finally {
+                createdRequest.remove();
+            }
+        }
+
+        @Override
+        protected HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+            HttpUriRequest request = super.createHttpUriRequest(httpMethod, uri);
+            if (request instanceof HttpRequestBase) {
+                createdRequest.set((HttpRequestBase) request);
+            }
+            return request;
+        }
+
+        @Override
+        public void destroy() throws Exception {
+            timer.shutdownNow();
+            super.destroy();
+        }
+
+        private final class TotalTimeoutRequest implements ClientHttpRequest {
+
+            private final ClientHttpRequest request;
+            private final HttpRequestBase httpRequest;
+
+            private TotalTimeoutRequest(ClientHttpRequest request, HttpRequestBase httpRequest) {
+                this.request = request;
+                this.httpRequest = httpRequest;
+            }
+
+            @Override
+            public ClientHttpResponse execute() throws IOException {
+                ScheduledFuture<?> abort = timer.schedule(httpRequest::abort, totalTimeoutMillis, TimeUnit.MILLISECONDS);
+                try {
+                    return new TotalTimeoutResponse(request.execute(), abort);
+                } catch (IOException | RuntimeException e) {
+                    abort.cancel(false);
+                    throw e;
+                }
+            }
+
+            @Override
+            public HttpMethod getMethod() {
+                return request.getMethod();
+            }
+
+            @Override
+            public String getMethodValue() {
+                return request.getMethodValue();
+            }
+
+            @Override
+            public URI getURI() {
+                return request.getURI();
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return request.getHeaders();
+            }
+
+            @Override
+            public OutputStream getBody() throws IOException {
+                return request.getBody();
+            }
+        }
+    }
+
+    private static final class TotalTimeoutResponse implements ClientHttpResponse {
+
+        private final ClientHttpResponse response;
+        private final ScheduledFuture<?> abort;
+
+        private TotalTimeoutResponse(ClientHttpResponse response, ScheduledFuture<?> abort) {
+            this.response = response;
+            this.abort = abort;
+        }
+
+        @Override
+        public HttpStatus getStatusCode() throws IOException {
+            return response.getStatusCode();
+        }
+
+        @Override
+        public int getRawStatusCode() throws IOException {
+            return response.getRawStatusCode();
+        }
+
+        @Override
+        public String getStatusText() throws IOException {
+            return response.getStatusText();
+        }
+
+        @Override
+        public HttpHeaders getHeaders() {
+            return response.getHeaders();
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return response.getBody();
+        }
+
+        @Override
+        public void close() {
+            abort.cancel(false);
+            response.close();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.monitoring.app.config;
 
 import com.monitoring.app.security.AuthenticationFilter;
+import com.monitoring.app.security.RateLimitFilter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
@@ -11,14 +12,26 @@ import org.springframework.context.annotation.Configuration;
 public class SecurityConfig {
 
     private final AuthenticationFilter authenticationFilter;
+    private final RateLimitFilter rateLimitFilter;
 
     @Bean
     public FilterRegistrationBean<AuthenticationFilter> authenticationFilterRegistration() {
         FilterRegistrationBean<AuthenticationFilter> registration = new FilterRegistrationBean<>();
         registration.setFilter(authenticationFilter);
-        registration.addUrlPatterns("/api/endpoints/*");
+        registration.addUrlPatterns("/api/endpoints/*", "/api/users/*");
         registration.setName("authenticationFilter");
         registration.setOrder(1);
         return registration;
     }
+
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration() {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>();
+        registration.setFilter(rateLimitFilter);
+        registration.addUrlPatterns("/api/endpoints/*", "/api/users/*");
+        registration.setName("rateLimitFilter");
+        // After authentication, which identifies the user whose limit applies
+        registration.setOrder(2);
+        return registration;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,33 @@
+package com.monitoring.app.controller;
+
+import com.monitoring.app.dto.EndpointImportDto;
+import com.monitoring.app.model.User;
+import com.monitoring.app.service.EndpointImportService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/endpoints")
+@RequiredArgsConstructor
+public class EndpointImportController {
+
+    private final EndpointImportService endpointImportService;
+
+    /**
+     * Create or update many endpoints from a JSON array or NDJSON body, read as it arrives
+     */
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_JSON_VALUE, EndpointImportService.NDJSON})
+    public ResponseEntity<EndpointImportDto> importEndpoints(HttpServletRequest request) throws IOException {
+        User user = (User) request.getAttribute("user");
+        boolean ndjson = MediaType.parseMediaType(request.getContentType())
+                .isCompatibleWith(MediaType.parseMediaType(EndpointImportService.NDJSON));
+        return ResponseEntity.ok(endpointImportService.importEndpoints(request.getInputStream(), ndjson, user));
+    }
+}
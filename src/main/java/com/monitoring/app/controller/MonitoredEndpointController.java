@@ -1,18 +1,25 @@
 package com.monitoring.app.controller;
 
+import com.monitoring.app.dto.EndpointDeletionDto;
+import com.monitoring.app.dto.HistoryDto;
+import com.monitoring.app.dto.LatencyStatsDto;
 import com.monitoring.app.dto.MonitoredEndpointDto;
-import com.monitoring.app.model.MonitoredEndpoint;
+import com.monitoring.app.model.RollupResolution;
 import com.monitoring.app.model.User;
-import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.service.LatencyTracker;
 import com.monitoring.app.service.MonitoredEndpointService;
 import com.monitoring.app.service.MonitoringResultService;
+import com.monitoring.app.service.RecentResultsCache;
+import com.monitoring.app.service.RollupService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -22,7 +29,9 @@ public class MonitoredEndpointController {
 
     private final MonitoredEndpointService monitoredEndpointService;
     private final MonitoringResultService monitoringResultService;
-    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final RecentResultsCache recentResultsCache;
+    private final LatencyTracker latencyTracker;
+    private final RollupService rollupService;
 
     /**
      * Get all endpoints for authenticated user
@@ -70,31 +79,71 @@ public class MonitoredEndpointController {
     }
 
     /**
-     * Delete an endpoint
+     * Delete an endpoint, its results are removed in the background
      */
     @DeleteMapping("/{id}")
-    public ResponseEntity<Void> deleteEndpoint(
+    public ResponseEntity<EndpointDeletionDto> deleteEndpoint(
             @PathVariable Long id, HttpServletRequest request) {
         User user = (User) request.getAttribute("user");
-        monitoredEndpointService.deleteEndpoint(id, user);
-        return ResponseEntity.noContent().build();
+        EndpointDeletionDto deletion = monitoredEndpointService.deleteEndpoint(id, user);
+        return ResponseEntity.accepted().body(deletion);
     }
 
     /**
-     * Get monitoring results for an endpoint
+     * Get the progress of an endpoint deletion
+     */
+    @GetMapping("/{id}/deletion")
+    public ResponseEntity<EndpointDeletionDto> getDeletion(
+            @PathVariable Long id, HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+        return ResponseEntity.ok(monitoredEndpointService.getDeletion(id, user));
+    }
+
+    /**
+     * Get monitoring results for an endpoint. Without parameters the latest results are returned,
+     * with any of them a page of the history, continued by passing the returned cursor as "after".
      */
     @GetMapping("/{id}/results")
     public ResponseEntity<?> getMonitoringResults(
-            @PathVariable Long id, HttpServletRequest request) {
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String status,
+            HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+
+        if (from == null && to == null && after == null && limit == null && status == null) {
+            // Served from memory, the cache also verifies the endpoint belongs to the user
+            return ResponseEntity.ok(recentResultsCache.getRecentResults(id, user));
+        }
+        return ResponseEntity.ok(monitoringResultService.getResultPage(id, user, from, to, after, limit, status));
+    }
+
+    /**
+     * Get latency percentiles for an endpoint over a rolling window
+     */
+    @GetMapping("/{id}/latency")
+    public ResponseEntity<LatencyStatsDto> getLatency(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "1h") String window,
+            HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+        return ResponseEntity.ok(latencyTracker.getStats(id, user, window));
+    }
+
+    /**
+     * Get aggregated check history for an endpoint, bucketed by minute, hour or day depending on the range
+     */
+    @GetMapping("/{id}/history")
+    public ResponseEntity<HistoryDto> getHistory(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) RollupResolution resolution,
+            HttpServletRequest request) {
         User user = (User) request.getAttribute("user");
-        
-        // Verify the endpoint belongs to the user
-        monitoredEndpointService.getEndpointByIdForUser(id, user);
-        
-        // Fetch the actual entity from repository
-        MonitoredEndpoint endpoint = monitoredEndpointRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Endpoint not found with id: " + id));
-        
-        return ResponseEntity.ok(monitoringResultService.getLast10ResultsForEndpoint(endpoint));
+        return ResponseEntity.ok(rollupService.getHistory(id, user, from, to, resolution));
     }
 } 
\ No newline at end of file
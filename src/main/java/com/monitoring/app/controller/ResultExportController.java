@@ -0,0 +1,77 @@
+package com.monitoring.app.controller;
+
+import com.monitoring.app.model.User;
+import com.monitoring.app.service.ExportFormat;
+import com.monitoring.app.service.ResultExportService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import javax.servlet.http.HttpServletRequest;
+import java.time.LocalDateTime;
+import java.util.zip.GZIPOutputStream;
+
+@RestController
+@RequestMapping("/api/endpoints")
+@RequiredArgsConstructor
+public class ResultExportController {
+
+    private final ResultExportService resultExportService;
+
+    /**
+     * Export monitoring results of all endpoints of the authenticated user
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAllResults(
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean includePayload,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+        return export(user, null, format, from, to, includePayload, gzip);
+    }
+
+    /**
+     * Export monitoring results of one endpoint
+     */
+    @GetMapping("/{id}/export")
+    public ResponseEntity<StreamingResponseBody> exportResults(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean includePayload,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+        resultExportService.checkAccess(id, user);
+        return export(user, id, format, from, to, includePayload, gzip);
+    }
+
+    private ResponseEntity<StreamingResponseBody> export(User user, Long endpointId, ExportFormat format,
+                                                         LocalDateTime from, LocalDateTime to,
+                                                         boolean includePayload, boolean gzip) {
+        String fileName = "results." + format.getExtension() + (gzip ? ".gz" : "");
+
+        StreamingResponseBody body = out -> {
+            if (gzip) {
+                GZIPOutputStream gzipOut = new GZIPOutputStream(out, 64 * 1024);
+                resultExportService.export(user, endpointId, from, to, format, includePayload, gzipOut);
+                gzipOut.finish();
+            } else {
+                resultExportService.export(user, endpointId, from, to, format, includePayload, out);
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : format.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+}
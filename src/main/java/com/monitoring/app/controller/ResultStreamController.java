@@ -0,0 +1,31 @@
+package com.monitoring.app.controller;
+
+import com.monitoring.app.model.User;
+import com.monitoring.app.service.ResultStreamHub;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/api/endpoints")
+@RequiredArgsConstructor
+public class ResultStreamController {
+
+    private final ResultStreamHub resultStreamHub;
+
+    /**
+     * Stream check results of the authenticated user's endpoints as Server-Sent Events
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamResults(
+            @RequestParam(required = false) Set<Long> endpointIds,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+            HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+        return resultStreamHub.subscribe(user.getId(), endpointIds, lastEventId);
+    }
+}
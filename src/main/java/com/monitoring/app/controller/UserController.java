@@ -0,0 +1,29 @@
+package com.monitoring.app.controller;
+
+import com.monitoring.app.dto.AccessTokenDto;
+import com.monitoring.app.model.User;
+import com.monitoring.app.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletRequest;
+
+@RestController
+@RequestMapping("/api/users")
+@RequiredArgsConstructor
+public class UserController {
+
+    private final UserService userService;
+
+    /**
+     * Replace the access token of the authenticated user, the current one stops working right away
+     */
+    @PostMapping("/me/access-token")
+    public ResponseEntity<AccessTokenDto> regenerateAccessToken(HttpServletRequest request) {
+        User user = (User) request.getAttribute("user");
+        return ResponseEntity.ok(new AccessTokenDto(userService.regenerateAccessToken(user.getId())));
+    }
+}
@@ -0,0 +1,12 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccessTokenDto {
+    private String accessToken;
+}
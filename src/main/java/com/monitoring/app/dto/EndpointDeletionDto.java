@@ -0,0 +1,18 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EndpointDeletionDto {
+    private Long endpointId;
+    private boolean completed;
+    private Long resultsDeleted;
+    private LocalDateTime requestedAt;
+    private LocalDateTime completedAt;
+}
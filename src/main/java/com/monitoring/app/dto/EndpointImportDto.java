@@ -0,0 +1,18 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EndpointImportDto {
+    private int created;
+    private int updated;
+    private int failed;
+    private List<EndpointImportErrorDto> errors = new ArrayList<>();
+}
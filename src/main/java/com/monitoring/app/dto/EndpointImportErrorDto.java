@@ -0,0 +1,15 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EndpointImportErrorDto {
+    // Position of the item in the request, starting at 0
+    private int index;
+    private String url;
+    private String message;
+}
@@ -0,0 +1,20 @@
+package com.monitoring.app.dto;
+
+import com.monitoring.app.model.RollupResolution;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class HistoryDto {
+    private Long monitoredEndpointId;
+    private RollupResolution resolution;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private List<RollupBucketDto> buckets;
+}
@@ -0,0 +1,20 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatencyStatsDto {
+    private Long monitoredEndpointId;
+    private String window;
+    private Long count;
+    private Long min;
+    private Double mean;
+    private Long p50;
+    private Long p90;
+    private Long p99;
+    private Long max;
+}
@@ -1,5 +1,6 @@
 package com.monitoring.app.dto;
 
+import com.monitoring.app.model.CaptureMode;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -28,4 +29,15 @@ public class MonitoredEndpointDto {
     @NotNull(message = "Monitoring interval is required")
     @Min(value = 1, message = "Interval must be at least 1 second")
     private Integer monitoringInterval;
+    
+    private CaptureMode captureMode;
+    
+    @Min(value = 0, message = "Capture limit must not be negative")
+    private Integer captureLimit;
+    
+    @Min(value = 1, message = "Retention days must be at least 1")
+    private Integer retentionDays;
+    
+    @Min(value = 1, message = "Retention rows must be at least 1")
+    private Integer retentionRows;
 } 
\ No newline at end of file
@@ -14,5 +14,10 @@ public class MonitoringResultDto {
     private LocalDateTime checkDate;
     private Integer statusCode;
     private String payload;
+    private Long contentLength;
+    private String contentHash;
+    private Long responseTime;
     private Long monitoredEndpointId;
+    private Integer repeatCount;
+    private LocalDateTime lastRepeatDate;
 } 
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultPageDto {
+    private List<MonitoringResultDto> results;
+    // Pass as "after" to get the next page, null on the last page
+    private String nextCursor;
+}
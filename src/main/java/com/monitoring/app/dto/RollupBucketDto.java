@@ -0,0 +1,23 @@
+package com.monitoring.app.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupBucketDto {
+    private LocalDateTime bucketStart;
+    private Long checkCount;
+    private Long errorCount;
+    private Long status2xx;
+    private Long status3xx;
+    private Long status4xx;
+    private Long status5xx;
+    private Double latencyMean;
+    private Long latencyMin;
+    private Long latencyMax;
+}
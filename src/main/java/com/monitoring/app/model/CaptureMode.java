@@ -0,0 +1,23 @@
+package com.monitoring.app.model;
+
+/**
+ * What part of a probe response is stored with the monitoring result
+ */
+public enum CaptureMode {
+    /**
+     * Nothing is stored, only the status code, content length and content hash
+     */
+    NONE,
+    /**
+     * Response headers are stored instead of the body
+     */
+    HEADERS,
+    /**
+     * The body is stored up to the endpoint's capture limit
+     */
+    TRUNCATED,
+    /**
+     * The whole body is stored, bounded only by the global maximum capture size
+     */
+    FULL
+}
@@ -0,0 +1,36 @@
+package com.monitoring.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Progress of an endpoint deletion. The endpoint is tombstoned right away and its results are
+ * purged in the background; this row outlives the endpoint so progress stays observable.
+ */
+@Entity
+@Table(name = "endpoint_deletions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EndpointDeletion {
+
+    @Id
+    @Column(name = "endpoint_id")
+    private Long endpointId;
+
+    @Column(name = "owner_id", nullable = false)
+    private Long ownerId;
+
+    @Column(name = "requested_at", nullable = false)
+    private LocalDateTime requestedAt;
+
+    @Column(name = "results_deleted", nullable = false)
+    private Long resultsDeleted;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+}
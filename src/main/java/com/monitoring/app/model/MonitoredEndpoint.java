@@ -3,17 +3,19 @@ package com.monitoring.app.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.Where;
 
 import javax.persistence.*;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.List;
 
 @Entity
-@Table(name = "monitored_endpoints")
+@Table(name = "monitored_endpoints",
+        indexes = @Index(name = "idx_monitored_endpoints_modified_at", columnList = "modified_at"))
+@Where(clause = "deleted = false")
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -43,17 +45,48 @@ public class MonitoredEndpoint {
     @Column(name = "monitoring_interval", nullable = false)
     private Integer monitoringInterval;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "capture_mode", length = 16)
+    private CaptureMode captureMode;
+
+    // Maximum number of body bytes stored per check, null means the global default
+    @Min(value = 0, message = "Capture limit must not be negative")
+    @Column(name = "capture_limit")
+    private Integer captureLimit;
+
+    // Days of results kept, null means the global retention
+    @Min(value = 1, message = "Retention days must be at least 1")
+    @Column(name = "retention_days")
+    private Integer retentionDays;
+
+    // Number of newest results kept, null means the global retention
+    @Min(value = 1, message = "Retention rows must be at least 1")
+    @Column(name = "retention_rows")
+    private Integer retentionRows;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "owner_id", nullable = false)
     private User owner;
 
-    @OneToMany(mappedBy = "monitoredEndpoint", cascade = CascadeType.ALL, orphanRemoval = true)
-    private List<MonitoringResult> results = new ArrayList<>();
+    // Set when deletion is requested, the row goes away once EndpointPurgeJob has removed its results
+    @ColumnDefault("false")
+    @Column(name = "deleted", nullable = false)
+    private boolean deleted;
+
+    // Bumped on every change made through JPA, other instances pick up changes of their endpoints from it
+    @Column(name = "modified_at")
+    private LocalDateTime modifiedAt;
 
     @PrePersist
     public void prePersist() {
         if (creationDate == null) {
             creationDate = LocalDateTime.now();
         }
+        modifiedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        modifiedAt = LocalDateTime.now();
     }
 } 
\ No newline at end of file
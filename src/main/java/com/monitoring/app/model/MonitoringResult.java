@@ -3,20 +3,41 @@ package com.monitoring.app.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import javax.validation.constraints.NotNull;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "monitoring_results")
+// Serves per-endpoint history in (check_date, id) order, see MonitoringResultRepository.findPage.
+// The payload hash index lets the retention job find payload contents no result references.
+@Table(name = "monitoring_results",
+        indexes = {
+                @Index(name = "idx_results_endpoint_check_date", columnList = "endpoint_id, check_date, id"),
+                @Index(name = "idx_results_payload_hash", columnList = "payload_hash")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class MonitoringResult {
 
+    public static final String ID_SEQUENCE = "monitoring_results_seq";
+
+    // Block-allocated IDs (instead of IDENTITY) let Hibernate batch the inserts
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "monitoring_result_id")
+    @GenericGenerator(
+            name = "monitoring_result_id",
+            strategy = "org.hibernate.id.enhanced.SequenceStyleGenerator",
+            parameters = {
+                    @Parameter(name = "sequence_name", value = ID_SEQUENCE),
+                    @Parameter(name = "increment_size", value = "100"),
+                    @Parameter(name = "optimizer", value = "pooled-lo"),
+                    @Parameter(name = "force_table_use", value = "true")
+            })
     private Long id;
 
     @NotNull(message = "Check date is required")
@@ -26,9 +47,33 @@ public class MonitoringResult {
     @Column(name = "status_code")
     private Integer statusCode;
 
+    // Only set on rows written before payloads were moved to payload_contents
     @Column(name = "payload", columnDefinition = "TEXT")
     private String payload;
 
+    @Column(name = "payload_hash", length = 64)
+    private String payloadHash;
+
+    // Size and SHA-256 of the whole response body, also when only a part of it was stored
+    @Column(name = "content_length")
+    private Long contentLength;
+
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // Wall-clock duration of the probe in milliseconds
+    @Column(name = "response_time")
+    private Long responseTime;
+
+    // Number of consecutive identical failed checks this row stands for, see MonitoringProperties.Backoff
+    @ColumnDefault("1")
+    @Column(name = "repeat_count", nullable = false)
+    private int repeatCount = 1;
+
+    // Date of the last check counted in repeatCount, null for a single check
+    @Column(name = "last_repeat_date")
+    private LocalDateTime lastRepeatDate;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "endpoint_id", nullable = false)
     private MonitoredEndpoint monitoredEndpoint;
@@ -0,0 +1,31 @@
+package com.monitoring.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Lease on one endpoint partition. Only the owning instance checks the endpoints of the partition,
+ * and another instance may take it over only once it is released or has expired.
+ */
+@Entity
+@Table(name = "partition_leases")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PartitionLease {
+
+    @Id
+    @Column(name = "partition_id")
+    private Integer partitionId;
+
+    // Null while the partition is free
+    @Column(name = "owner_node", length = 64)
+    private String ownerNode;
+
+    @Column(name = "lease_until", nullable = false)
+    private LocalDateTime leaseUntil;
+}
@@ -0,0 +1,36 @@
+package com.monitoring.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "payload_contents")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PayloadContent {
+
+    // SHA-256 of the uncompressed payload
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    // Deflate-compressed UTF-8 payload
+    @Lob
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+
+    @Column(name = "original_length", nullable = false)
+    private Integer originalLength;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // When the retention job found no result referencing the content, cleared when a writer takes it into use again
+    @Column(name = "orphaned_since")
+    private LocalDateTime orphanedSince;
+}
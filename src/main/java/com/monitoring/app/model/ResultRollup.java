@@ -0,0 +1,70 @@
+package com.monitoring.app.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Aggregated check results of one endpoint over one time bucket. Rows are written with upserts only,
+ * see {@link com.monitoring.app.service.RollupService}.
+ */
+@Entity
+@Table(name = "result_rollups",
+        uniqueConstraints = @UniqueConstraint(name = "uk_result_rollups_bucket",
+                columnNames = {"endpoint_id", "resolution", "bucket_start"}),
+        indexes = @Index(name = "idx_result_rollups_age", columnList = "resolution, bucket_start"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultRollup {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Plain column instead of a relation so rollups never load or lock the endpoint
+    @Column(name = "endpoint_id", nullable = false)
+    private Long endpointId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolution", nullable = false, length = 8)
+    private RollupResolution resolution;
+
+    @Column(name = "bucket_start", nullable = false)
+    private LocalDateTime bucketStart;
+
+    @Column(name = "check_count", nullable = false)
+    private Long checkCount;
+
+    // Checks that failed or answered with a 4xx/5xx status
+    @Column(name = "error_count", nullable = false)
+    private Long errorCount;
+
+    @Column(name = "status_2xx", nullable = false)
+    private Long status2xx;
+
+    @Column(name = "status_3xx", nullable = false)
+    private Long status3xx;
+
+    @Column(name = "status_4xx", nullable = false)
+    private Long status4xx;
+
+    @Column(name = "status_5xx", nullable = false)
+    private Long status5xx;
+
+    // Latency summary in milliseconds over the checks that have a response time
+    @Column(name = "latency_count", nullable = false)
+    private Long latencyCount;
+
+    @Column(name = "latency_sum", nullable = false)
+    private Long latencySum;
+
+    @Column(name = "latency_min")
+    private Long latencyMin;
+
+    @Column(name = "latency_max")
+    private Long latencyMax;
+}
@@ -0,0 +1,48 @@
+package com.monitoring.app.model;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Bucket size of aggregated check history, from finest to coarsest
+ */
+public enum RollupResolution {
+    /**
+     * One bucket per endpoint and minute
+     */
+    MINUTE(ChronoUnit.MINUTES),
+    /**
+     * One bucket per endpoint and hour
+     */
+    HOUR(ChronoUnit.HOURS),
+    /**
+     * One bucket per endpoint and day
+     */
+    DAY(ChronoUnit.DAYS);
+
+    private final ChronoUnit unit;
+
+    RollupResolution(ChronoUnit unit) {
+        this.unit = unit;
+    }
+
+    /**
+     * Get the length of one bucket
+     *
+     * @return the bucket length
+     */
+    public Duration getDuration() {
+        return unit.getDuration();
+    }
+
+    /**
+     * Get the start of the bucket containing a point in time
+     *
+     * @param dateTime the point in time
+     * @return the bucket start
+     */
+    public LocalDateTime truncate(LocalDateTime dateTime) {
+        return dateTime.truncatedTo(unit);
+    }
+}
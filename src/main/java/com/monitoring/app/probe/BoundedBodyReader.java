@@ -0,0 +1,71 @@
+package com.monitoring.app.probe;
+
+import com.monitoring.app.util.HashUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+
+/**
+ * Streams a response body through a fixed-size buffer, keeping at most a given number of bytes.
+ * The rest of the body is only counted and hashed, never buffered, or not read at all when the
+ * whole body is not needed.
+ */
+final class BoundedBodyReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private BoundedBodyReader() {
+    }
+
+    /**
+     * Read a stream, capturing its first bytes
+     *
+     * @param body         the body stream
+     * @param captureLimit the maximum number of bytes to keep
+     * @param wholeBody    whether to read past the capture limit to count and hash the whole body
+     * @return the captured bytes with the total length and SHA-256 of the body, the latter two only
+     * if the body was read to its end
+     * @throws IOException if reading fails
+     */
+    static CapturedBody read(InputStream body, int captureLimit, boolean wholeBody) throws IOException {
+        MessageDigest digest = HashUtils.newSha256();
+        ByteArrayOutputStream captured = new ByteArrayOutputStream(Math.min(captureLimit, BUFFER_SIZE));
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long length = 0;
+
+        while (wholeBody || captured.size() < captureLimit) {
+            // Without the whole body nothing past the capture limit is requested from the stream
+            int toRead = wholeBody ? buffer.length : Math.min(buffer.length, captureLimit - captured.size());
+            int read = body.read(buffer, 0, toRead);
+            if (read == -1) {
+                return new CapturedBody(captured.toByteArray(), length, HashUtils.toHex(digest.digest()));
+            }
+            digest.update(buffer, 0, read);
+            int toCapture = Math.min(read, captureLimit - captured.size());
+            if (toCapture > 0) {
+                captured.write(buffer, 0, toCapture);
+            }
+            length += read;
+        }
+        return new CapturedBody(captured.toByteArray(), null, null);
+    }
+
+    static final class CapturedBody {
+        final byte[] captured;
+        // Null if reading stopped at the capture limit
+        final Long length;
+        final String hash;
+
+        private CapturedBody(byte[] captured, Long length, String hash) {
+            this.captured = captured;
+            this.length = length;
+            this.hash = hash;
+        }
+
+        boolean isComplete() {
+            return length != null;
+        }
+    }
+}
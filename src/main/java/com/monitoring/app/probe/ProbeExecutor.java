@@ -0,0 +1,215 @@
+package com.monitoring.app.probe;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.CaptureMode;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs probes concurrently on a bounded worker pool. The number of in-flight probes is capped by
+ * {@code monitoring.probe.concurrency}; callers use {@link #availablePermits()} to take no more work
+ * than can be started, which keeps the backlog in the scheduler instead of an unbounded queue.
+ */
+@Slf4j
+@Component
+public class ProbeExecutor {
+
+    // Probe workers only run blocking HTTP calls, a small stack lets us afford many of them
+    private static final long WORKER_STACK_SIZE = 256 * 1024;
+
+    private final RestTemplate restTemplate;
+    private final int defaultCaptureLimit;
+    private final int maxCaptureSize;
+    private final boolean fullBodyHash;
+    private final Semaphore permits;
+    private final ThreadPoolExecutor executor;
+    private final long shutdownTimeoutMillis;
+
+    public ProbeExecutor(RestTemplate restTemplate, MonitoringProperties properties) {
+        MonitoringProperties.Probe probe = properties.getProbe();
+        this.restTemplate = restTemplate;
+        this.defaultCaptureLimit = (int) probe.getCaptureLimit().toBytes();
+        this.maxCaptureSize = (int) probe.getMaxCaptureSize().toBytes();
+        this.fullBodyHash = probe.isFullBodyHash();
+        this.permits = new Semaphore(probe.getConcurrency());
+        this.executor = new ThreadPoolExecutor(
+                probe.getConcurrency(),
+                probe.getConcurrency(),
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ProbeThreadFactory()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+        this.shutdownTimeoutMillis = probe.getShutdownTimeout().toMillis();
+    }
+
+    /**
+     * Get the number of probes that can be started right now
+     *
+     * @return number of free probe slots
+     */
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * Get the number of probes currently running
+     *
+     * @return number of in-flight probes
+     */
+    public int inFlight() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * Start a probe if a probe slot is free
+     *
+     * @param request  what to probe
+     * @param callback called on a worker thread with the probe result
+     * @return false if the in-flight limit is reached and the probe was not started
+     */
+    public boolean trySubmit(ProbeRequest request, Consumer<ProbeResult> callback) {
+        if (!permits.tryAcquire()) {
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    callback.accept(probe(request));
+                } catch (RuntimeException e) {
+                    log.error("Error handling probe result for {}", request.getUrl(), e);
+                } finally {
+                    permits.release();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            return false;
+        }
+    }
+
+    /**
+     * Stop accepting probes and wait for the in-flight ones to finish
+     */
+    public void shutdown() {
+        if (executor.isShutdown()) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Probes still running after {} ms, interrupting them", shutdownTimeoutMillis);
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ProbeResult probe(ProbeRequest request) {
+        CaptureMode captureMode = request.getCaptureMode() != null ? request.getCaptureMode() : CaptureMode.TRUNCATED;
+        int captureLimit = captureLimit(captureMode, request.getCaptureLimit());
+        long startNanos = System.nanoTime();
+        try {
+            return restTemplate.execute(request.getUrl(), HttpMethod.GET, null,
+                    response -> readResponse(response, captureMode, captureLimit, startNanos));
+        } catch (RestClientException | IllegalArgumentException e) {
+            log.error("Error monitoring endpoint {}: {}", request.getUrl(), e.getMessage());
+            return ProbeResult.failure(HttpStatus.INTERNAL_SERVER_ERROR.value(), e.getMessage(), elapsedMillis(startNanos));
+        } catch (RuntimeException e) {
+            // Still a result, so the endpoint is completed and checked again instead of staying in flight
+            log.error("Unexpected error monitoring endpoint {}", request.getUrl(), e);
+            return ProbeResult.failure(HttpStatus.INTERNAL_SERVER_ERROR.value(), e.toString(), elapsedMillis(startNanos));
+        }
+    }
+
+    private ProbeResult readResponse(ClientHttpResponse response, CaptureMode captureMode, int captureLimit,
+                                     long startNanos) throws IOException {
+        HttpHeaders headers = response.getHeaders();
+        InputStream stream = response.getBody();
+        BoundedBodyReader.CapturedBody body = BoundedBodyReader.read(stream, captureLimit, fullBodyHash);
+        if (!body.isComplete() && stream instanceof ConnectionReleaseTrigger) {
+            // Closing the response would drain the unread rest of the body to reuse the connection
+            ((ConnectionReleaseTrigger) stream).abortConnection();
+        }
+
+        String payload;
+        switch (captureMode) {
+            case NONE:
+                payload = null;
+                break;
+            case HEADERS:
+                payload = formatHeaders(headers);
+                break;
+            default:
+                payload = new String(body.captured, charsetOf(headers));
+        }
+        // Latency covers the whole exchange up to the last body byte read
+        return new ProbeResult(response.getRawStatusCode(), payload, body.length, body.hash, elapsedMillis(startNanos));
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private int captureLimit(CaptureMode captureMode, Integer endpointLimit) {
+        switch (captureMode) {
+            case NONE:
+            case HEADERS:
+                return 0;
+            case FULL:
+                return maxCaptureSize;
+            default:
+                return Math.min(endpointLimit != null ? endpointLimit : defaultCaptureLimit, maxCaptureSize);
+        }
+    }
+
+    private static String formatHeaders(HttpHeaders headers) {
+        StringBuilder formatted = new StringBuilder();
+        headers.forEach((name, values) -> values.forEach(value ->
+                formatted.append(name).append(": ").append(value).append('\n')));
+        return formatted.toString();
+    }
+
+    private static Charset charsetOf(HttpHeaders headers) {
+        MediaType contentType = headers.getContentType();
+        if (contentType != null && contentType.getCharset() != null) {
+            return contentType.getCharset();
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static final class ProbeThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(null, runnable, "probe-" + counter.incrementAndGet(), WORKER_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
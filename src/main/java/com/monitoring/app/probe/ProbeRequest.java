@@ -0,0 +1,67 @@
+package com.monitoring.app.probe;
+
+import com.monitoring.app.model.CaptureMode;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * What to probe and how much of the response to capture
+ */
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class ProbeRequest {
+    private final String url;
+    private final CaptureMode captureMode;
+    private final Integer captureLimit;
+
+    /**
+     * Create a request for a normalized URL, so requests for different spellings of the same URL are equal
+     *
+     * @param url          the URL to probe
+     * @param captureMode  what to capture of the response
+     * @param captureLimit how much of the body to capture, null for the default
+     * @return the request
+     */
+    public static ProbeRequest of(String url, CaptureMode captureMode, Integer captureLimit) {
+        return new ProbeRequest(normalizeUrl(url), captureMode, captureLimit);
+    }
+
+    /**
+     * Lower-case the scheme and host, drop a default port and the fragment, which is never sent,
+     * and use "/" for an empty path. URLs that cannot be parsed are left as they are.
+     *
+     * @param url the URL
+     * @return the normalized URL
+     */
+    static String normalizeUrl(String url) {
+        if (url == null) {
+            return null;
+        }
+        try {
+            URI uri = new URI(url);
+            if (uri.getScheme() == null || uri.getHost() == null) {
+                return url;
+            }
+            String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+            int port = uri.getPort();
+            if (("http".equals(scheme) && port == 80) || ("https".equals(scheme) && port == 443)) {
+                port = -1;
+            }
+            String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+            return scheme + "://"
+                    + (uri.getRawUserInfo() != null ? uri.getRawUserInfo() + "@" : "")
+                    + uri.getHost().toLowerCase(Locale.ROOT)
+                    + (port != -1 ? ":" + port : "")
+                    + path
+                    + (uri.getRawQuery() != null ? "?" + uri.getRawQuery() : "");
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+}
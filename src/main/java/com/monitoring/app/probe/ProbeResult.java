@@ -0,0 +1,29 @@
+package com.monitoring.app.probe;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a single HTTP probe of a monitored URL
+ */
+@Getter
+@AllArgsConstructor
+public class ProbeResult {
+    private final Integer statusCode;
+    private final String payload;
+    private final Long contentLength;
+    private final String contentHash;
+    private final Long responseTime;
+
+    /**
+     * Create the result of a probe that failed before a response was read
+     *
+     * @param statusCode   the status code to record
+     * @param message      the error message
+     * @param responseTime milliseconds until the probe failed
+     * @return the probe result
+     */
+    public static ProbeResult failure(Integer statusCode, String message, Long responseTime) {
+        return new ProbeResult(statusCode, message, null, null, responseTime);
+    }
+}
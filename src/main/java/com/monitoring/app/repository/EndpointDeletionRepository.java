@@ -0,0 +1,14 @@
+package com.monitoring.app.repository;
+
+import com.monitoring.app.model.EndpointDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface EndpointDeletionRepository extends JpaRepository<EndpointDeletion, Long> {
+    @Query("SELECT d.endpointId FROM EndpointDeletion d WHERE d.completedAt IS NULL ORDER BY d.requestedAt")
+    List<Long> findPendingEndpointIds();
+}
@@ -1,15 +1,52 @@
 package com.monitoring.app.repository;
 
+import com.monitoring.app.dto.MonitoredEndpointDto;
 import com.monitoring.app.model.MonitoredEndpoint;
 import com.monitoring.app.model.User;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface MonitoredEndpointRepository extends JpaRepository<MonitoredEndpoint, Long> {
-    List<MonitoredEndpoint> findAllByOwner(User owner);
     Optional<MonitoredEndpoint> findByIdAndOwner(Long id, User owner);
-} 
\ No newline at end of file
+
+    // Read straight into DTOs, so listing endpoints creates no managed entities
+    @Query("SELECT new com.monitoring.app.dto.MonitoredEndpointDto(" +
+            "e.id, e.name, e.url, e.creationDate, e.lastCheckDate, e.monitoringInterval, " +
+            "e.captureMode, e.captureLimit, e.retentionDays, e.retentionRows) " +
+            "FROM MonitoredEndpoint e WHERE e.owner.id = :ownerId ORDER BY e.id")
+    List<MonitoredEndpointDto> findDtosByOwnerId(@Param("ownerId") Long ownerId);
+
+    @Query("SELECT new com.monitoring.app.dto.MonitoredEndpointDto(" +
+            "e.id, e.name, e.url, e.creationDate, e.lastCheckDate, e.monitoringInterval, " +
+            "e.captureMode, e.captureLimit, e.retentionDays, e.retentionRows) " +
+            "FROM MonitoredEndpoint e WHERE e.id = :id AND e.owner.id = :ownerId")
+    Optional<MonitoredEndpointDto> findDtoByIdAndOwnerId(@Param("id") Long id, @Param("ownerId") Long ownerId);
+
+    @Query("SELECT new com.monitoring.app.scheduler.ScheduledEndpoint(" +
+            "e.id, e.owner.id, e.url, e.monitoringInterval, e.captureMode, e.captureLimit, e.lastCheckDate) " +
+            "FROM MonitoredEndpoint e")
+    List<ScheduledEndpoint> findAllSchedules();
+
+    @Query("SELECT new com.monitoring.app.scheduler.ScheduledEndpoint(" +
+            "e.id, e.owner.id, e.url, e.monitoringInterval, e.captureMode, e.captureLimit, e.lastCheckDate) " +
+            "FROM MonitoredEndpoint e WHERE MOD(e.id, :partitionCount) IN :partitions")
+    List<ScheduledEndpoint> findSchedulesInPartitions(@Param("partitionCount") int partitionCount,
+                                                      @Param("partitions") Collection<Integer> partitions);
+
+    @Query("SELECT e FROM MonitoredEndpoint e WHERE e.owner.id = :ownerId AND (e.id IN :ids OR e.url IN :urls) " +
+            "ORDER BY e.id")
+    List<MonitoredEndpoint> findForImport(@Param("ownerId") Long ownerId,
+                                          @Param("ids") Collection<Long> ids,
+                                          @Param("urls") Collection<String> urls);
+
+    @Query("SELECT e.owner.id FROM MonitoredEndpoint e WHERE e.id = :id")
+    Optional<Long> findOwnerIdById(@Param("id") Long id);
+}
@@ -1,19 +1,45 @@
 package com.monitoring.app.repository;
 
-import com.monitoring.app.model.MonitoredEndpoint;
 import com.monitoring.app.model.MonitoringResult;
+import com.monitoring.app.service.MonitoringResultRow;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Repository
 public interface MonitoringResultRepository extends JpaRepository<MonitoringResult, Long> {
-    @Query("SELECT r FROM MonitoringResult r WHERE r.monitoredEndpoint = :endpoint ORDER BY r.checkDate DESC")
-    List<MonitoringResult> findTop10ByMonitoredEndpointOrderByCheckDateDesc(
-            @Param("endpoint") MonitoredEndpoint endpoint,
+    @Query("SELECT new com.monitoring.app.service.MonitoringResultRow(" +
+            "r.id, r.checkDate, r.statusCode, r.payload, r.payloadHash, r.contentLength, r.contentHash, " +
+            "r.responseTime, r.monitoredEndpoint.id, r.repeatCount, r.lastRepeatDate) " +
+            "FROM MonitoringResult r WHERE r.monitoredEndpoint.id = :endpointId " +
+            "ORDER BY r.checkDate DESC, r.id DESC")
+    List<MonitoringResultRow> findLatestByEndpointId(
+            @Param("endpointId") Long endpointId,
+            Pageable pageable);
+
+    // Scoped to the owner, so a page of a foreign or deleted endpoint comes back empty without a separate check
+    @Query("SELECT new com.monitoring.app.service.MonitoringResultRow(" +
+            "r.id, r.checkDate, r.statusCode, r.payload, r.payloadHash, r.contentLength, r.contentHash, " +
+            "r.responseTime, e.id, r.repeatCount, r.lastRepeatDate) " +
+            "FROM MonitoringResult r JOIN r.monitoredEndpoint e " +
+            "WHERE e.id = :endpointId AND e.owner.id = :ownerId AND e.deleted = false " +
+            "AND r.checkDate >= :from AND r.checkDate < :to " +
+            "AND r.statusCode BETWEEN :minStatus AND :maxStatus " +
+            "AND (r.checkDate < :afterDate OR (r.checkDate = :afterDate AND r.id < :afterId)) " +
+            "ORDER BY r.checkDate DESC, r.id DESC")
+    List<MonitoringResultRow> findPage(
+            @Param("endpointId") Long endpointId,
+            @Param("ownerId") Long ownerId,
+            @Param("from") LocalDateTime from,
+            @Param("to") LocalDateTime to,
+            @Param("minStatus") Integer minStatus,
+            @Param("maxStatus") Integer maxStatus,
+            @Param("afterDate") LocalDateTime afterDate,
+            @Param("afterId") Long afterId,
             Pageable pageable);
 } 
\ No newline at end of file
@@ -0,0 +1,16 @@
+package com.monitoring.app.repository;
+
+import com.monitoring.app.model.PayloadContent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PayloadContentRepository extends JpaRepository<PayloadContent, String> {
+    @Query("SELECT p.hash FROM PayloadContent p WHERE p.hash IN :hashes")
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+}
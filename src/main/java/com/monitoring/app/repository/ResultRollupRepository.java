@@ -0,0 +1,21 @@
+package com.monitoring.app.repository;
+
+import com.monitoring.app.model.ResultRollup;
+import com.monitoring.app.model.RollupResolution;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface ResultRollupRepository extends JpaRepository<ResultRollup, Long> {
+    @Query("SELECT r FROM ResultRollup r WHERE r.endpointId = :endpointId AND r.resolution = :resolution " +
+            "AND r.bucketStart >= :from AND r.bucketStart < :to ORDER BY r.bucketStart")
+    List<ResultRollup> findBuckets(@Param("endpointId") Long endpointId,
+                                   @Param("resolution") RollupResolution resolution,
+                                   @Param("from") LocalDateTime from,
+                                   @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,19 @@
+package com.monitoring.app.scheduler;
+
+/**
+ * Circuit breaker state of a scheduled endpoint
+ */
+public enum CircuitState {
+    /**
+     * Checked at its own interval
+     */
+    CLOSED,
+    /**
+     * Failed repeatedly, checked after a growing backoff delay instead of its interval
+     */
+    OPEN,
+    /**
+     * The backoff delay passed and a trial check is running, which closes or reopens the circuit
+     */
+    HALF_OPEN
+}
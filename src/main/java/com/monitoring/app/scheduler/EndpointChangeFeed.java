@@ -0,0 +1,79 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.model.CaptureMode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies endpoint changes made through other instances to the local schedule in cluster mode.
+ * Changes are found by their modification date; the feed re-reads a short overlap window so changes
+ * committed late or stamped by a slightly skewed clock are not missed, and skips the ones already applied.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "monitoring.cluster", name = "enabled", havingValue = "true")
+public class EndpointChangeFeed {
+
+    private static final Duration OVERLAP = Duration.ofSeconds(10);
+
+    private final EndpointScheduler endpointScheduler;
+    private final JdbcTemplate jdbcTemplate;
+
+    // Accessed by the polling thread only
+    private LocalDateTime watermark = LocalDateTime.now().minus(OVERLAP);
+    private final Map<Long, LocalDateTime> applied = new HashMap<>();
+
+    public EndpointChangeFeed(EndpointScheduler endpointScheduler, JdbcTemplate jdbcTemplate) {
+        this.endpointScheduler = endpointScheduler;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Apply endpoint changes since the last poll
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void poll() {
+        LocalDateTime since = watermark.minus(OVERLAP);
+        jdbcTemplate.query("SELECT id, owner_id, url, monitoring_interval, capture_mode, capture_limit, " +
+                        "last_check_date, deleted, modified_at FROM monitored_endpoints " +
+                        "WHERE modified_at > ? ORDER BY modified_at",
+                rs -> {
+                    Long id = rs.getLong("id");
+                    LocalDateTime modifiedAt = rs.getTimestamp("modified_at").toLocalDateTime();
+                    if (modifiedAt.isAfter(watermark)) {
+                        watermark = modifiedAt;
+                    }
+                    if (modifiedAt.equals(applied.put(id, modifiedAt))) {
+                        return;
+                    }
+                    if (rs.getBoolean("deleted")) {
+                        endpointScheduler.unschedule(id);
+                        return;
+                    }
+                    String captureMode = rs.getString("capture_mode");
+                    Timestamp lastCheckDate = rs.getTimestamp("last_check_date");
+                    // Ignored by the scheduler unless the endpoint is in a partition leased here
+                    endpointScheduler.schedule(new ScheduledEndpoint(
+                            id,
+                            rs.getLong("owner_id"),
+                            rs.getString("url"),
+                            rs.getInt("monitoring_interval"),
+                            captureMode != null ? CaptureMode.valueOf(captureMode) : null,
+                            (Integer) rs.getObject("capture_limit"),
+                            lastCheckDate != null ? lastCheckDate.toLocalDateTime() : null
+                    ));
+                }, Timestamp.valueOf(since));
+
+        // Changes older than the overlap window are never read again
+        applied.values().removeIf(modifiedAt -> modifiedAt.isBefore(since));
+    }
+}
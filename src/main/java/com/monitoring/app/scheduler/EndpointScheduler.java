@@ -0,0 +1,653 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.probe.ProbeRequest;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the next due time of every monitored endpoint in a deadline heap.
+ * The heap is seeded once at startup and then maintained incrementally by the endpoint service,
+ * so selecting due endpoints costs O(due * log n) instead of a full table scan per tick.
+ * In cluster mode only endpoints of partitions leased by this instance are kept, see {@link PartitionLeaseManager}.
+ * With probe coalescing, endpoints are also indexed by their probe request, so endpoints that can share
+ * the request of a due endpoint are found without scanning the heap.
+ * With fair dispatching, due endpoints wait in a queue per owner and are taken by deficit round-robin
+ * across owners, weighted and limited by per-user quotas, so one user's backlog cannot delay everyone else.
+ */
+@Slf4j
+@Component
+public class EndpointScheduler {
+
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final Clock clock;
+    private final boolean clustered;
+    private final int partitionCount;
+    private final MonitoringProperties.Backoff backoff;
+    private final boolean phaseSpread;
+    private final long catchUpWindowMillis;
+    private final boolean coalescing;
+    private final MonitoringProperties.Fairness fairness;
+
+    private final Map<Long, ScheduledEndpoint> endpoints = new HashMap<>();
+    private final PriorityQueue<DueEntry> dueQueue = new PriorityQueue<>();
+    // Only maintained with probe coalescing
+    private final Map<ProbeRequest, Set<ScheduledEndpoint>> sharedProbes = new HashMap<>();
+    // Only used with fair dispatching: owners with due or running checks, and the ones with due checks in turn order
+    private final Map<Long, TenantQueue> tenants = new HashMap<>();
+    private final ArrayDeque<TenantQueue> activeTenants = new ArrayDeque<>();
+    // Guarded by the scheduler lock, only used in cluster mode
+    private final BitSet ownedPartitions = new BitSet();
+    private final Map<Integer, Set<ScheduledEndpoint>> handedOver = new HashMap<>();
+    // Nothing is dispatched past this nano time unless the leases are renewed
+    private volatile long leaseValidUntil;
+    // Written by pollDue, read by metrics and the health check without taking the lock
+    private volatile long lagMillis;
+    private volatile long lastPollNanos = System.nanoTime();
+
+    public EndpointScheduler(MonitoredEndpointRepository monitoredEndpointRepository, MonitoringProperties properties,
+                             Clock clock) {
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.clock = clock;
+        this.clustered = properties.getCluster().isEnabled();
+        this.partitionCount = properties.getCluster().getPartitions();
+        this.backoff = properties.getBackoff();
+        this.phaseSpread = properties.getScheduler().isPhaseSpread();
+        this.catchUpWindowMillis = properties.getScheduler().getCatchUpWindow().toMillis();
+        this.coalescing = properties.getCoalescing().isEnabled();
+        this.fairness = properties.getFairness();
+    }
+
+    /**
+     * Seed the scheduler with all existing endpoints, in cluster mode endpoints are loaded per leased partition
+     */
+    @PostConstruct
+    public void init() {
+        if (clustered) {
+            log.info("Endpoint scheduler waiting for partition leases");
+            return;
+        }
+        List<ScheduledEndpoint> schedules = monitoredEndpointRepository.findAllSchedules();
+        LocalDateTime now = LocalDateTime.now(clock);
+        synchronized (this) {
+            schedules.forEach(endpoint -> {
+                endpoints.put(endpoint.getId(), endpoint);
+                index(endpoint);
+                push(endpoint, firstDueTime(endpoint, now));
+            });
+        }
+        log.info("Endpoint scheduler seeded with {} endpoints", schedules.size());
+    }
+
+    /**
+     * Add an endpoint to the schedule or apply changed settings to an already scheduled one
+     *
+     * @param endpoint the endpoint to schedule
+     */
+    public synchronized void schedule(ScheduledEndpoint endpoint) {
+        if (!owns(endpoint.getId())) {
+            // Checked by the instance leasing its partition
+            unschedule(endpoint.getId());
+            return;
+        }
+        ScheduledEndpoint existing = endpoints.get(endpoint.getId());
+        if (existing == null) {
+            endpoints.put(endpoint.getId(), endpoint);
+            index(endpoint);
+            push(endpoint, firstDueTime(endpoint, LocalDateTime.now(clock)));
+            return;
+        }
+
+        unindex(existing);
+        existing.copySettingsFrom(endpoint);
+        index(existing);
+        // An in-flight endpoint is re-queued with the new interval once its check completes
+        if (!existing.isInFlight()) {
+            push(existing, firstDueTime(existing, LocalDateTime.now(clock)));
+        }
+    }
+
+    /**
+     * Remove an endpoint from the schedule
+     *
+     * @param endpointId the endpoint ID
+     */
+    public synchronized void unschedule(Long endpointId) {
+        ScheduledEndpoint removed = endpoints.remove(endpointId);
+        if (removed != null) {
+            unindex(removed);
+            // Invalidates any heap entry still referring to the endpoint
+            removed.nextGeneration();
+        }
+    }
+
+    /**
+     * Take endpoints whose due time has passed. Returned endpoints are marked in flight and are
+     * not returned again until {@link #complete} or {@link #release} is called for them.
+     *
+     * @param now   the current time
+     * @param limit the maximum number of endpoints to return
+     * @return the due endpoints, earliest first, or earliest first per owner with fair dispatching
+     */
+    public synchronized List<ScheduledEndpoint> pollDue(LocalDateTime now, int limit) {
+        long nowMillis = toEpochMilli(now);
+        List<ScheduledEndpoint> due = new ArrayList<>();
+        lastPollNanos = System.nanoTime();
+        if (clustered && lastPollNanos - leaseValidUntil > 0) {
+            // Leases could not be renewed in time, another instance may already own the partitions
+            lagMillis = 0;
+            return due;
+        }
+
+        if (fairness.isEnabled()) {
+            pollFair(nowMillis, limit, due);
+        } else {
+            while (due.size() < limit && !dueQueue.isEmpty() && dueQueue.peek().dueAt <= nowMillis) {
+                DueEntry entry = dueQueue.poll();
+                if (isStale(entry)) {
+                    continue;
+                }
+                take(entry.endpoint);
+                due.add(entry.endpoint);
+            }
+        }
+
+        // Endpoints still due after this poll wait for a later tick
+        DueEntry next = peekLive();
+        long oldestDue = next != null ? next.dueAt : Long.MAX_VALUE;
+        for (TenantQueue tenant : activeTenants) {
+            DueEntry waiting = peekLive(tenant);
+            if (waiting != null) {
+                oldestDue = Math.min(oldestDue, waiting.dueAt);
+            }
+        }
+        lagMillis = oldestDue != Long.MAX_VALUE ? Math.max(0, nowMillis - oldestDue) : 0;
+        return due;
+    }
+
+    /**
+     * Take endpoints that can share the probe requests of already polled endpoints and fall due before
+     * the given time, so one request answers them all. Returned endpoints are marked in flight like
+     * the ones returned by {@link #pollDue}. Endpoints are only found with probe coalescing enabled.
+     *
+     * @param polled endpoints polled for checking
+     * @param until  latest due time of the endpoints to take early
+     * @return the endpoints sharing a probe request with one of the polled endpoints
+     */
+    public synchronized List<ScheduledEndpoint> pollSharing(Collection<ScheduledEndpoint> polled, LocalDateTime until) {
+        long untilMillis = toEpochMilli(until);
+        List<ScheduledEndpoint> sharing = new ArrayList<>();
+        Set<ProbeRequest> requests = new HashSet<>();
+        for (ScheduledEndpoint endpoint : polled) {
+            if (!requests.add(endpoint.getProbeRequest())) {
+                continue;
+            }
+            for (ScheduledEndpoint other : sharedProbes.getOrDefault(endpoint.getProbeRequest(), Collections.emptySet())) {
+                // Indexed endpoints that are not in flight always have a live heap entry at their due time
+                if (!other.isInFlight() && other.getDueAt() <= untilMillis) {
+                    take(other);
+                    sharing.add(other);
+                }
+            }
+        }
+        return sharing;
+    }
+
+    /**
+     * Track the outcome of a check of a polled endpoint, before it is completed
+     *
+     * @param endpoint the checked endpoint
+     * @param failure  what the check failed with, e.g. status and error message, null if it succeeded
+     * @return true if the check failed exactly like the previous one and is to be collapsed into its result
+     */
+    public synchronized boolean recordOutcome(ScheduledEndpoint endpoint, String failure) {
+        CircuitState before = endpoint.getCircuitState();
+        int failureThreshold = backoff.isEnabled() ? backoff.getFailureThreshold() : Integer.MAX_VALUE;
+        boolean repeat = endpoint.recordOutcome(failure, failureThreshold);
+
+        if (before != CircuitState.CLOSED && endpoint.getCircuitState() == CircuitState.CLOSED) {
+            log.info("Endpoint {} recovered, checking it every {} s again", endpoint.getId(), endpoint.getMonitoringInterval());
+        } else if (before == CircuitState.CLOSED && endpoint.getCircuitState() == CircuitState.OPEN) {
+            log.info("Endpoint {} failed {} times in a row, backing off", endpoint.getId(), endpoint.getConsecutiveFailures());
+        }
+        return repeat && backoff.isCollapseRepeats();
+    }
+
+    /**
+     * Re-queue an endpoint after its check has been performed, after its interval or, while its circuit
+     * is open, after the backoff delay
+     *
+     * @param endpoint  the checked endpoint
+     * @param checkDate the date of the check
+     */
+    public synchronized void complete(ScheduledEndpoint endpoint, LocalDateTime checkDate) {
+        finish(endpoint);
+        endpoint.setLastCheckDate(checkDate);
+        if (endpoints.get(endpoint.getId()) == endpoint) {
+            push(endpoint, alignToPhase(endpoint, toEpochMilli(checkDate) + nextDelayMillis(endpoint)));
+        }
+    }
+
+    /**
+     * Return an endpoint that was polled but could not be checked, keeping it due
+     *
+     * @param endpoint the endpoint
+     * @param now      the current time
+     */
+    public synchronized void release(ScheduledEndpoint endpoint, LocalDateTime now) {
+        finish(endpoint);
+        if (endpoints.get(endpoint.getId()) == endpoint) {
+            push(endpoint, toEpochMilli(now));
+        }
+    }
+
+    /**
+     * Get how long the most overdue endpoint had been waiting past its due time after the last poll
+     *
+     * @return lag in milliseconds, 0 if every due endpoint was taken
+     */
+    public long lagMillis() {
+        return lagMillis;
+    }
+
+    /**
+     * Get the time since due endpoints were last polled
+     *
+     * @return milliseconds since the last {@link #pollDue}
+     */
+    public long millisSinceLastPoll() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastPollNanos);
+    }
+
+    /**
+     * Get the number of scheduled endpoints
+     *
+     * @return number of endpoints
+     */
+    public synchronized int size() {
+        return endpoints.size();
+    }
+
+    /**
+     * Whether the jobs that work across all endpoints, such as retention, run on this instance. In cluster
+     * mode only the holder of partition 0 runs them, so they do not run on every instance at once.
+     *
+     * @return true outside cluster mode, or while partition 0 is leased here
+     */
+    public synchronized boolean runsClusterJobs() {
+        return !clustered || (ownedPartitions.get(0) && System.nanoTime() - leaseValidUntil < 0);
+    }
+
+    /**
+     * Start checking the endpoints of newly leased partitions
+     *
+     * @param partitions the partitions
+     */
+    synchronized void assignPartitions(Collection<Integer> partitions) {
+        partitions.forEach(ownedPartitions::set);
+        // Loaded under the lock, so changes applied concurrently by the change feed cannot be overwritten
+        List<ScheduledEndpoint> schedules = monitoredEndpointRepository.findSchedulesInPartitions(partitionCount, partitions);
+        schedules.forEach(this::schedule);
+        log.info("Assigned partitions {} with {} endpoints", partitions, schedules.size());
+    }
+
+    /**
+     * Stop checking the endpoints of a partition. Checks already running are tracked until they
+     * complete, see {@link #hasInFlight}.
+     *
+     * @param partition the partition
+     */
+    synchronized void revokePartition(int partition) {
+        ownedPartitions.clear(partition);
+        Set<ScheduledEndpoint> inFlight = new HashSet<>();
+        Iterator<ScheduledEndpoint> iterator = endpoints.values().iterator();
+        while (iterator.hasNext()) {
+            ScheduledEndpoint endpoint = iterator.next();
+            if (partitionOf(endpoint.getId(), partitionCount) == partition) {
+                iterator.remove();
+                unindex(endpoint);
+                endpoint.nextGeneration();
+                if (endpoint.isInFlight()) {
+                    inFlight.add(endpoint);
+                }
+            }
+        }
+        if (!inFlight.isEmpty()) {
+            handedOver.computeIfAbsent(partition, p -> new HashSet<>()).addAll(inFlight);
+        }
+        log.info("Revoked partition {}, {} checks still running", partition, inFlight.size());
+    }
+
+    /**
+     * Whether checks started before a partition was revoked are still running
+     *
+     * @param partition the partition
+     * @return true while any of them is running
+     */
+    synchronized boolean hasInFlight(int partition) {
+        Set<ScheduledEndpoint> inFlight = handedOver.get(partition);
+        if (inFlight == null) {
+            return false;
+        }
+        inFlight.removeIf(endpoint -> !endpoint.isInFlight());
+        if (inFlight.isEmpty()) {
+            handedOver.remove(partition);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Allow dispatching checks until the given time
+     *
+     * @param validUntil nano time until which the leases of this instance are known to be held
+     */
+    void extendLeases(long validUntil) {
+        this.leaseValidUntil = validUntil;
+    }
+
+    /**
+     * Get the partition an endpoint belongs to
+     *
+     * @param endpointId the endpoint ID
+     * @param partitions the number of partitions
+     * @return the partition
+     */
+    static int partitionOf(Long endpointId, int partitions) {
+        // Matches MOD in the partition query for the positive IDs the database generates
+        return (int) Math.floorMod(endpointId, (long) partitions);
+    }
+
+    private boolean owns(Long endpointId) {
+        return !clustered || ownedPartitions.get(partitionOf(endpointId, partitionCount));
+    }
+
+    private boolean isStale(DueEntry entry) {
+        ScheduledEndpoint endpoint = entry.endpoint;
+        return endpoint.getGeneration() != entry.generation
+                || endpoint.isInFlight()
+                || endpoints.get(endpoint.getId()) != endpoint;
+    }
+
+    /**
+     * Move all due endpoints to the queues of their owners, then take endpoints by deficit round-robin:
+     * on its turn every owner earns its weight in checks and spends it on its earliest due endpoints,
+     * as far as its quota allows. Turns continue where the previous poll stopped.
+     */
+    private void pollFair(long nowMillis, int limit, List<ScheduledEndpoint> due) {
+        while (!dueQueue.isEmpty() && dueQueue.peek().dueAt <= nowMillis) {
+            DueEntry entry = dueQueue.poll();
+            if (isStale(entry)) {
+                continue;
+            }
+            TenantQueue tenant = tenant(entry.endpoint.getOwnerId());
+            tenant.ready.add(entry);
+            if (!tenant.active) {
+                tenant.active = true;
+                activeTenants.add(tenant);
+            }
+        }
+
+        // Owners at their quota sit out the rest of this poll
+        List<TenantQueue> limited = new ArrayList<>();
+        boolean progress = true;
+        while (progress && due.size() < limit) {
+            progress = false;
+            for (int turns = activeTenants.size(); turns > 0 && due.size() < limit; turns--) {
+                TenantQueue tenant = activeTenants.poll();
+                tenant.deficit += Math.max(1, tenant.quota.getWeight());
+                while (tenant.deficit >= 1 && due.size() < limit && tenant.mayStart(nowMillis)) {
+                    DueEntry entry = tenant.ready.poll();
+                    if (entry == null) {
+                        break;
+                    }
+                    if (isStale(entry)) {
+                        continue;
+                    }
+                    take(entry.endpoint);
+                    tenant.consumeToken();
+                    tenant.deficit--;
+                    due.add(entry.endpoint);
+                    progress = true;
+                }
+
+                if (peekLive(tenant) == null) {
+                    tenant.active = false;
+                    tenant.deficit = 0;
+                    retireIfIdle(tenant);
+                } else if (!tenant.mayStart(nowMillis)) {
+                    // Unused turns do not pile up while the quota holds the owner back
+                    tenant.deficit = 0;
+                    limited.add(tenant);
+                } else {
+                    activeTenants.add(tenant);
+                }
+            }
+        }
+        activeTenants.addAll(limited);
+    }
+
+    private TenantQueue tenant(Long ownerId) {
+        return tenants.computeIfAbsent(ownerId, id ->
+                new TenantQueue(id, fairness.getTenants().getOrDefault(id, fairness.getDefaults())));
+    }
+
+    private void retireIfIdle(TenantQueue tenant) {
+        if (!tenant.active && tenant.inFlight == 0) {
+            tenants.remove(tenant.ownerId);
+        }
+    }
+
+    /**
+     * Drop stale entries from the front of an owner's queue and return the first live one
+     */
+    private DueEntry peekLive(TenantQueue tenant) {
+        while (!tenant.ready.isEmpty() && isStale(tenant.ready.peek())) {
+            tenant.ready.poll();
+        }
+        return tenant.ready.peek();
+    }
+
+    /**
+     * Drop stale entries from the top of the heap and return the first live one
+     */
+    private DueEntry peekLive() {
+        while (!dueQueue.isEmpty() && isStale(dueQueue.peek())) {
+            dueQueue.poll();
+        }
+        return dueQueue.peek();
+    }
+
+    private void push(ScheduledEndpoint endpoint, long dueAt) {
+        endpoint.setDueAt(dueAt);
+        dueQueue.add(new DueEntry(dueAt, endpoint, endpoint.nextGeneration()));
+    }
+
+    /**
+     * Mark an endpoint in flight, which also makes its heap entry stale
+     */
+    private void take(ScheduledEndpoint endpoint) {
+        endpoint.setInFlight(true);
+        if (fairness.isEnabled()) {
+            tenant(endpoint.getOwnerId()).inFlight++;
+        }
+        if (endpoint.getCircuitState() == CircuitState.OPEN) {
+            // The backoff delay has passed, this check decides whether the circuit closes again
+            endpoint.setCircuitState(CircuitState.HALF_OPEN);
+        }
+    }
+
+    private void finish(ScheduledEndpoint endpoint) {
+        if (!endpoint.isInFlight()) {
+            return;
+        }
+        endpoint.setInFlight(false);
+        TenantQueue tenant = tenants.get(endpoint.getOwnerId());
+        if (tenant != null) {
+            tenant.inFlight--;
+            retireIfIdle(tenant);
+        }
+    }
+
+    private void index(ScheduledEndpoint endpoint) {
+        if (coalescing) {
+            sharedProbes.computeIfAbsent(endpoint.getProbeRequest(), request -> new HashSet<>()).add(endpoint);
+        }
+    }
+
+    private void unindex(ScheduledEndpoint endpoint) {
+        Set<ScheduledEndpoint> sharing = sharedProbes.get(endpoint.getProbeRequest());
+        if (sharing != null && sharing.remove(endpoint) && sharing.isEmpty()) {
+            sharedProbes.remove(endpoint.getProbeRequest());
+        }
+    }
+
+    private long nextDelayMillis(ScheduledEndpoint endpoint) {
+        long intervalMillis = endpoint.getMonitoringInterval() * 1000L;
+        if (endpoint.getCircuitState() == CircuitState.CLOSED) {
+            return intervalMillis;
+        }
+        // Grows with every failure since the circuit opened
+        int exponent = endpoint.getConsecutiveFailures() - backoff.getFailureThreshold() + 1;
+        double delay = intervalMillis * Math.pow(backoff.getMultiplier(), exponent);
+        return Math.max(intervalMillis, (long) Math.min(delay, backoff.getMaxDelay().toMillis()));
+    }
+
+    private long firstDueTime(ScheduledEndpoint endpoint, LocalDateTime now) {
+        LocalDateTime lastCheck = endpoint.getLastCheckDate();
+        long nowMillis = toEpochMilli(now);
+        long intervalMillis = endpoint.getMonitoringInterval() * 1000L;
+        if (!phaseSpread) {
+            // If never checked, check it now
+            return lastCheck == null ? nowMillis : toEpochMilli(lastCheck) + intervalMillis;
+        }
+
+        if (lastCheck == null) {
+            // The endpoint's first phase slot, so endpoints created together do not all fire now
+            return nowMillis + Math.floorMod(phaseOf(endpoint) % intervalMillis - nowMillis, intervalMillis);
+        }
+        long dueAt = alignToPhase(endpoint, toEpochMilli(lastCheck) + intervalMillis);
+        if (dueAt >= nowMillis) {
+            return dueAt;
+        }
+        // Overdue, e.g. after downtime: the backlog is smeared over the catch-up window, later checks return to the phase
+        long window = Math.min(intervalMillis, catchUpWindowMillis);
+        return window > 0 ? nowMillis + Math.floorMod(phaseOf(endpoint), window) : nowMillis;
+    }
+
+    /**
+     * Move a due time to the nearest phase slot of the endpoint. Slots repeat every interval at an offset
+     * derived from the endpoint ID, so the checks of all endpoints are spread evenly over time and stay so.
+     * The nearest slot is taken, so checks started a little late do not skip a whole interval.
+     */
+    private long alignToPhase(ScheduledEndpoint endpoint, long dueAt) {
+        if (!phaseSpread) {
+            return dueAt;
+        }
+        long intervalMillis = endpoint.getMonitoringInterval() * 1000L;
+        long untilSlot = Math.floorMod(phaseOf(endpoint) % intervalMillis - dueAt, intervalMillis);
+        return untilSlot <= intervalMillis / 2 ? dueAt + untilSlot : dueAt + untilSlot - intervalMillis;
+    }
+
+    /**
+     * With probe coalescing endpoints probing the same URL share a phase, so with the same interval
+     * they fall due together and one request answers them all
+     */
+    private long phaseOf(ScheduledEndpoint endpoint) {
+        return phaseHash(coalescing ? endpoint.getProbeRequest().getUrl().hashCode() : endpoint.getId());
+    }
+
+    /**
+     * Spread endpoint IDs, which are mostly consecutive, over the whole long range. Derived from the key only,
+     * so every instance and every restart puts an endpoint at the same phase.
+     */
+    static long phaseHash(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (hash ^ (hash >>> 31)) & Long.MAX_VALUE;
+    }
+
+    public static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Due endpoints and quota usage of one owner
+     */
+    private static final class TenantQueue {
+        private final Long ownerId;
+        private final MonitoringProperties.Tenant quota;
+        private final ArrayDeque<DueEntry> ready = new ArrayDeque<>();
+        private boolean active;
+        private long deficit;
+        private int inFlight;
+        // Token bucket of the rate quota, refilled on use
+        private double tokens;
+        private long refilledAt = -1;
+
+        private TenantQueue(Long ownerId, MonitoringProperties.Tenant quota) {
+            this.ownerId = ownerId;
+            this.quota = quota;
+        }
+
+        private boolean mayStart(long nowMillis) {
+            if (quota.getMaxConcurrency() > 0 && inFlight >= quota.getMaxConcurrency()) {
+                return false;
+            }
+            if (quota.getMaxRate() <= 0) {
+                return true;
+            }
+            // Bursts of up to a second's worth of checks
+            double burst = Math.max(1, quota.getMaxRate());
+            if (refilledAt < 0) {
+                tokens = burst;
+            } else {
+                tokens = Math.min(burst, tokens + Math.max(0, nowMillis - refilledAt) * quota.getMaxRate() / 1000);
+            }
+            refilledAt = Math.max(refilledAt, nowMillis);
+            return tokens >= 1;
+        }
+
+        private void consumeToken() {
+            if (quota.getMaxRate() > 0) {
+                tokens--;
+            }
+        }
+    }
+
+    private static final class DueEntry implements Comparable<DueEntry> {
+        private final long dueAt;
+        private final ScheduledEndpoint endpoint;
+        private final long generation;
+
+        private DueEntry(long dueAt, ScheduledEndpoint endpoint, long generation) {
+            this.dueAt = dueAt;
+            this.endpoint = endpoint;
+            this.generation = generation;
+        }
+
+        @Override
+        public int compareTo(DueEntry other) {
+            int byDueTime = Long.compare(dueAt, other.dueAt);
+            return byDueTime != 0 ? byDueTime : Long.compare(endpoint.getId(), other.endpoint.getId());
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.service.MonitoringResultWriter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Spreads endpoint partitions over the running instances through leases in the shared database.
+ * Every instance heartbeats, renews its leases, gives up partitions beyond its fair share and claims
+ * free or expired ones until it holds its share. A partition is handed over only after the checks
+ * it started have completed and their results are written, so the next owner continues from the
+ * stored last check dates without checking an endpoint twice. Partitions of an instance that died
+ * move once its leases expire.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "monitoring.cluster", name = "enabled", havingValue = "true")
+public class PartitionLeaseManager {
+
+    // Leases are renewed every 5 seconds, dispatching stops this long before they would expire
+    private static final Duration RENEWAL_MARGIN = Duration.ofSeconds(5);
+    // Heartbeats older than this many lease durations are removed
+    private static final int NODE_EXPIRY_LEASES = 10;
+
+    private final EndpointScheduler endpointScheduler;
+    private final MonitoringResultWriter monitoringResultWriter;
+    private final JdbcTemplate jdbcTemplate;
+    private final String nodeId;
+    private final int partitions;
+    private final Duration leaseDuration;
+
+    // Accessed by the renewal thread only, and at shutdown after renewals stopped
+    private final TreeSet<Integer> owned = new TreeSet<>();
+    // Partitions no longer checked here but not released yet, with the writer position to wait for
+    private final Map<Integer, Long> handovers = new HashMap<>();
+    private long leaseValidUntil;
+    private boolean seeded;
+    private volatile int ownedCount;
+    private volatile int liveNodes;
+    private volatile boolean stopped;
+
+    public PartitionLeaseManager(EndpointScheduler endpointScheduler, MonitoringResultWriter monitoringResultWriter,
+                                 JdbcTemplate jdbcTemplate, MonitoringProperties properties,
+                                 MeterRegistry meterRegistry) {
+        MonitoringProperties.Cluster cluster = properties.getCluster();
+        this.endpointScheduler = endpointScheduler;
+        this.monitoringResultWriter = monitoringResultWriter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.nodeId = StringUtils.hasText(cluster.getNodeId()) ? cluster.getNodeId() : UUID.randomUUID().toString();
+        this.partitions = cluster.getPartitions();
+        this.leaseDuration = cluster.getLeaseDuration();
+
+        Gauge.builder("monitoring.cluster.partitions", this, manager -> manager.ownedCount)
+                .description("Endpoint partitions checked by this instance")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.cluster.nodes", this, manager -> manager.liveNodes)
+                .description("Instances sharing the endpoint partitions")
+                .register(meterRegistry);
+        log.info("Joining cluster as node {}", nodeId);
+    }
+
+    /**
+     * Heartbeat, renew leases and move partitions towards an even spread
+     */
+    @Scheduled(fixedDelay = 5000)
+    public synchronized void renewLeases() {
+        if (stopped) {
+            return;
+        }
+        long renewalStarted = System.nanoTime();
+        try {
+            LocalDateTime now = jdbcTemplate.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class).toLocalDateTime();
+            if (!seeded) {
+                seedLeases(now);
+            }
+            heartbeat(now);
+            renew(now, renewalStarted);
+            completeHandovers();
+            rebalance(now);
+        } catch (DataAccessException e) {
+            log.warn("Could not renew partition leases: {}", e.getMessage());
+            if (System.nanoTime() - leaseValidUntil > 0 && (!owned.isEmpty() || !handovers.isEmpty())) {
+                // The leases may be taken over by now, stop checking without waiting for the database
+                log.warn("Partition leases expired, revoking partitions {}", owned);
+                owned.forEach(endpointScheduler::revokePartition);
+                owned.clear();
+                handovers.clear();
+            }
+        }
+        ownedCount = owned.size();
+    }
+
+    /**
+     * Hand all partitions over before the instance stops, so others take over without waiting for lease expiry
+     */
+    @PreDestroy
+    public synchronized void shutdown() {
+        stopped = true;
+        owned.forEach(partition -> {
+            endpointScheduler.revokePartition(partition);
+            handovers.put(partition, null);
+        });
+        owned.clear();
+
+        long deadline = System.nanoTime() + leaseDuration.minus(RENEWAL_MARGIN).toNanos();
+        try {
+            while (!handovers.isEmpty() && System.nanoTime() < deadline) {
+                completeHandovers();
+                if (!handovers.isEmpty()) {
+                    Thread.sleep(100);
+                }
+            }
+            if (!handovers.isEmpty()) {
+                log.warn("Checks of partitions {} did not finish, leaving them to expire", handovers.keySet());
+            }
+            jdbcTemplate.update("DELETE FROM cluster_nodes WHERE node_id = ?", nodeId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (DataAccessException e) {
+            log.warn("Could not release partition leases, they expire on their own: {}", e.getMessage());
+        }
+    }
+
+    private void seedLeases(LocalDateTime now) {
+        List<Object[]> batchArgs = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            batchArgs.add(new Object[]{partition, Timestamp.valueOf(now)});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO partition_leases (partition_id, owner_node, lease_until) " +
+                "VALUES (?, NULL, ?) ON DUPLICATE KEY UPDATE partition_id = partition_id", batchArgs);
+        seeded = true;
+    }
+
+    private void heartbeat(LocalDateTime now) {
+        Timestamp timestamp = Timestamp.valueOf(now);
+        jdbcTemplate.update("INSERT INTO cluster_nodes (node_id, started_at, heartbeat_at) VALUES (?, ?, ?) " +
+                "ON DUPLICATE KEY UPDATE heartbeat_at = ?", nodeId, timestamp, timestamp, timestamp);
+        jdbcTemplate.update("DELETE FROM cluster_nodes WHERE heartbeat_at < ?",
+                Timestamp.valueOf(now.minus(leaseDuration.multipliedBy(NODE_EXPIRY_LEASES))));
+    }
+
+    /**
+     * Extend all leases of this instance and drop the partitions it turns out to have lost
+     */
+    private void renew(LocalDateTime now, long renewalStarted) {
+        jdbcTemplate.update("UPDATE partition_leases SET lease_until = ? WHERE owner_node = ?",
+                Timestamp.valueOf(now.plus(leaseDuration)), nodeId);
+        List<Integer> held = jdbcTemplate.queryForList(
+                "SELECT partition_id FROM partition_leases WHERE owner_node = ? AND partition_id < ?",
+                Integer.class, nodeId, partitions);
+
+        // Measured from before the renewal, so the local deadline passes before the one in the database
+        leaseValidUntil = renewalStarted + leaseDuration.minus(RENEWAL_MARGIN).toNanos();
+        endpointScheduler.extendLeases(leaseValidUntil);
+
+        List<Integer> lost = new ArrayList<>();
+        owned.stream().filter(partition -> !held.contains(partition)).forEach(lost::add);
+        if (!lost.isEmpty()) {
+            log.warn("Lost partitions {} to other nodes", lost);
+            lost.forEach(partition -> {
+                endpointScheduler.revokePartition(partition);
+                owned.remove(partition);
+            });
+        }
+        handovers.keySet().retainAll(held);
+
+        // Leases left over by an earlier run with the same node ID
+        List<Integer> adopted = new ArrayList<>();
+        held.stream().filter(partition -> !owned.contains(partition) && !handovers.containsKey(partition))
+                .forEach(adopted::add);
+        if (!adopted.isEmpty()) {
+            endpointScheduler.assignPartitions(adopted);
+            owned.addAll(adopted);
+        }
+    }
+
+    /**
+     * Release partitions whose running checks have completed and whose results are written
+     */
+    private void completeHandovers() {
+        List<Integer> released = new ArrayList<>();
+        handovers.replaceAll((partition, writerPosition) -> {
+            if (endpointScheduler.hasInFlight(partition)) {
+                return null;
+            }
+            if (writerPosition == null) {
+                return monitoringResultWriter.enqueuedCount();
+            }
+            if (monitoringResultWriter.isWritten(writerPosition)) {
+                released.add(partition);
+            }
+            return writerPosition;
+        });
+        for (Integer partition : released) {
+            // Free right away, the next owner can claim it without waiting for the lease to expire
+            jdbcTemplate.update("UPDATE partition_leases SET owner_node = NULL WHERE partition_id = ? AND owner_node = ?",
+                    partition, nodeId);
+            handovers.remove(partition);
+            log.info("Released partition {}", partition);
+        }
+    }
+
+    /**
+     * Give up partitions beyond the fair share of this instance or claim free ones up to it
+     */
+    private void rebalance(LocalDateTime now) {
+        List<String> nodes = jdbcTemplate.queryForList(
+                "SELECT node_id FROM cluster_nodes WHERE heartbeat_at > ? ORDER BY node_id",
+                String.class, Timestamp.valueOf(now.minus(leaseDuration)));
+        liveNodes = nodes.size();
+        int index = nodes.indexOf(nodeId);
+        if (index < 0) {
+            return;
+        }
+        // Every instance computes the same shares, the first ones in node order take the remainder
+        int share = partitions / nodes.size() + (index < partitions % nodes.size() ? 1 : 0);
+
+        while (owned.size() > share) {
+            Integer partition = owned.pollLast();
+            endpointScheduler.revokePartition(partition);
+            handovers.put(partition, null);
+        }
+        if (!handovers.isEmpty()) {
+            // Claim only once the surplus is handed over, that keeps the spread from oscillating
+            return;
+        }
+
+        int wanted = share - owned.size();
+        if (wanted <= 0) {
+            return;
+        }
+        List<Integer> claimable = jdbcTemplate.queryForList(
+                "SELECT partition_id FROM partition_leases WHERE partition_id < ? " +
+                        "AND (owner_node IS NULL OR lease_until < ?) ORDER BY partition_id",
+                Integer.class, partitions, Timestamp.valueOf(now));
+        List<Integer> claimed = new ArrayList<>();
+        for (Integer partition : claimable) {
+            if (claimed.size() >= wanted) {
+                break;
+            }
+            // Conditional, so of several instances claiming the same partition only one succeeds
+            int updated = jdbcTemplate.update("UPDATE partition_leases SET owner_node = ?, lease_until = ? " +
+                            "WHERE partition_id = ? AND (owner_node IS NULL OR lease_until < ?)",
+                    nodeId, Timestamp.valueOf(now.plus(leaseDuration)), partition, Timestamp.valueOf(now));
+            if (updated == 1) {
+                claimed.add(partition);
+            }
+        }
+        if (!claimed.isEmpty()) {
+            endpointScheduler.assignPartitions(claimed);
+            owned.addAll(claimed);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.model.CaptureMode;
+import com.monitoring.app.model.MonitoredEndpoint;
+import com.monitoring.app.probe.ProbeRequest;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Lightweight in-memory view of a monitored endpoint kept by the {@link EndpointScheduler}.
+ * Holds only what is needed to decide when and what to probe, so ticks never touch the database.
+ */
+@Getter
+public class ScheduledEndpoint {
+
+    private final Long id;
+    private final Long ownerId;
+    private volatile String url;
+    private volatile int monitoringInterval;
+    private volatile CaptureMode captureMode;
+    private volatile Integer captureLimit;
+    private volatile LocalDateTime lastCheckDate;
+    // Equal for endpoints whose checks can share one request
+    private volatile ProbeRequest probeRequest;
+
+    // Mutated only while holding the scheduler lock
+    private long generation;
+    private long dueAt;
+    private boolean inFlight;
+    private int consecutiveFailures;
+    private String lastFailure;
+    private CircuitState circuitState = CircuitState.CLOSED;
+
+    public ScheduledEndpoint(Long id, Long ownerId, String url, Integer monitoringInterval,
+                             CaptureMode captureMode, Integer captureLimit, LocalDateTime lastCheckDate) {
+        this.id = id;
+        this.ownerId = ownerId;
+        this.url = url;
+        this.monitoringInterval = monitoringInterval;
+        this.captureMode = captureMode;
+        this.captureLimit = captureLimit;
+        this.lastCheckDate = lastCheckDate;
+        this.probeRequest = ProbeRequest.of(url, captureMode, captureLimit);
+    }
+
+    /**
+     * Create a scheduler view from an endpoint entity
+     *
+     * @param endpoint the endpoint entity
+     * @return the scheduled endpoint
+     */
+    public static ScheduledEndpoint from(MonitoredEndpoint endpoint) {
+        return new ScheduledEndpoint(
+                endpoint.getId(),
+                endpoint.getOwner().getId(),
+                endpoint.getUrl(),
+                endpoint.getMonitoringInterval(),
+                endpoint.getCaptureMode(),
+                endpoint.getCaptureLimit(),
+                endpoint.getLastCheckDate()
+        );
+    }
+
+    void copySettingsFrom(ScheduledEndpoint other) {
+        this.url = other.url;
+        this.monitoringInterval = other.monitoringInterval;
+        this.captureMode = other.captureMode;
+        this.captureLimit = other.captureLimit;
+        this.probeRequest = other.probeRequest;
+    }
+
+    void setLastCheckDate(LocalDateTime lastCheckDate) {
+        this.lastCheckDate = lastCheckDate;
+    }
+
+    long nextGeneration() {
+        return ++generation;
+    }
+
+    void setDueAt(long dueAt) {
+        this.dueAt = dueAt;
+    }
+
+    void setInFlight(boolean inFlight) {
+        this.inFlight = inFlight;
+    }
+
+    void setCircuitState(CircuitState circuitState) {
+        this.circuitState = circuitState;
+    }
+
+    /**
+     * Track the outcome of a check
+     *
+     * @param failure          what the check failed with, null if it succeeded
+     * @param failureThreshold consecutive failures that open the circuit
+     * @return true if the check failed exactly like the previous one
+     */
+    boolean recordOutcome(String failure, int failureThreshold) {
+        if (failure == null) {
+            consecutiveFailures = 0;
+            lastFailure = null;
+            circuitState = CircuitState.CLOSED;
+            return false;
+        }
+        boolean repeat = failure.equals(lastFailure);
+        lastFailure = failure;
+        consecutiveFailures++;
+        circuitState = consecutiveFailures >= failureThreshold ? CircuitState.OPEN : CircuitState.CLOSED;
+        return repeat;
+    }
+}
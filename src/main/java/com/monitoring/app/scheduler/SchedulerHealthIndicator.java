@@ -0,0 +1,37 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.config.MonitoringProperties;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the scheduler DOWN when due endpoints wait longer than {@code monitoring.scheduler.max-lag}
+ * for their checks, because probes cannot keep up, or when the scheduler tick has stopped running
+ */
+@Component
+public class SchedulerHealthIndicator implements HealthIndicator {
+
+    private final EndpointScheduler endpointScheduler;
+    private final long maxLagMillis;
+
+    public SchedulerHealthIndicator(EndpointScheduler endpointScheduler, MonitoringProperties properties) {
+        this.endpointScheduler = endpointScheduler;
+        this.maxLagMillis = properties.getScheduler().getMaxLag().toMillis();
+    }
+
+    @Override
+    public Health health() {
+        long lagMillis = endpointScheduler.lagMillis();
+        long sinceLastPollMillis = endpointScheduler.millisSinceLastPoll();
+        Health.Builder builder = lagMillis > maxLagMillis || sinceLastPollMillis > maxLagMillis
+                ? Health.down()
+                : Health.up();
+        return builder
+                .withDetail("lagMillis", lagMillis)
+                .withDetail("millisSinceLastTick", sinceLastPollMillis)
+                .withDetail("maxLagMillis", maxLagMillis)
+                .withDetail("endpoints", endpointScheduler.size())
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.monitoring.app.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.User;
+import com.monitoring.app.service.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Size- and TTL-bounded cache of access token to user. Unknown tokens are cached as well,
+ * with a shorter TTL, so repeated requests with bad tokens do not reach the database either.
+ */
+@Slf4j
+@Component
+public class AccessTokenCache {
+
+    private final UserService userService;
+    private final Cache<String, User> users;
+    private final Cache<String, Boolean> invalidTokens;
+    // Bumped by every invalidation, so a lookup overlapping one does not keep what it read before it
+    private final AtomicLong generation = new AtomicLong();
+
+    public AccessTokenCache(UserService userService, MonitoringProperties properties, MeterRegistry meterRegistry) {
+        MonitoringProperties.Auth auth = properties.getAuth();
+        this.userService = userService;
+        this.users = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(auth.getCacheSize())
+                .expireAfterWrite(auth.getCacheTtl())
+                .recordStats()
+                .<String, User>build(), "accessTokens");
+        this.invalidTokens = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(auth.getNegativeCacheSize())
+                .expireAfterWrite(auth.getNegativeCacheTtl())
+                .recordStats()
+                .<String, Boolean>build(), "invalidAccessTokens");
+    }
+
+    /**
+     * Find the user owning an access token
+     *
+     * @param accessToken the access token
+     * @return the user if the token is valid
+     */
+    public Optional<User> findUser(String accessToken) {
+        User cached = users.getIfPresent(accessToken);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        if (invalidTokens.getIfPresent(accessToken) != null) {
+            return Optional.empty();
+        }
+
+        long lookupGeneration = generation.get();
+        Optional<User> user = userService.findByAccessToken(accessToken);
+        if (user.isPresent()) {
+            users.put(accessToken, user.get());
+        } else {
+            invalidTokens.put(accessToken, Boolean.TRUE);
+        }
+        // An invalidation during the lookup may have run before the entry was put, the entry is dropped
+        // again as it may predate the change. Invalidations bump the generation before removing entries.
+        if (generation.get() != lookupGeneration) {
+            users.invalidate(accessToken);
+            invalidTokens.invalidate(accessToken);
+        }
+        return user;
+    }
+
+    /**
+     * Drop all cached tokens of a changed user once the change is committed
+     *
+     * @param event the user change
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        generation.incrementAndGet();
+        users.asMap().values().removeIf(user -> event.getUserId().equals(user.getId()));
+        // The user's new token may have been cached as invalid
+        if (event.getAccessToken() != null) {
+            invalidTokens.invalidate(event.getAccessToken());
+        }
+        log.debug("Invalidated cached access tokens of user {}", event.getUserId());
+    }
+}
@@ -3,8 +3,8 @@ package com.monitoring.app.security;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.monitoring.app.dto.ErrorResponse;
 import com.monitoring.app.model.User;
-import com.monitoring.app.service.UserService;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -21,13 +21,21 @@ import java.util.Optional;
 
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class AuthenticationFilter extends OncePerRequestFilter {
 
     private static final String ACCESS_TOKEN_HEADER = "X-Access-Token";
     
-    private final UserService userService;
+    private final AccessTokenCache accessTokenCache;
     private final ObjectMapper objectMapper;
+    private final Counter missingTokens;
+    private final Counter invalidTokens;
+
+    public AuthenticationFilter(AccessTokenCache accessTokenCache, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.accessTokenCache = accessTokenCache;
+        this.objectMapper = objectMapper;
+        this.missingTokens = authFailures(meterRegistry, "missing_token");
+        this.invalidTokens = authFailures(meterRegistry, "invalid_token");
+    }
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request, 
@@ -44,21 +52,30 @@ public class AuthenticationFilter extends OncePerRequestFilter {
         String accessToken = request.getHeader(ACCESS_TOKEN_HEADER);
         
         if (accessToken == null || accessToken.isEmpty()) {
+            missingTokens.increment();
             sendErrorResponse(response, HttpStatus.UNAUTHORIZED, "Access token is required");
             return;
         }
         
-        Optional<User> userOptional = userService.findByAccessToken(accessToken);
+        Optional<User> userOptional = accessTokenCache.findUser(accessToken);
         
         if (userOptional.isPresent()) {
             // Store user in request attribute for future use
             request.setAttribute("user", userOptional.get());
             filterChain.doFilter(request, response);
         } else {
+            invalidTokens.increment();
             sendErrorResponse(response, HttpStatus.UNAUTHORIZED, "Invalid access token");
         }
     }
 
+    private static Counter authFailures(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("monitoring.auth.failures")
+                .description("Requests rejected for a missing or unknown access token")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
     private void sendErrorResponse(HttpServletResponse response, HttpStatus status, String message) 
             throws IOException {
         response.setStatus(status.value());
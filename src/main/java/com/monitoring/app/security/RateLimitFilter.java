@@ -0,0 +1,106 @@
+package com.monitoring.app.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.ErrorResponse;
+import com.monitoring.app.model.User;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits API requests per access token. Runs after {@link AuthenticationFilter}, so only valid tokens
+ * get a budget and the limit of their user applies. Requests over the limit are answered with 429 and
+ * a Retry-After header before they reach a controller or the database.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String ACCESS_TOKEN_HEADER = "X-Access-Token";
+
+    private final MonitoringProperties.RateLimit rateLimit;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, TokenBucket> buckets;
+    private final Counter allowedRequests;
+    private final Counter rejectedRequests;
+
+    public RateLimitFilter(MonitoringProperties properties, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.rateLimit = properties.getRateLimit();
+        this.objectMapper = objectMapper;
+        this.buckets = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(rateLimit.getCacheSize())
+                .expireAfterAccess(rateLimit.getIdleTimeout())
+                .recordStats()
+                .<String, TokenBucket>build(), "rateLimitBuckets");
+        this.allowedRequests = rateLimited(meterRegistry, "allowed");
+        this.rejectedRequests = rateLimited(meterRegistry, "rejected");
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response,
+                                    @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+
+        // Requests let through without a user, e.g. CORS preflights, are not limited
+        Object user = request.getAttribute("user");
+        String accessToken = request.getHeader(ACCESS_TOKEN_HEADER);
+        if (!rateLimit.isEnabled() || !(user instanceof User) || accessToken == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        long nowNanos = System.nanoTime();
+        // No bucket is kept for users without a limit
+        TokenBucket bucket = buckets.get(accessToken, token -> newBucket((User) user, nowNanos));
+        long waitNanos = bucket != null ? bucket.tryConsume(nowNanos) : 0;
+        if (waitNanos == 0) {
+            allowedRequests.increment();
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        rejectedRequests.increment();
+        long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        ErrorResponse errorResponse = new ErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                HttpStatus.TOO_MANY_REQUESTS.getReasonPhrase(),
+                "Rate limit exceeded, retry in " + retryAfterSeconds + " s",
+                request.getRequestURI()
+        );
+        response.getWriter().write(objectMapper.writeValueAsString(errorResponse));
+    }
+
+    private TokenBucket newBucket(User user, long nowNanos) {
+        MonitoringProperties.Limit limit = rateLimit.getUsers().getOrDefault(user.getId(), rateLimit.getDefaults());
+        if (limit.getRequestsPerSecond() <= 0) {
+            return null;
+        }
+        return new TokenBucket(limit.getRequestsPerSecond(), limit.getBurst(), nowNanos);
+    }
+
+    private static Counter rateLimited(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("monitoring.rate.limit.requests")
+                .description("API requests checked against the per-token rate limit")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+}
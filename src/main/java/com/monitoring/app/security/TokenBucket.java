@@ -0,0 +1,45 @@
+package com.monitoring.app.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket without locks. Instead of a token count it keeps the time at which the bucket would be
+ * full again, which holds the whole state in one long, so concurrent requests update it with a
+ * compare-and-set instead of contending for a lock.
+ */
+final class TokenBucket {
+
+    // Nanos one request takes up of the budget
+    private final long costNanos;
+    // Nanos of budget a full bucket holds
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    TokenBucket(double requestsPerSecond, int burst, long nowNanos) {
+        this.costNanos = Math.max(1, (long) (1_000_000_000L / requestsPerSecond));
+        this.capacityNanos = costNanos * Math.max(1, burst);
+        this.fullAt = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Take a token if one is left
+     *
+     * @param nowNanos the current nano time
+     * @return 0 if a token was taken, otherwise nanos until the next token is available
+     */
+    long tryConsume(long nowNanos) {
+        while (true) {
+            long current = fullAt.get();
+            // A bucket that filled up in the past is full now, not ahead
+            long base = current - nowNanos > 0 ? current : nowNanos;
+            long next = base + costNanos;
+            long overdraft = next - nowNanos - capacityNanos;
+            if (overdraft > 0) {
+                return overdraft;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.monitoring.app.security;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a user or their access token changes, so cached authentications are dropped
+ */
+@Getter
+@AllArgsConstructor
+public class UserChangedEvent {
+    private final Long userId;
+    // The user's new access token, null if it did not change
+    private final String accessToken;
+}
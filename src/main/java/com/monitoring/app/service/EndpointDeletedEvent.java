@@ -0,0 +1,13 @@
+package com.monitoring.app.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published by {@link MonitoredEndpointService} when an endpoint is deleted
+ */
+@Getter
+@AllArgsConstructor
+public class EndpointDeletedEvent {
+    private final Long endpointId;
+}
@@ -0,0 +1,388 @@
+package com.monitoring.app.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.EndpointImportDto;
+import com.monitoring.app.dto.EndpointImportErrorDto;
+import com.monitoring.app.dto.MonitoredEndpointDto;
+import com.monitoring.app.exception.BadRequestException;
+import com.monitoring.app.model.CaptureMode;
+import com.monitoring.app.model.MonitoredEndpoint;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Creates and updates endpoints in bulk from a JSON array or NDJSON stream. Items are read one at a
+ * time and written in batches, each batch in its own transaction with new endpoints inserted in one
+ * JDBC batch. An item that fails validation or cannot be written is reported and the import goes on.
+ * An item with an ID updates that endpoint, otherwise it updates the user's endpoint with the same URL
+ * or creates a new one, so an import can be repeated. A URL that appears more than once in an import
+ * is taken from its first item, the later ones fail.
+ */
+@Slf4j
+@Service
+public class EndpointImportService {
+
+    public static final String NDJSON = "application/x-ndjson";
+
+    // Beyond this the report only counts failures, so a bad file cannot make it huge
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final String INSERT_SQL = "INSERT INTO monitored_endpoints (name, url, creation_date, " +
+            "monitoring_interval, capture_mode, capture_limit, retention_days, retention_rows, owner_id, deleted, " +
+            "modified_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, FALSE, ?)";
+
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final EndpointScheduler endpointScheduler;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final int batchSize;
+    private final int maxItems;
+
+    public EndpointImportService(MonitoredEndpointRepository monitoredEndpointRepository,
+                                 EndpointScheduler endpointScheduler, JdbcTemplate jdbcTemplate,
+                                 TransactionTemplate transactionTemplate, ObjectMapper objectMapper,
+                                 Validator validator, MonitoringProperties properties) {
+        MonitoringProperties.BulkImport bulkImport = properties.getBulkImport();
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.endpointScheduler = endpointScheduler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.batchSize = bulkImport.getBatchSize();
+        this.maxItems = bulkImport.getMaxItems();
+    }
+
+    /**
+     * Import endpoints for the user
+     *
+     * @param in     the request body
+     * @param ndjson true for one JSON object per line, false for a JSON array
+     * @param user   the user
+     * @return counts of created, updated and failed items and the errors of the failed ones
+     * @throws IOException if the request body cannot be read
+     */
+    public EndpointImportDto importEndpoints(InputStream in, boolean ndjson, User user) throws IOException {
+        EndpointImportDto report = new EndpointImportDto();
+        ItemReader reader = ndjson ? ndjsonReader(in) : arrayReader(in);
+        List<ImportItem> batch = new ArrayList<>(batchSize);
+        // At most maxItems URLs, kept for the whole import since repeats may land in different batches
+        Set<String> urls = new HashSet<>();
+        try {
+            ImportItem item;
+            while ((item = reader.next()) != null) {
+                if (item.index >= maxItems) {
+                    fail(report, item.index, null, "Too many endpoints, at most " + maxItems + " per import");
+                    break;
+                }
+                if (item.error != null) {
+                    fail(report, item.index, item.url, item.error);
+                    continue;
+                }
+                if (!urls.add(item.endpoint.getUrl())) {
+                    fail(report, item.index, item.url, "Duplicate URL, already imported by an earlier item");
+                    continue;
+                }
+                batch.add(item);
+                if (batch.size() >= batchSize) {
+                    writeBatch(batch, user, report);
+                    batch.clear();
+                }
+            }
+        } catch (JsonProcessingException e) {
+            // The rest of the body cannot be parsed, what was read so far is still imported
+            fail(report, reader.position(), null, "Malformed JSON, import stopped: " + e.getOriginalMessage());
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch, user, report);
+        }
+        log.info("Imported endpoints for user {}: {} created, {} updated, {} failed",
+                user.getId(), report.getCreated(), report.getUpdated(), report.getFailed());
+        return report;
+    }
+
+    private void writeBatch(List<ImportItem> batch, User user, EndpointImportDto report) {
+        BatchOutcome outcome;
+        try {
+            outcome = transactionTemplate.execute(status -> upsert(batch, user));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                ImportItem item = batch.get(0);
+                log.warn("Failed to import endpoint {}: {}", item.endpoint.getUrl(), e.getMessage());
+                fail(report, item.index, item.endpoint.getUrl(), "Could not be saved");
+                return;
+            }
+            // Retry one by one so a single bad item does not fail the whole batch
+            log.warn("Failed to import batch of {} endpoints, retrying individually: {}", batch.size(), e.getMessage());
+            batch.forEach(item -> writeBatch(Collections.singletonList(item), user, report));
+            return;
+        }
+
+        // Scheduled after commit, so a rolled back batch is never checked
+        outcome.updated.forEach(endpoint -> endpointScheduler.schedule(ScheduledEndpoint.from(endpoint)));
+        outcome.created.forEach(endpointScheduler::schedule);
+        outcome.errors.forEach((item, message) -> fail(report, item.index, item.endpoint.getUrl(), message));
+        report.setCreated(report.getCreated() + outcome.created.size());
+        report.setUpdated(report.getUpdated() + outcome.updated.size());
+    }
+
+    private BatchOutcome upsert(List<ImportItem> batch, User user) {
+        Set<Long> ids = batch.stream()
+                .map(item -> item.endpoint.getId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<String> urls = batch.stream()
+                .filter(item -> item.endpoint.getId() == null)
+                .map(item -> item.endpoint.getUrl())
+                .collect(Collectors.toSet());
+        Map<Long, MonitoredEndpoint> byId = new HashMap<>();
+        Map<String, MonitoredEndpoint> byUrl = new HashMap<>();
+        // Placeholders keep the IN lists from being empty, which MySQL rejects
+        monitoredEndpointRepository.findForImport(user.getId(), nonEmpty(ids, -1L), nonEmpty(urls, "")).forEach(endpoint -> {
+            byId.put(endpoint.getId(), endpoint);
+            byUrl.putIfAbsent(endpoint.getUrl(), endpoint);
+        });
+
+        BatchOutcome outcome = new BatchOutcome();
+        List<MonitoredEndpointDto> inserts = new ArrayList<>();
+        for (ImportItem item : batch) {
+            MonitoredEndpointDto endpointDto = item.endpoint;
+            MonitoredEndpoint existing = endpointDto.getId() != null
+                    ? byId.get(endpointDto.getId())
+                    : byUrl.get(endpointDto.getUrl());
+            if (existing != null) {
+                // Flushed by dirty checking on commit
+                MonitoredEndpointService.applyChanges(existing, endpointDto);
+                outcome.updated.add(existing);
+            } else if (endpointDto.getId() != null) {
+                outcome.errors.put(item, "Endpoint not found with id: " + endpointDto.getId());
+            } else {
+                inserts.add(endpointDto);
+            }
+        }
+        outcome.created.addAll(insert(inserts, user));
+        return outcome;
+    }
+
+    /**
+     * Insert new endpoints in one JDBC batch, which the IDENTITY keys keep Hibernate from batching
+     */
+    private List<ScheduledEndpoint> insert(Collection<MonitoredEndpointDto> endpoints, User user) {
+        if (endpoints.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Long> ids = jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (MonitoredEndpointDto endpoint : endpoints) {
+                    statement.setString(1, endpoint.getName());
+                    statement.setString(2, endpoint.getUrl());
+                    statement.setTimestamp(3, now);
+                    statement.setInt(4, endpoint.getMonitoringInterval());
+                    statement.setString(5, captureModeOf(endpoint).name());
+                    setNullableInt(statement, 6, endpoint.getCaptureLimit());
+                    setNullableInt(statement, 7, endpoint.getRetentionDays());
+                    setNullableInt(statement, 8, endpoint.getRetentionRows());
+                    statement.setLong(9, user.getId());
+                    statement.setTimestamp(10, now);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                List<Long> keys = new ArrayList<>(endpoints.size());
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    while (generatedKeys.next()) {
+                        keys.add(generatedKeys.getLong(1));
+                    }
+                }
+                return keys;
+            }
+        });
+        if (ids == null || ids.size() != endpoints.size()) {
+            throw new IllegalStateException("Expected " + endpoints.size() + " generated endpoint IDs, got "
+                    + (ids == null ? 0 : ids.size()));
+        }
+
+        List<ScheduledEndpoint> created = new ArrayList<>(endpoints.size());
+        int i = 0;
+        for (MonitoredEndpointDto endpoint : endpoints) {
+            created.add(new ScheduledEndpoint(ids.get(i++), user.getId(), endpoint.getUrl(),
+                    endpoint.getMonitoringInterval(), captureModeOf(endpoint), endpoint.getCaptureLimit(), null));
+        }
+        return created;
+    }
+
+    private ItemReader ndjsonReader(InputStream in) {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return new ItemReader() {
+            private int index;
+
+            @Override
+            public ImportItem next() throws IOException {
+                String line;
+                do {
+                    line = lines.readLine();
+                    if (line == null) {
+                        return null;
+                    }
+                } while (line.isBlank());
+                try {
+                    return toItem(index, objectMapper.readTree(line));
+                } catch (JsonProcessingException e) {
+                    // Lines are independent, a malformed one fails only itself
+                    return ImportItem.failed(index, null, "Malformed JSON: " + e.getOriginalMessage());
+                } finally {
+                    index++;
+                }
+            }
+
+            @Override
+            public int position() {
+                return index;
+            }
+        };
+    }
+
+    private ItemReader arrayReader(InputStream in) throws IOException {
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new BadRequestException("Expected a JSON array of endpoints");
+        }
+        return new ItemReader() {
+            private int index;
+
+            @Override
+            public ImportItem next() throws IOException {
+                if (parser.nextToken() == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                JsonNode node = objectMapper.readTree(parser);
+                return toItem(index++, node);
+            }
+
+            @Override
+            public int position() {
+                return index;
+            }
+        };
+    }
+
+    private ImportItem toItem(int index, JsonNode node) {
+        if (node == null || !node.isObject()) {
+            return ImportItem.failed(index, null, "Expected a JSON object");
+        }
+        String url = node.path("url").isTextual() ? node.path("url").asText() : null;
+        MonitoredEndpointDto endpoint;
+        try {
+            endpoint = objectMapper.treeToValue(node, MonitoredEndpointDto.class);
+        } catch (JsonProcessingException e) {
+            return ImportItem.failed(index, url, "Invalid value: " + e.getOriginalMessage());
+        }
+        Set<ConstraintViolation<MonitoredEndpointDto>> violations = validator.validate(endpoint);
+        if (!violations.isEmpty()) {
+            String message = violations.stream()
+                    .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining(", "));
+            return ImportItem.failed(index, url, message);
+        }
+        return new ImportItem(index, endpoint, url, null);
+    }
+
+    private static void fail(EndpointImportDto report, int index, String url, String message) {
+        report.setFailed(report.getFailed() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ERRORS) {
+            report.getErrors().add(new EndpointImportErrorDto(index, url, message));
+        }
+    }
+
+    private static CaptureMode captureModeOf(MonitoredEndpointDto endpoint) {
+        return endpoint.getCaptureMode() != null ? endpoint.getCaptureMode() : CaptureMode.TRUNCATED;
+    }
+
+    private static void setNullableInt(PreparedStatement statement, int index, Integer value) throws SQLException {
+        if (value != null) {
+            statement.setInt(index, value);
+        } else {
+            statement.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static <T> Collection<T> nonEmpty(Collection<T> values, T placeholder) {
+        return values.isEmpty() ? Collections.singleton(placeholder) : values;
+    }
+
+    private interface ItemReader {
+        /**
+         * @return the next item, null at the end of the body
+         */
+        ImportItem next() throws IOException;
+
+        /**
+         * @return the index of the next item
+         */
+        int position();
+    }
+
+    private static final class ImportItem {
+        private final int index;
+        private final MonitoredEndpointDto endpoint;
+        private final String url;
+        private final String error;
+
+        private ImportItem(int index, MonitoredEndpointDto endpoint, String url, String error) {
+            this.index = index;
+            this.endpoint = endpoint;
+            this.url = url;
+            this.error = error;
+        }
+
+        private static ImportItem failed(int index, String url, String error) {
+            return new ImportItem(index, null, url, error);
+        }
+    }
+
+    private static final class BatchOutcome {
+        private final List<MonitoredEndpoint> updated = new ArrayList<>();
+        private final List<ScheduledEndpoint> created = new ArrayList<>();
+        private final Map<ImportItem, String> errors = new LinkedHashMap<>();
+    }
+}
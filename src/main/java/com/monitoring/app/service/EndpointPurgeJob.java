@@ -0,0 +1,117 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.repository.EndpointDeletionRepository;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Purges the results and rollups of deleted endpoints in bounded set-based chunks, recording progress
+ * after each chunk, and finally removes the tombstoned endpoint row. In cluster mode it runs on one
+ * instance only, see {@link EndpointScheduler#runsClusterJobs()}.
+ */
+@Slf4j
+@Service
+public class EndpointPurgeJob {
+
+    private final EndpointDeletionRepository endpointDeletionRepository;
+    private final EndpointScheduler endpointScheduler;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final MonitoringProperties.Deletion deletion;
+    private final Counter purgedResults;
+
+    public EndpointPurgeJob(EndpointDeletionRepository endpointDeletionRepository, EndpointScheduler endpointScheduler,
+                            JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                            MonitoringProperties properties, MeterRegistry meterRegistry) {
+        this.endpointDeletionRepository = endpointDeletionRepository;
+        this.endpointScheduler = endpointScheduler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.deletion = properties.getDeletion();
+        this.purgedResults = Counter.builder("monitoring.deletion.purged")
+                .description("Results removed from deleted endpoints")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Continue purging deleted endpoints, oldest request first, within one run's time budget
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void purgeDeletedEndpoints() {
+        if (!endpointScheduler.runsClusterJobs()) {
+            return;
+        }
+        List<Long> endpointIds = endpointDeletionRepository.findPendingEndpointIds();
+        long deadline = System.nanoTime() + deletion.getMaxRunTime().toNanos();
+        try {
+            for (Long endpointId : endpointIds) {
+                if (System.nanoTime() >= deadline) {
+                    return;
+                }
+                purge(endpointId, deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Purge one deleted endpoint
+     *
+     * @param endpointId the endpoint ID
+     * @param deadline   nano time when the run must stop
+     */
+    private void purge(Long endpointId, long deadline) throws InterruptedException {
+        int batchSize = deletion.getBatchSize();
+        while (System.nanoTime() < deadline) {
+            int deleted = jdbcTemplate.update(
+                    "DELETE FROM monitoring_results WHERE endpoint_id = ? LIMIT ?", endpointId, batchSize);
+            if (deleted > 0) {
+                jdbcTemplate.update(
+                        "UPDATE endpoint_deletions SET results_deleted = results_deleted + ? WHERE endpoint_id = ?",
+                        deleted, endpointId);
+                purgedResults.increment(deleted);
+                Thread.sleep(deletion.getPause().toMillis());
+            }
+            if (deleted < batchSize) {
+                removeEndpoint(endpointId, deadline);
+                return;
+            }
+        }
+    }
+
+    private void removeEndpoint(Long endpointId, long deadline) throws InterruptedException {
+        int batchSize = deletion.getBatchSize();
+        while (jdbcTemplate.update("DELETE FROM result_rollups WHERE endpoint_id = ? LIMIT ?", endpointId, batchSize) == batchSize) {
+            if (System.nanoTime() >= deadline) {
+                return;
+            }
+            Thread.sleep(deletion.getPause().toMillis());
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.update("DELETE FROM monitored_endpoints WHERE id = ? AND deleted = true", endpointId);
+                jdbcTemplate.update("UPDATE endpoint_deletions SET completed_at = ? WHERE endpoint_id = ?",
+                        Timestamp.valueOf(LocalDateTime.now()), endpointId);
+            });
+        } catch (DataAccessException e) {
+            // A result of a probe that was still running got written after the last chunk, the next run removes it
+            log.debug("Endpoint {} still has results, retrying its deletion: {}", endpointId, e.getMessage());
+            return;
+        }
+        log.info("Deleted endpoint {} and its results", endpointId);
+    }
+}
@@ -0,0 +1,252 @@
+package com.monitoring.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.LatencyStatsDto;
+import com.monitoring.app.exception.BadRequestException;
+import com.monitoring.app.exception.ResourceNotFoundException;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.IntCountsHistogram;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * Aggregates probe latencies per endpoint into HDR histograms over rolling windows, so percentiles
+ * are answered from memory instead of scanning stored results. Each endpoint keeps a ring of
+ * five-minute slots covering the last hour and a ring of one-hour slots covering the last day;
+ * a window is answered by merging the slots it spans, rounded up to whole slots.
+ * In cluster mode an endpoint's checks move between instances, so histograms are not kept and
+ * percentiles are computed from the stored results of the window instead.
+ */
+@Service
+public class LatencyTracker {
+
+    static final Duration MIN_WINDOW = Duration.ofMinutes(1);
+    static final Duration MAX_WINDOW = Duration.ofHours(24);
+
+    private static final long FINE_SLOT_MILLIS = Duration.ofMinutes(5).toMillis();
+    private static final int FINE_SLOTS = 12;
+    private static final long COARSE_SLOT_MILLIS = Duration.ofHours(1).toMillis();
+    private static final int COARSE_SLOTS = 24;
+
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean clustered;
+    private final long highestTrackable;
+    private final int significantDigits;
+    private final Cache<Long, EndpointLatencies> latencies;
+
+    public LatencyTracker(MonitoredEndpointRepository monitoredEndpointRepository, JdbcTemplate jdbcTemplate,
+                          MonitoringProperties properties, MeterRegistry meterRegistry) {
+        MonitoringProperties.Latency latency = properties.getLatency();
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.clustered = properties.getCluster().isEnabled();
+        this.highestTrackable = latency.getHighestTrackable().toMillis();
+        this.significantDigits = latency.getSignificantDigits();
+        this.latencies = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(latency.getMaxMemory().toBytes())
+                .weigher((Long endpointId, EndpointLatencies endpointLatencies) -> endpointLatencies.estimatedSize())
+                .expireAfterAccess(MAX_WINDOW)
+                .recordStats()
+                .build(), "latencies");
+    }
+
+    /**
+     * Record the latency of a probe
+     *
+     * @param endpointId   the endpoint ID
+     * @param checkDate    when the probe started
+     * @param responseTime the probe latency in milliseconds, ignored when null
+     */
+    public void record(Long endpointId, LocalDateTime checkDate, Long responseTime) {
+        if (responseTime == null || clustered) {
+            return;
+        }
+        long value = clamp(responseTime);
+        long timestamp = toEpochMilli(checkDate);
+        // Re-putting through compute lets the cache re-weigh histograms that were allocated or resized
+        latencies.asMap().compute(endpointId, (id, endpointLatencies) -> {
+            EndpointLatencies target = endpointLatencies != null ? endpointLatencies : new EndpointLatencies();
+            target.record(timestamp, value);
+            return target;
+        });
+    }
+
+    /**
+     * Get latency percentiles of an endpoint owned by the user
+     *
+     * @param endpointId the endpoint ID
+     * @param user       the user
+     * @param window     the window to aggregate, such as "15m" or "1h"
+     * @return the latency statistics, with null values when nothing was recorded in the window
+     */
+    public LatencyStatsDto getStats(Long endpointId, User user, String window) {
+        Duration duration = parseWindow(window);
+        Long ownerId = monitoredEndpointRepository.findOwnerIdById(endpointId)
+                .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + endpointId));
+        if (!ownerId.equals(user.getId())) {
+            throw new ResourceNotFoundException("Endpoint not found with id: " + endpointId);
+        }
+
+        Histogram merged;
+        if (clustered) {
+            merged = loadStored(endpointId, duration);
+        } else {
+            EndpointLatencies endpointLatencies = latencies.getIfPresent(endpointId);
+            merged = endpointLatencies != null
+                    ? endpointLatencies.merge(System.currentTimeMillis(), duration.toMillis())
+                    : null;
+        }
+
+        if (merged == null || merged.getTotalCount() == 0) {
+            return new LatencyStatsDto(endpointId, window, 0L, null, null, null, null, null, null);
+        }
+        return new LatencyStatsDto(
+                endpointId,
+                window,
+                merged.getTotalCount(),
+                merged.getMinValue(),
+                merged.getMean(),
+                merged.getValueAtPercentile(50),
+                merged.getValueAtPercentile(90),
+                merged.getValueAtPercentile(99),
+                merged.getMaxValue()
+        );
+    }
+
+    /**
+     * Drop the histograms of a deleted endpoint
+     *
+     * @param event the deleted endpoint
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEndpointDeleted(EndpointDeletedEvent event) {
+        latencies.invalidate(event.getEndpointId());
+    }
+
+    /**
+     * Build a histogram from the stored results of a window, read through the (endpoint_id, check_date) index.
+     * A collapsed repeated failure counts once per check with the latency it was stored with.
+     */
+    private Histogram loadStored(Long endpointId, Duration window) {
+        Histogram histogram = new Histogram(significantDigits);
+        jdbcTemplate.query("SELECT response_time, repeat_count FROM monitoring_results " +
+                        "WHERE endpoint_id = ? AND check_date >= ? AND response_time IS NOT NULL",
+                (RowCallbackHandler) rs -> histogram.recordValueWithCount(
+                        clamp(rs.getLong("response_time")), rs.getInt("repeat_count")),
+                endpointId, Timestamp.valueOf(LocalDateTime.now().minus(window)));
+        return histogram;
+    }
+
+    private long clamp(long responseTime) {
+        return Math.max(0, Math.min(responseTime, highestTrackable));
+    }
+
+    private static Duration parseWindow(String window) {
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid window: " + window);
+        }
+        if (duration.compareTo(MIN_WINDOW) < 0 || duration.compareTo(MAX_WINDOW) > 0) {
+            throw new BadRequestException("Window must be between 1m and 24h");
+        }
+        return duration;
+    }
+
+    private static long toEpochMilli(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private final class EndpointLatencies {
+        private final SlotRing fine = new SlotRing(FINE_SLOTS, FINE_SLOT_MILLIS);
+        private final SlotRing coarse = new SlotRing(COARSE_SLOTS, COARSE_SLOT_MILLIS);
+
+        private synchronized void record(long timestamp, long value) {
+            fine.record(timestamp, value);
+            coarse.record(timestamp, value);
+        }
+
+        private synchronized Histogram merge(long now, long windowMillis) {
+            SlotRing ring = windowMillis <= FINE_SLOTS * FINE_SLOT_MILLIS ? fine : coarse;
+            return ring.merge(now, windowMillis);
+        }
+
+        private synchronized int estimatedSize() {
+            return 64 + fine.estimatedSize() + coarse.estimatedSize();
+        }
+    }
+
+    private final class SlotRing {
+        private final long slotMillis;
+        private final IntCountsHistogram[] histograms;
+        private final long[] slotIndexes;
+
+        private SlotRing(int slots, long slotMillis) {
+            this.slotMillis = slotMillis;
+            this.histograms = new IntCountsHistogram[slots];
+            this.slotIndexes = new long[slots];
+        }
+
+        private void record(long timestamp, long value) {
+            long slotIndex = timestamp / slotMillis;
+            int position = (int) (slotIndex % histograms.length);
+            IntCountsHistogram histogram = histograms[position];
+            if (histogram == null) {
+                // Auto-resizing keeps histograms of fast endpoints small
+                histogram = new IntCountsHistogram(significantDigits);
+                histograms[position] = histogram;
+            } else if (slotIndexes[position] != slotIndex) {
+                if (slotIndexes[position] > slotIndex) {
+                    // The slot was already reused for a newer interval
+                    return;
+                }
+                histogram.reset();
+            }
+            slotIndexes[position] = slotIndex;
+            histogram.recordValue(value);
+        }
+
+        private Histogram merge(long now, long windowMillis) {
+            long currentSlot = now / slotMillis;
+            long oldestSlot = currentSlot - Math.min(histograms.length, (windowMillis + slotMillis - 1) / slotMillis) + 1;
+            Histogram merged = null;
+            for (int i = 0; i < histograms.length; i++) {
+                IntCountsHistogram histogram = histograms[i];
+                if (histogram == null || slotIndexes[i] < oldestSlot || slotIndexes[i] > currentSlot) {
+                    continue;
+                }
+                if (merged == null) {
+                    merged = new Histogram(significantDigits);
+                }
+                merged.add(histogram);
+            }
+            return merged;
+        }
+
+        private int estimatedSize() {
+            int size = 16 + 16 * histograms.length;
+            for (IntCountsHistogram histogram : histograms) {
+                if (histogram != null) {
+                    size += histogram.getEstimatedFootprintInBytes();
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -1,16 +1,28 @@
 package com.monitoring.app.service;
 
+import com.monitoring.app.dto.EndpointDeletionDto;
 import com.monitoring.app.dto.MonitoredEndpointDto;
 import com.monitoring.app.exception.ResourceNotFoundException;
+import com.monitoring.app.model.CaptureMode;
+import com.monitoring.app.model.EndpointDeletion;
 import com.monitoring.app.model.MonitoredEndpoint;
 import com.monitoring.app.model.User;
+import com.monitoring.app.repository.EndpointDeletionRepository;
 import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -18,6 +30,10 @@ import java.util.stream.Collectors;
 public class MonitoredEndpointService {
 
     private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final EndpointScheduler endpointScheduler;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EndpointDeletionRepository endpointDeletionRepository;
 
     /**
      * Get all endpoints for the user
@@ -25,11 +41,9 @@ public class MonitoredEndpointService {
      * @param user the user
      * @return list of endpoints
      */
+    @Transactional(readOnly = true)
     public List<MonitoredEndpointDto> getAllEndpointsForUser(User user) {
-        return monitoredEndpointRepository.findAllByOwner(user)
-                .stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+        return monitoredEndpointRepository.findDtosByOwnerId(user.getId());
     }
 
     /**
@@ -39,10 +53,10 @@ public class MonitoredEndpointService {
      * @param user the user
      * @return the endpoint
      */
+    @Transactional(readOnly = true)
     public MonitoredEndpointDto getEndpointByIdForUser(Long id, User user) {
-        MonitoredEndpoint endpoint = monitoredEndpointRepository.findByIdAndOwner(id, user)
+        return monitoredEndpointRepository.findDtoByIdAndOwnerId(id, user.getId())
                 .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + id));
-        return convertToDto(endpoint);
     }
 
     /**
@@ -58,6 +72,8 @@ public class MonitoredEndpointService {
         endpoint.setOwner(user);
         endpoint.setCreationDate(LocalDateTime.now());
         MonitoredEndpoint savedEndpoint = monitoredEndpointRepository.save(endpoint);
+        ScheduledEndpoint schedule = ScheduledEndpoint.from(savedEndpoint);
+        afterCommit(() -> endpointScheduler.schedule(schedule));
         return convertToDto(savedEndpoint);
     }
 
@@ -74,46 +90,98 @@ public class MonitoredEndpointService {
         MonitoredEndpoint existingEndpoint = monitoredEndpointRepository.findByIdAndOwner(id, user)
                 .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + id));
 
-        existingEndpoint.setName(endpointDto.getName());
-        existingEndpoint.setUrl(endpointDto.getUrl());
-        existingEndpoint.setMonitoringInterval(endpointDto.getMonitoringInterval());
+        applyChanges(existingEndpoint, endpointDto);
 
         MonitoredEndpoint updatedEndpoint = monitoredEndpointRepository.save(existingEndpoint);
+        ScheduledEndpoint schedule = ScheduledEndpoint.from(updatedEndpoint);
+        afterCommit(() -> endpointScheduler.schedule(schedule));
         return convertToDto(updatedEndpoint);
     }
 
     /**
-     * Delete an endpoint
+     * Delete an endpoint. The endpoint disappears and stops being checked right away,
+     * its results are purged in the background by {@link EndpointPurgeJob}.
      *
      * @param id   the endpoint ID
      * @param user the user
+     * @return the deletion progress
      */
     @Transactional
-    public void deleteEndpoint(Long id, User user) {
+    public EndpointDeletionDto deleteEndpoint(Long id, User user) {
         MonitoredEndpoint endpoint = monitoredEndpointRepository.findByIdAndOwner(id, user)
                 .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + id));
-        monitoredEndpointRepository.delete(endpoint);
+        endpoint.setDeleted(true);
+        monitoredEndpointRepository.save(endpoint);
+        EndpointDeletion deletion = endpointDeletionRepository.save(
+                new EndpointDeletion(id, user.getId(), LocalDateTime.now(), 0L, null));
+
+        afterCommit(() -> endpointScheduler.unschedule(id));
+        eventPublisher.publishEvent(new EndpointDeletedEvent(id));
+        return convertToDto(deletion);
     }
 
     /**
-     * Get all endpoints for monitoring
+     * Get the progress of an endpoint deletion requested by the user
      *
-     * @return list of all endpoints
+     * @param id   the endpoint ID
+     * @param user the user
+     * @return the deletion progress
      */
-    public List<MonitoredEndpoint> getAllEndpoints() {
-        return monitoredEndpointRepository.findAll();
+    @Transactional(readOnly = true)
+    public EndpointDeletionDto getDeletion(Long id, User user) {
+        return endpointDeletionRepository.findById(id)
+                .filter(deletion -> deletion.getOwnerId().equals(user.getId()))
+                .map(this::convertToDto)
+                .orElseThrow(() -> new ResourceNotFoundException("Deletion not found for endpoint with id: " + id));
     }
 
     /**
-     * Update last check date
+     * Update last check dates of several endpoints in one JDBC batch
      *
-     * @param endpoint  the endpoint
-     * @param checkDate the check date
+     * @param lastCheckDates the check date for each endpoint ID
      */
     @Transactional
-    public void updateLastCheckDate(MonitoredEndpoint endpoint, LocalDateTime checkDate) {
-        endpoint.setLastCheckDate(checkDate);
-        monitoredEndpointRepository.save(endpoint);
+    public void updateLastCheckDates(Map<Long, LocalDateTime> lastCheckDates) {
+        List<Object[]> batchArgs = lastCheckDates.entrySet().stream()
+                .map(entry -> new Object[]{Timestamp.valueOf(entry.getValue()), entry.getKey()})
+                .collect(Collectors.toList());
+        jdbcTemplate.batchUpdate("UPDATE monitored_endpoints SET last_check_date = ? WHERE id = ?", batchArgs);
+    }
+
+    /**
+     * Run an action once the current transaction commits, so a rolled back change never reaches the scheduler
+     *
+     * @param action the action
+     */
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Copy the editable settings of a DTO to an existing endpoint
+     *
+     * @param endpoint    the endpoint entity
+     * @param endpointDto the updated endpoint data
+     */
+    static void applyChanges(MonitoredEndpoint endpoint, MonitoredEndpointDto endpointDto) {
+        endpoint.setName(endpointDto.getName());
+        endpoint.setUrl(endpointDto.getUrl());
+        endpoint.setMonitoringInterval(endpointDto.getMonitoringInterval());
+        if (endpointDto.getCaptureMode() != null) {
+            endpoint.setCaptureMode(endpointDto.getCaptureMode());
+        }
+        endpoint.setCaptureLimit(endpointDto.getCaptureLimit());
+        endpoint.setRetentionDays(endpointDto.getRetentionDays());
+        endpoint.setRetentionRows(endpointDto.getRetentionRows());
     }
 
     /**
@@ -129,7 +197,27 @@ public class MonitoredEndpointService {
                 endpoint.getUrl(),
                 endpoint.getCreationDate(),
                 endpoint.getLastCheckDate(),
-                endpoint.getMonitoringInterval()
+                endpoint.getMonitoringInterval(),
+                endpoint.getCaptureMode(),
+                endpoint.getCaptureLimit(),
+                endpoint.getRetentionDays(),
+                endpoint.getRetentionRows()
+        );
+    }
+
+    /**
+     * Convert deletion entity to DTO
+     *
+     * @param deletion the deletion entity
+     * @return the deletion DTO
+     */
+    private EndpointDeletionDto convertToDto(EndpointDeletion deletion) {
+        return new EndpointDeletionDto(
+                deletion.getEndpointId(),
+                deletion.getCompletedAt() != null,
+                deletion.getResultsDeleted(),
+                deletion.getRequestedAt(),
+                deletion.getCompletedAt()
         );
     }
 
@@ -144,6 +232,12 @@ public class MonitoredEndpointService {
         endpoint.setName(endpointDto.getName());
         endpoint.setUrl(endpointDto.getUrl());
         endpoint.setMonitoringInterval(endpointDto.getMonitoringInterval());
+        endpoint.setCaptureMode(endpointDto.getCaptureMode() != null
+                ? endpointDto.getCaptureMode()
+                : CaptureMode.TRUNCATED);
+        endpoint.setCaptureLimit(endpointDto.getCaptureLimit());
+        endpoint.setRetentionDays(endpointDto.getRetentionDays());
+        endpoint.setRetentionRows(endpointDto.getRetentionRows());
         return endpoint;
     }
 } 
\ No newline at end of file
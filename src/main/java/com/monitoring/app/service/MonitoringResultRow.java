@@ -0,0 +1,27 @@
+package com.monitoring.app.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Columns of a stored check result as read by the result queries, without a managed entity
+ * behind it. The payload is resolved from the payload store by its hash before it is returned.
+ */
+@Getter
+@AllArgsConstructor
+public class MonitoringResultRow {
+    private final Long id;
+    private final LocalDateTime checkDate;
+    private final Integer statusCode;
+    // Only set on rows written before payloads were moved to payload_contents
+    private final String payload;
+    private final String payloadHash;
+    private final Long contentLength;
+    private final String contentHash;
+    private final Long responseTime;
+    private final Long monitoredEndpointId;
+    private final int repeatCount;
+    private final LocalDateTime lastRepeatDate;
+}
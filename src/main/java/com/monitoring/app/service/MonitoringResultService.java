@@ -1,69 +1,363 @@
 package com.monitoring.app.service;
 
 import com.monitoring.app.dto.MonitoringResultDto;
-import com.monitoring.app.model.MonitoredEndpoint;
+import com.monitoring.app.dto.ResultPageDto;
+import com.monitoring.app.exception.BadRequestException;
+import com.monitoring.app.exception.ResourceNotFoundException;
 import com.monitoring.app.model.MonitoringResult;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
 import com.monitoring.app.repository.MonitoringResultRepository;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class MonitoringResultService {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Open range bounds that MySQL DATETIME columns can still hold
+    private static final LocalDateTime BEGINNING_OF_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     private final MonitoringResultRepository monitoringResultRepository;
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final MonitoredEndpointService monitoredEndpointService;
+    private final PayloadStore payloadStore;
+    private final RollupService rollupService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final JdbcTemplate jdbcTemplate;
 
     /**
-     * Save a monitoring result
+     * Save a batch of monitoring results, their rollups and the last check dates of their endpoints in one transaction.
+     * Repeated failures are added to the repeat count of the previous result of their endpoint instead of being stored.
      *
-     * @param endpoint   the monitored endpoint
-     * @param statusCode the HTTP status code
-     * @param payload    the response payload
-     * @return the saved monitoring result
+     * @param pendingResults the results to save
      */
     @Transactional
-    public MonitoringResult saveResult(MonitoredEndpoint endpoint, Integer statusCode, String payload) {
-        MonitoringResult result = new MonitoringResult();
-        result.setMonitoredEndpoint(endpoint);
-        result.setCheckDate(LocalDateTime.now());
-        result.setStatusCode(statusCode);
-        result.setPayload(payload);
-        return monitoringResultRepository.save(result);
+    public void saveResults(List<PendingResult> pendingResults) {
+        List<String> payloadHashes = payloadStore.storeAll(pendingResults.stream()
+                .map(result -> result.isRepeat() ? null : result.getPayload())
+                .collect(Collectors.toList()));
+
+        List<MonitoringResult> results = new ArrayList<>(pendingResults.size());
+        List<String> payloads = new ArrayList<>(pendingResults.size());
+        Map<Long, Integer> latestByEndpoint = new HashMap<>();
+        Map<Long, List<PendingResult>> storedRepeats = new LinkedHashMap<>();
+        Set<Integer> repeatedIndexes = new LinkedHashSet<>();
+        for (int i = 0; i < pendingResults.size(); i++) {
+            PendingResult pendingResult = pendingResults.get(i);
+            if (pendingResult.isRepeat()) {
+                Integer previous = latestByEndpoint.get(pendingResult.getEndpointId());
+                if (previous != null) {
+                    addRepeat(results.get(previous), pendingResult.getCheckDate());
+                    repeatedIndexes.add(previous);
+                } else {
+                    // The repeated result was written by an earlier batch
+                    storedRepeats.computeIfAbsent(pendingResult.getEndpointId(), id -> new ArrayList<>()).add(pendingResult);
+                }
+                continue;
+            }
+            MonitoringResult result = convertToEntity(pendingResult, payloadHashes.get(i));
+            latestByEndpoint.put(pendingResult.getEndpointId(), results.size());
+            results.add(result);
+            payloads.add(pendingResult.getPayload());
+        }
+        List<MonitoringResultDto> repeatedResults = new ArrayList<>();
+        storedRepeats.forEach((endpointId, repeats) -> {
+            MonitoringResultDto updated = saveRepeats(endpointId, repeats);
+            if (updated != null) {
+                repeatedResults.add(updated);
+                return;
+            }
+            // Purged in the meantime, the first repeat becomes a result of its own
+            PendingResult first = repeats.get(0);
+            MonitoringResult result = convertToEntity(first,
+                    payloadStore.storeAll(Collections.singletonList(first.getPayload())).get(0));
+            for (PendingResult repeat : repeats.subList(1, repeats.size())) {
+                addRepeat(result, repeat.getCheckDate());
+            }
+            repeatedIndexes.add(results.size());
+            results.add(result);
+            payloads.add(first.getPayload());
+        });
+        monitoringResultRepository.saveAll(results);
+        rollupService.rollUp(pendingResults);
+
+        // IDs are already assigned on persist, listeners are notified after commit
+        List<MonitoringResultDto> savedResults = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            savedResults.add(convertToDto(results.get(i), payloads.get(i)));
+        }
+        repeatedIndexes.forEach(i -> repeatedResults.add(savedResults.get(i)));
+        eventPublisher.publishEvent(new ResultsPersistedEvent(savedResults, repeatedResults));
+
+        Map<Long, LocalDateTime> lastCheckDates = new HashMap<>();
+        pendingResults.forEach(result -> lastCheckDates.merge(
+                result.getEndpointId(), result.getCheckDate(), (a, b) -> a.isAfter(b) ? a : b));
+        monitoredEndpointService.updateLastCheckDates(lastCheckDates);
+    }
+
+    /**
+     * Add repeated failures to the latest stored result of their endpoint
+     *
+     * @param endpointId the endpoint ID
+     * @param repeats    the repeated failures, oldest first
+     * @return the updated result, or null if the endpoint has no stored result any more
+     */
+    private MonitoringResultDto saveRepeats(Long endpointId, List<PendingResult> repeats) {
+        LocalDateTime lastRepeatDate = repeats.get(repeats.size() - 1).getCheckDate();
+        List<MonitoringResultRow> latest = monitoringResultRepository.findLatestByEndpointId(endpointId, PageRequest.of(0, 1));
+        if (latest.isEmpty()) {
+            return null;
+        }
+        MonitoringResultRow row = latest.get(0);
+        jdbcTemplate.update("UPDATE monitoring_results SET repeat_count = repeat_count + ?, last_repeat_date = ? " +
+                "WHERE id = ?", repeats.size(), Timestamp.valueOf(lastRepeatDate), row.getId());
+        // A repeat fails with the same body as the result it is counted in, so its payload stands for the row's
+        return new MonitoringResultDto(
+                row.getId(),
+                row.getCheckDate(),
+                row.getStatusCode(),
+                repeats.get(0).getPayload(),
+                row.getContentLength(),
+                row.getContentHash(),
+                row.getResponseTime(),
+                row.getMonitoredEndpointId(),
+                row.getRepeatCount() + repeats.size(),
+                lastRepeatDate
+        );
+    }
+
+    private static void addRepeat(MonitoringResult result, LocalDateTime checkDate) {
+        result.setRepeatCount(result.getRepeatCount() + 1);
+        result.setLastRepeatDate(checkDate);
+    }
+
+    /**
+     * Move the result ID sequence past IDs already in the table, e.g. rows created with the former IDENTITY strategy
+     */
+    public void alignIdSequence() {
+        Long maxId = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(id), 0) FROM monitoring_results", Long.class);
+        int updated = jdbcTemplate.update(
+                "UPDATE " + MonitoringResult.ID_SEQUENCE + " SET next_val = ? WHERE next_val <= ?",
+                maxId + 1, maxId);
+        if (updated > 0) {
+            log.info("Moved {} past existing result ID {}", MonitoringResult.ID_SEQUENCE, maxId);
+        }
+    }
+
+    /**
+     * Get the latest monitoring results for an endpoint
+     *
+     * @param endpointId the monitored endpoint ID
+     * @param limit      the maximum number of results
+     * @return list of monitoring results, newest first
+     */
+    @Transactional(readOnly = true)
+    public List<MonitoringResultDto> getLatestResults(Long endpointId, int limit) {
+        return convertToDtos(monitoringResultRepository
+                .findLatestByEndpointId(endpointId, PageRequest.of(0, limit)));
+    }
+
+    /**
+     * Get a page of results of an endpoint owned by the user, newest first. Pages are addressed by a
+     * cursor on (check date, ID), so every page costs the same however deep into the history it is.
+     * The page query checks the ownership itself, a non-empty page takes a single query.
+     *
+     * @param endpointId the endpoint ID
+     * @param user       the user
+     * @param from       oldest check date to include, optional
+     * @param to         check date to stop before, optional
+     * @param after      cursor returned with the previous page, optional
+     * @param limit      the page size, optional
+     * @param status     status code such as "404" or class such as "5xx", optional
+     * @return the page and the cursor of the next page
+     */
+    @Transactional(readOnly = true)
+    public ResultPageDto getResultPage(Long endpointId, User user, LocalDateTime from, LocalDateTime to,
+                                       String after, Integer limit, String status) {
+        int pageSize = limit != null ? limit : DEFAULT_PAGE_SIZE;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new BadRequestException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        int[] statusRange = parseStatus(status);
+        LocalDateTime afterDate = END_OF_TIME;
+        long afterId = Long.MAX_VALUE;
+        if (after != null) {
+            String[] cursor = decodeCursor(after);
+            afterDate = LocalDateTime.parse(cursor[0]);
+            afterId = Long.parseLong(cursor[1]);
+        }
+
+        // One extra row tells whether there is a next page
+        List<MonitoringResultRow> results = monitoringResultRepository.findPage(
+                endpointId,
+                user.getId(),
+                from != null ? from : BEGINNING_OF_TIME,
+                to != null ? to : END_OF_TIME,
+                statusRange[0], statusRange[1],
+                afterDate, afterId,
+                PageRequest.of(0, pageSize + 1));
+        if (results.isEmpty()) {
+            // Only an empty page needs telling apart from a foreign endpoint
+            monitoredEndpointRepository.findOwnerIdById(endpointId)
+                    .filter(ownerId -> ownerId.equals(user.getId()))
+                    .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + endpointId));
+        }
+
+        String nextCursor = null;
+        if (results.size() > pageSize) {
+            results = results.subList(0, pageSize);
+            MonitoringResultRow last = results.get(pageSize - 1);
+            nextCursor = encodeCursor(last.getCheckDate(), last.getId());
+        }
+        return new ResultPageDto(convertToDtos(results), nextCursor);
+    }
+
+    private static int[] parseStatus(String status) {
+        if (status == null) {
+            return new int[]{0, 999};
+        }
+        String value = status.trim().toLowerCase();
+        if (value.matches("[1-5]xx")) {
+            int statusClass = (value.charAt(0) - '0') * 100;
+            return new int[]{statusClass, statusClass + 99};
+        }
+        if (value.matches("\\d{3}")) {
+            int code = Integer.parseInt(value);
+            return new int[]{code, code};
+        }
+        throw new BadRequestException("Invalid status filter: " + status);
+    }
+
+    private static String encodeCursor(LocalDateTime checkDate, Long id) {
+        String cursor = checkDate + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (parts.length == 2) {
+                LocalDateTime.parse(parts[0]);
+                Long.parseLong(parts[1]);
+                return parts;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // Reported below
+        }
+        throw new BadRequestException("Invalid cursor: " + cursor);
     }
 
     /**
-     * Get the last 10 monitoring results for an endpoint
+     * Convert result rows to DTOs, loading their payloads from the payload store in one go
      *
-     * @param endpoint the monitored endpoint
-     * @return list of monitoring results
+     * @param results the monitoring result rows
+     * @return the monitoring result DTOs
      */
-    public List<MonitoringResultDto> getLast10ResultsForEndpoint(MonitoredEndpoint endpoint) {
-        return monitoringResultRepository
-                .findTop10ByMonitoredEndpointOrderByCheckDateDesc(endpoint, PageRequest.of(0, 10))
-                .stream()
-                .map(this::convertToDto)
+    private List<MonitoringResultDto> convertToDtos(List<MonitoringResultRow> results) {
+        Set<String> payloadHashes = results.stream()
+                .map(MonitoringResultRow::getPayloadHash)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<String, String> payloads = payloadHashes.isEmpty()
+                ? Collections.emptyMap()
+                : payloadStore.loadAll(payloadHashes);
+
+        return results.stream()
+                .map(result -> convertToDto(result, payloads))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Convert a result row to DTO
+     *
+     * @param result   the monitoring result row
+     * @param payloads loaded payloads by hash
+     * @return the monitoring result DTO
+     */
+    private MonitoringResultDto convertToDto(MonitoringResultRow result, Map<String, String> payloads) {
+        // Rows written before payload deduplication still carry their payload inline
+        String payload = result.getPayloadHash() != null
+                ? payloads.get(result.getPayloadHash())
+                : result.getPayload();
+        return new MonitoringResultDto(
+                result.getId(),
+                result.getCheckDate(),
+                result.getStatusCode(),
+                payload,
+                result.getContentLength(),
+                result.getContentHash(),
+                result.getResponseTime(),
+                result.getMonitoredEndpointId(),
+                result.getRepeatCount(),
+                result.getLastRepeatDate()
+        );
+    }
+
     /**
      * Convert entity to DTO
      *
-     * @param result the monitoring result entity
+     * @param result  the monitoring result entity
+     * @param payload the payload of the result
      * @return the monitoring result DTO
      */
-    private MonitoringResultDto convertToDto(MonitoringResult result) {
+    private MonitoringResultDto convertToDto(MonitoringResult result, String payload) {
         return new MonitoringResultDto(
                 result.getId(),
                 result.getCheckDate(),
                 result.getStatusCode(),
-                result.getPayload(),
-                result.getMonitoredEndpoint().getId()
+                payload,
+                result.getContentLength(),
+                result.getContentHash(),
+                result.getResponseTime(),
+                result.getMonitoredEndpoint().getId(),
+                result.getRepeatCount(),
+                result.getLastRepeatDate()
         );
     }
-} 
\ No newline at end of file
+
+    /**
+     * Convert pending result to entity
+     *
+     * @param pendingResult the pending result
+     * @param payloadHash   the hash of the stored payload
+     * @return the monitoring result entity
+     */
+    private MonitoringResult convertToEntity(PendingResult pendingResult, String payloadHash) {
+        MonitoringResult result = new MonitoringResult();
+        result.setMonitoredEndpoint(monitoredEndpointRepository.getReferenceById(pendingResult.getEndpointId()));
+        result.setCheckDate(pendingResult.getCheckDate());
+        result.setStatusCode(pendingResult.getStatusCode());
+        result.setPayloadHash(payloadHash);
+        result.setContentLength(pendingResult.getContentLength());
+        result.setContentHash(pendingResult.getContentHash());
+        result.setResponseTime(pendingResult.getResponseTime());
+        return result;
+    }
+}
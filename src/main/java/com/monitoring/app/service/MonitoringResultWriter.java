@@ -0,0 +1,196 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind buffer for check results. Results are queued by the probe workers and written in
+ * batches by a single writer thread. A full queue blocks the probe workers, which in turn stops the
+ * scheduler from starting new probes.
+ */
+@Slf4j
+@Service
+public class MonitoringResultWriter {
+
+    private final MonitoringResultService monitoringResultService;
+    private final BlockingQueue<PendingResult> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long shutdownTimeoutMillis;
+    private final Thread writerThread;
+    // Results queued and results done with, successfully or not; the queue keeps them in order
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Timer flushTimer;
+    private final Counter failedResults;
+
+    private volatile boolean running = true;
+
+    public MonitoringResultWriter(MonitoringResultService monitoringResultService, MonitoringProperties properties,
+                                  MeterRegistry meterRegistry) {
+        MonitoringProperties.Persistence persistence = properties.getPersistence();
+        this.monitoringResultService = monitoringResultService;
+        this.queue = new ArrayBlockingQueue<>(persistence.getQueueCapacity());
+        this.batchSize = persistence.getBatchSize();
+        this.flushIntervalNanos = persistence.getFlushInterval().toNanos();
+        this.shutdownTimeoutMillis = persistence.getShutdownTimeout().toMillis();
+        this.writerThread = new Thread(this::run, "result-writer");
+
+        this.flushTimer = Timer.builder("monitoring.writer.flush")
+                .description("Time taken to write a batch of results, including individual retries")
+                .register(meterRegistry);
+        this.failedResults = Counter.builder("monitoring.writer.failed")
+                .description("Results that could not be written")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.writer.queue", queue, BlockingQueue::size)
+                .description("Results waiting to be written")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Start the writer thread
+     */
+    @PostConstruct
+    public void start() {
+        monitoringResultService.alignIdSequence();
+        writerThread.start();
+    }
+
+    /**
+     * Queue a result for writing, blocking while the queue is full
+     *
+     * @param result the result to write
+     */
+    public void enqueue(PendingResult result) {
+        if (!running) {
+            // Late results after shutdown started are written directly
+            flush(Collections.singletonList(result));
+            return;
+        }
+        try {
+            queue.put(result);
+            enqueued.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while queueing result of endpoint {}, writing it directly", result.getEndpointId());
+            flush(Collections.singletonList(result));
+        }
+    }
+
+    /**
+     * Get the number of results waiting to be written
+     *
+     * @return queue depth
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Get the number of results queued so far, to wait for them with {@link #isWritten}
+     *
+     * @return number of queued results
+     */
+    public long enqueuedCount() {
+        return enqueued.get();
+    }
+
+    /**
+     * Whether the given number of queued results has been written
+     *
+     * @param count a value returned by {@link #enqueuedCount}
+     * @return true once all results queued before it are written
+     */
+    public boolean isWritten(long count) {
+        return written.get() >= count;
+    }
+
+    /**
+     * Stop the writer after draining all queued results
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("Result writer did not finish within {} ms, {} results not written",
+                    shutdownTimeoutMillis, queue.size());
+        }
+    }
+
+    private void run() {
+        List<PendingResult> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                fillBatch(batch);
+            } catch (InterruptedException e) {
+                queue.drainTo(batch);
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                long start = System.nanoTime();
+                flush(batch);
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                written.addAndGet(batch.size());
+                batch.clear();
+            }
+        }
+        log.info("Result writer stopped");
+    }
+
+    private void fillBatch(List<PendingResult> batch) throws InterruptedException {
+        PendingResult first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+        if (first == null) {
+            return;
+        }
+        batch.add(first);
+
+        // Give the batch up to one flush interval to fill up
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < batchSize) {
+            if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                continue;
+            }
+            long remaining = deadline - System.nanoTime();
+            PendingResult next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void flush(List<PendingResult> batch) {
+        try {
+            monitoringResultService.saveResults(batch);
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                log.error("Failed to save result of endpoint {}", batch.get(0).getEndpointId(), e);
+                failedResults.increment();
+                return;
+            }
+            // Retry one by one so a single bad result does not lose the whole batch
+            log.warn("Failed to save batch of {} results, retrying individually: {}", batch.size(), e.getMessage());
+            batch.forEach(result -> flush(Collections.singletonList(result)));
+        }
+    }
+}
@@ -1,96 +1,278 @@
 package com.monitoring.app.service;
 
-import com.monitoring.app.model.MonitoredEndpoint;
-import lombok.RequiredArgsConstructor;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.probe.ProbeExecutor;
+import com.monitoring.app.probe.ProbeRequest;
+import com.monitoring.app.probe.ProbeResult;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestClientException;
-import org.springframework.web.client.RestTemplate;
 
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class MonitoringService {
 
-    private final MonitoredEndpointService monitoredEndpointService;
-    private final MonitoringResultService monitoringResultService;
-    private final RestTemplate restTemplate;
+    // Probe rate statistics cover the last minute of ticks
+    private static final int RATE_WINDOW_TICKS = 60;
+
+    private final EndpointScheduler endpointScheduler;
+    private final ProbeExecutor probeExecutor;
+    private final MonitoringResultWriter monitoringResultWriter;
+    private final LatencyTracker latencyTracker;
+    private final ResultStreamHub resultStreamHub;
+    private final int maxChecksPerTick;
+    private final boolean coalescing;
+    private final Duration coalescingWindow;
+    private final boolean tenantMetrics;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    private final ProbeRateWindow probeRate = new ProbeRateWindow(RATE_WINDOW_TICKS);
+    private final Timer tickTimer;
+    private final DistributionSummary dueEndpoints;
+    private final DistributionSummary checkedEndpoints;
+    private final DistributionSummary sharedProbes;
+    private final Timer successfulProbes;
+    private final Timer clientErrorProbes;
+    private final Timer serverErrorProbes;
+    private final Map<String, Timer> tenantLateness = new ConcurrentHashMap<>();
+
+    public MonitoringService(EndpointScheduler endpointScheduler, ProbeExecutor probeExecutor,
+                             MonitoringResultWriter monitoringResultWriter, LatencyTracker latencyTracker,
+                             ResultStreamHub resultStreamHub, MonitoringProperties properties,
+                             MeterRegistry meterRegistry, Clock clock) {
+        this.endpointScheduler = endpointScheduler;
+        this.probeExecutor = probeExecutor;
+        this.monitoringResultWriter = monitoringResultWriter;
+        this.latencyTracker = latencyTracker;
+        this.resultStreamHub = resultStreamHub;
+        this.maxChecksPerTick = properties.getScheduler().getMaxChecksPerTick();
+        this.coalescing = properties.getCoalescing().isEnabled();
+        this.coalescingWindow = properties.getCoalescing().getWindow();
+        this.tenantMetrics = properties.getFairness().isTenantMetrics();
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+
+        this.tickTimer = Timer.builder("monitoring.scheduler.tick")
+                .description("Time taken to poll due endpoints and start their probes")
+                .register(meterRegistry);
+        this.dueEndpoints = DistributionSummary.builder("monitoring.scheduler.due")
+                .description("Due endpoints taken from the scheduler per tick, limited by the free probe slots")
+                .register(meterRegistry);
+        this.checkedEndpoints = DistributionSummary.builder("monitoring.scheduler.checked")
+                .description("Probes started per tick")
+                .register(meterRegistry);
+        this.sharedProbes = DistributionSummary.builder("monitoring.probe.shared")
+                .description("Endpoint checks answered by one probe request, the mean is the sharing ratio")
+                .register(meterRegistry);
+        TimeGauge.builder("monitoring.scheduler.lag", endpointScheduler, TimeUnit.MILLISECONDS, EndpointScheduler::lagMillis)
+                .description("How long the most overdue endpoint has been waiting past its due time")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.scheduler.rate.stddev", probeRate, ProbeRateWindow::standardDeviation)
+                .description("Standard deviation of the probes started per second over the last minute")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.scheduler.rate.peak", probeRate, ProbeRateWindow::peak)
+                .description("Most probes started in one second over the last minute")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.scheduler.endpoints", endpointScheduler, EndpointScheduler::size)
+                .description("Endpoints scheduled on this instance")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.probe.in.flight", probeExecutor, ProbeExecutor::inFlight)
+                .description("Probes currently running")
+                .register(meterRegistry);
+        this.successfulProbes = probeTimer(meterRegistry, "success");
+        this.clientErrorProbes = probeTimer(meterRegistry, "client_error");
+        this.serverErrorProbes = probeTimer(meterRegistry, "server_error");
+    }
 
     /**
-     * Check all monitored endpoints based on their intervals
+     * Start checks for all monitored endpoints that are due according to their intervals
      */
     @Scheduled(fixedRate = 1000) // Check every second
     public void checkEndpoints() {
-        List<MonitoredEndpoint> endpoints = monitoredEndpointService.getAllEndpoints();
-        LocalDateTime now = LocalDateTime.now();
-
-        endpoints.forEach(endpoint -> {
-            // Check if it's time to monitor this endpoint
-            if (shouldCheckEndpoint(endpoint, now)) {
-                log.debug("Checking endpoint: {}", endpoint.getUrl());
-                checkEndpoint(endpoint, now);
+        long start = System.nanoTime();
+        // Take only as many due endpoints as can be probed right now and the tick allows, the rest stay
+        // due in the scheduler. Polled also without free slots, so the scheduler lag stays current.
+        int capacity = Math.min(probeExecutor.availablePermits(), maxChecksPerTick);
+        if (capacity == 0) {
+            log.debug("All probe slots are busy, postponing due checks");
+        }
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        long nowMillis = EndpointScheduler.toEpochMilli(now);
+        List<ScheduledEndpoint> dueEndpoints = new ArrayList<>(endpointScheduler.pollDue(now, capacity));
+        if (coalescing && !dueEndpoints.isEmpty()) {
+            // Endpoints due shortly are checked early when they can share a request that is sent anyway
+            dueEndpoints.addAll(endpointScheduler.pollSharing(dueEndpoints, now.plus(coalescingWindow)));
+        }
+
+        int started = 0;
+        for (List<ScheduledEndpoint> sharing : groupByProbe(dueEndpoints)) {
+            ProbeRequest request = sharing.get(0).getProbeRequest();
+            log.debug("Checking {} for {} endpoints", request.getUrl(), sharing.size());
+            boolean submitted = probeExecutor.trySubmit(request, result -> handleResults(sharing, result, now));
+            if (submitted) {
+                started++;
+                sharedProbes.record(sharing.size());
+                // Endpoints taken early with a shared probe were not late
+                sharing.forEach(endpoint -> tenantLateness(endpoint.getOwnerId())
+                        .record(Math.max(0, nowMillis - endpoint.getDueAt()), TimeUnit.MILLISECONDS));
+            } else {
+                sharing.forEach(endpoint -> endpointScheduler.release(endpoint, now));
             }
-        });
+        }
+
+        this.dueEndpoints.record(dueEndpoints.size());
+        checkedEndpoints.record(started);
+        probeRate.record(started);
+        tickTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Stop probing before the result writer drains its queue and shuts down
+     */
+    @PreDestroy
+    public void shutdown() {
+        probeExecutor.shutdown();
     }
 
     /**
-     * Check a specific endpoint and save the result
+     * Group due endpoints by their probe request, or one per group without coalescing
      *
-     * @param endpoint the endpoint to check
-     * @param now      the current time
+     * @param dueEndpoints the due endpoints
+     * @return endpoints to check with one request each
      */
-    private void checkEndpoint(MonitoredEndpoint endpoint, LocalDateTime now) {
+    private Collection<List<ScheduledEndpoint>> groupByProbe(List<ScheduledEndpoint> dueEndpoints) {
+        if (!coalescing) {
+            return dueEndpoints.stream().map(Collections::singletonList).collect(Collectors.toList());
+        }
+        Map<ProbeRequest, List<ScheduledEndpoint>> probes = new LinkedHashMap<>();
+        dueEndpoints.forEach(endpoint ->
+                probes.computeIfAbsent(endpoint.getProbeRequest(), request -> new ArrayList<>()).add(endpoint));
+        return probes.values();
+    }
+
+    /**
+     * Fan the result of a probe out to every endpoint it was sent for
+     *
+     * @param sharing the endpoints sharing the probe
+     * @param result  the probe result
+     * @param now     the time the check was started
+     */
+    private void handleResults(List<ScheduledEndpoint> sharing, ProbeResult result, LocalDateTime now) {
+        for (ScheduledEndpoint endpoint : sharing) {
+            try {
+                handleResult(endpoint, result, now);
+            } catch (RuntimeException e) {
+                // The other endpoints still get the result, the failed one is completed by handleResult
+                log.error("Error handling probe result for endpoint {}", endpoint.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Queue the result of an endpoint check for writing and push it to live streams
+     *
+     * @param endpoint the checked endpoint
+     * @param result   the probe result
+     * @param now      the time the check was started
+     */
+    private void handleResult(ScheduledEndpoint endpoint, ProbeResult result, LocalDateTime now) {
         try {
-            ResponseEntity<String> response = restTemplate.getForEntity(endpoint.getUrl(), String.class);
-            
-            // Save the monitoring result
-            monitoringResultService.saveResult(
-                    endpoint,
-                    response.getStatusCodeValue(),
-                    response.getBody()
-            );
-            
-            // Update the last check date
-            monitoredEndpointService.updateLastCheckDate(endpoint, now);
-            
-        } catch (RestClientException e) {
-            log.error("Error monitoring endpoint {}: {}", endpoint.getUrl(), e.getMessage());
-            
-            // Save error result
-            monitoringResultService.saveResult(
-                    endpoint,
-                    HttpStatus.INTERNAL_SERVER_ERROR.value(),
-                    e.getMessage()
-            );
-            
-            // Update the last check date even if there was an error
-            monitoredEndpointService.updateLastCheckDate(endpoint, now);
+            boolean repeat = endpointScheduler.recordOutcome(endpoint, failureOf(result));
+            // The writer updates the last check date as well, also for error results
+            monitoringResultWriter.enqueue(new PendingResult(
+                    endpoint.getId(),
+                    now,
+                    result.getStatusCode(),
+                    result.getPayload(),
+                    result.getContentLength(),
+                    result.getContentHash(),
+                    result.getResponseTime(),
+                    repeat
+            ));
+            latencyTracker.record(endpoint.getId(), now, result.getResponseTime());
+            if (result.getResponseTime() != null) {
+                probeTimer(result).record(result.getResponseTime(), TimeUnit.MILLISECONDS);
+            }
+            // Streamed before it is written, so the event carries no result ID or payload. Repeats are
+            // streamed by the hub once written, with the count of the result they were added to.
+            if (!repeat) {
+                resultStreamHub.publish(endpoint.getOwnerId(), new MonitoringResultDto(
+                        null,
+                        now,
+                        result.getStatusCode(),
+                        null,
+                        result.getContentLength(),
+                        result.getContentHash(),
+                        result.getResponseTime(),
+                        endpoint.getId(),
+                        1,
+                        null
+                ));
+            }
+        } finally {
+            endpointScheduler.complete(endpoint, now);
         }
     }
 
+    private Timer tenantLateness(Long ownerId) {
+        String owner = tenantMetrics ? String.valueOf(ownerId) : "all";
+        return tenantLateness.computeIfAbsent(owner, tag -> Timer.builder("monitoring.tenant.lateness")
+                .description("How long checks waited past their due time before they were started")
+                .tag("owner", tag)
+                .register(meterRegistry));
+    }
+
+    private Timer probeTimer(ProbeResult result) {
+        Integer statusCode = result.getStatusCode();
+        // Probes failing without a response are recorded with status 500 as well
+        if (statusCode == null || statusCode >= 500) {
+            return serverErrorProbes;
+        }
+        return statusCode >= 400 ? clientErrorProbes : successfulProbes;
+    }
+
+    private static Timer probeTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder("monitoring.probe.duration")
+                .description("Wall-clock duration of endpoint probes")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
     /**
-     * Determine if an endpoint should be checked based on its monitoring interval
+     * Describe a failed check so identical consecutive failures can be recognized
      *
-     * @param endpoint the endpoint
-     * @param now      the current time
-     * @return true if the endpoint should be checked
+     * @param result the probe result
+     * @return status and body or error message of a failed check, null if the endpoint responded without a server error
      */
-    private boolean shouldCheckEndpoint(MonitoredEndpoint endpoint, LocalDateTime now) {
-        LocalDateTime lastCheck = endpoint.getLastCheckDate();
-        
-        // If never checked, check it now
-        if (lastCheck == null) {
-            return true;
+    private static String failureOf(ProbeResult result) {
+        Integer statusCode = result.getStatusCode();
+        if (statusCode != null && statusCode < 500) {
+            return null;
         }
-        
-        // Check if the interval has passed
-        long secondsSinceLastCheck = java.time.Duration.between(lastCheck, now).getSeconds();
-        return secondsSinceLastCheck >= endpoint.getMonitoringInterval();
+        return statusCode + ":" + (result.getContentHash() != null ? result.getContentHash() : result.getPayload());
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Moves payloads of results written before deduplication into the {@link PayloadStore},
+ * one small batch per run, walking the table in ID order. In cluster mode it runs on one instance only,
+ * see {@link EndpointScheduler#runsClusterJobs()}.
+ */
+@Slf4j
+@Service
+public class PayloadMigrationJob {
+
+    private final PayloadStore payloadStore;
+    private final EndpointScheduler endpointScheduler;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private long lastMigratedId;
+    private boolean finished;
+
+    public PayloadMigrationJob(PayloadStore payloadStore, EndpointScheduler endpointScheduler, JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate, MonitoringProperties properties) {
+        this.payloadStore = payloadStore;
+        this.endpointScheduler = endpointScheduler;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = properties.getPayload().isMigrationEnabled();
+        this.batchSize = properties.getPayload().getMigrationBatchSize();
+    }
+
+    /**
+     * Migrate the next batch of legacy payloads
+     */
+    @Scheduled(fixedDelay = 1000)
+    public void migrateLegacyPayloads() {
+        if (!enabled || finished || !endpointScheduler.runsClusterJobs()) {
+            return;
+        }
+
+        List<LegacyPayload> batch = jdbcTemplate.query(
+                "SELECT id, payload FROM monitoring_results WHERE id > ? AND payload IS NOT NULL ORDER BY id LIMIT ?",
+                (rs, rowNum) -> new LegacyPayload(rs.getLong("id"), rs.getString("payload")),
+                lastMigratedId, batchSize);
+
+        if (batch.isEmpty()) {
+            finished = true;
+            log.info("Legacy payload migration finished");
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            List<String> hashes = payloadStore.storeAll(batch.stream()
+                    .map(legacyPayload -> legacyPayload.payload)
+                    .collect(Collectors.toList()));
+
+            List<Object[]> batchArgs = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batchArgs.add(new Object[]{hashes.get(i), batch.get(i).id});
+            }
+            jdbcTemplate.batchUpdate(
+                    "UPDATE monitoring_results SET payload_hash = ?, payload = NULL WHERE id = ?", batchArgs);
+        });
+
+        lastMigratedId = batch.get(batch.size() - 1).id;
+        log.debug("Migrated {} legacy payloads up to result {}", batch.size(), lastMigratedId);
+    }
+
+    private static final class LegacyPayload {
+        private final long id;
+        private final String payload;
+
+        private LegacyPayload(long id, String payload) {
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.monitoring.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.repository.PayloadContentRepository;
+import com.monitoring.app.util.HashUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed store for response payloads. Each distinct payload is stored once,
+ * deflate-compressed and keyed by its SHA-256, and monitoring results only reference the hash.
+ */
+@Service
+public class PayloadStore {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO payload_contents (hash, data, original_length, created_at) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE hash = hash";
+
+    private final PayloadContentRepository payloadContentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final Cache<String, Boolean> knownHashes;
+    private final Cache<String, String> payloads;
+
+    private final Counter references;
+    private final Counter uniqueContents;
+    private final Counter rawBytes;
+    private final Counter compressedBytes;
+
+    public PayloadStore(PayloadContentRepository payloadContentRepository, JdbcTemplate jdbcTemplate,
+                        MeterRegistry meterRegistry, MonitoringProperties properties) {
+        MonitoringProperties.Payload payload = properties.getPayload();
+        this.payloadContentRepository = payloadContentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        Caffeine<Object, Object> knownHashesBuilder = Caffeine.newBuilder()
+                .maximumSize(payload.getKnownHashes());
+        if (!payload.getOrphanGrace().isZero()) {
+            // Checked again well before the retention job may purge a content that became unreferenced
+            knownHashesBuilder.expireAfterWrite(payload.getOrphanGrace().dividedBy(2));
+        }
+        this.knownHashes = knownHashesBuilder.build();
+        this.payloads = Caffeine.newBuilder()
+                .maximumWeight(payload.getCacheSize().toBytes())
+                // Strings are weighed by their approximate heap size
+                .weigher((String hash, String value) -> 2 * value.length() + 64)
+                .build();
+
+        this.references = Counter.builder("monitoring.payloads.references")
+                .description("Payloads stored by reference, including duplicates")
+                .register(meterRegistry);
+        this.uniqueContents = Counter.builder("monitoring.payloads.unique")
+                .description("Distinct payload contents written to the payload store")
+                .register(meterRegistry);
+        this.rawBytes = Counter.builder("monitoring.payloads.raw.bytes")
+                .description("Uncompressed size of distinct payload contents written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.compressedBytes = Counter.builder("monitoring.payloads.compressed.bytes")
+                .description("Compressed size of distinct payload contents written")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.payloads.dedup.ratio", this, PayloadStore::dedupRatio)
+                .description("Payload references per distinct stored content")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Store payloads, writing only contents that are not stored yet.
+     * Must be called in the transaction that saves the results referencing the payloads.
+     *
+     * @param payloadsToStore the payloads, may contain nulls
+     * @return the hash of each payload in the same order, null for null payloads
+     */
+    public List<String> storeAll(List<String> payloadsToStore) {
+        List<String> hashes = new ArrayList<>(payloadsToStore.size());
+        Map<String, byte[]> candidates = new LinkedHashMap<>();
+
+        for (String payload : payloadsToStore) {
+            if (payload == null) {
+                hashes.add(null);
+                continue;
+            }
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            String hash = HashUtils.sha256Hex(bytes);
+            hashes.add(hash);
+            references.increment();
+            if (knownHashes.getIfPresent(hash) == null) {
+                candidates.putIfAbsent(hash, bytes);
+            }
+        }
+
+        if (!candidates.isEmpty()) {
+            insertMissing(candidates);
+        }
+        return hashes;
+    }
+
+    /**
+     * Load and decompress payloads
+     *
+     * @param hashes the payload hashes
+     * @return the payload for each hash that exists in the store
+     */
+    public Map<String, String> loadAll(Collection<String> hashes) {
+        Map<String, String> loaded = new HashMap<>(payloads.getAllPresent(hashes));
+        Set<String> missing = new HashSet<>(hashes);
+        missing.removeAll(loaded.keySet());
+
+        if (!missing.isEmpty()) {
+            payloadContentRepository.findAllById(missing).forEach(content -> {
+                String payload = decompress(content.getData(), content.getOriginalLength());
+                payloads.put(content.getHash(), payload);
+                loaded.put(content.getHash(), payload);
+            });
+        }
+        return loaded;
+    }
+
+    /**
+     * Get the number of payload references per distinct stored content since startup
+     *
+     * @return the deduplication ratio
+     */
+    public double dedupRatio() {
+        double unique = uniqueContents.count();
+        return unique == 0 ? 0 : references.count() / unique;
+    }
+
+    private void insertMissing(Map<String, byte[]> candidates) {
+        // Taking contents back into use locks them against the orphan sweep until the results are committed
+        jdbcTemplate.update("UPDATE payload_contents SET orphaned_since = NULL WHERE orphaned_since IS NOT NULL " +
+                "AND hash IN (" + String.join(", ", Collections.nCopies(candidates.size(), "?")) + ")",
+                candidates.keySet().toArray());
+        Set<String> existing = new HashSet<>(payloadContentRepository.findExistingHashes(candidates.keySet()));
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Object[]> batchArgs = new ArrayList<>();
+        candidates.forEach((hash, bytes) -> {
+            if (existing.contains(hash)) {
+                return;
+            }
+            byte[] compressed = compress(bytes);
+            batchArgs.add(new Object[]{hash, compressed, bytes.length, now});
+            uniqueContents.increment();
+            rawBytes.increment(bytes.length);
+            compressedBytes.increment(compressed.length);
+        });
+        // Another writer may insert the same content concurrently, duplicates are ignored
+        if (!batchArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, batchArgs);
+        }
+
+        // Remember the hashes only once the contents are committed
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    candidates.keySet().forEach(hash -> knownHashes.put(hash, Boolean.TRUE));
+                }
+            });
+        } else {
+            candidates.keySet().forEach(hash -> knownHashes.put(hash, Boolean.TRUE));
+        }
+    }
+
+    static byte[] compress(byte[] bytes) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(byte[] data, int originalLength) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] out = new byte[originalLength];
+            int offset = 0;
+            while (offset < originalLength && !inflater.finished()) {
+                int length = inflater.inflate(out, offset, originalLength - offset);
+                if (length == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                offset += length;
+            }
+            return new String(out, 0, offset, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Stored payload content is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
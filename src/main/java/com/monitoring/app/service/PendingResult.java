@@ -0,0 +1,23 @@
+package com.monitoring.app.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Check result waiting in the {@link MonitoringResultWriter} queue to be persisted
+ */
+@Getter
+@AllArgsConstructor
+public class PendingResult {
+    private final Long endpointId;
+    private final LocalDateTime checkDate;
+    private final Integer statusCode;
+    private final String payload;
+    private final Long contentLength;
+    private final String contentHash;
+    private final Long responseTime;
+    // Same failure as the previous result of the endpoint, counted on that result instead of stored again
+    private final boolean repeat;
+}
@@ -0,0 +1,51 @@
+package com.monitoring.app.service;
+
+/**
+ * Number of probes started in each of the last ticks, to tell an even probe rate from bursts
+ */
+final class ProbeRateWindow {
+
+    private final int[] counts;
+    private int next;
+    private int filled;
+
+    ProbeRateWindow(int ticks) {
+        this.counts = new int[ticks];
+    }
+
+    synchronized void record(int started) {
+        counts[next] = started;
+        next = (next + 1) % counts.length;
+        filled = Math.min(filled + 1, counts.length);
+    }
+
+    /**
+     * @return standard deviation of the probes started per tick over the window
+     */
+    synchronized double standardDeviation() {
+        if (filled == 0) {
+            return 0;
+        }
+        double mean = 0;
+        for (int i = 0; i < filled; i++) {
+            mean += counts[i];
+        }
+        mean /= filled;
+        double squares = 0;
+        for (int i = 0; i < filled; i++) {
+            squares += (counts[i] - mean) * (counts[i] - mean);
+        }
+        return Math.sqrt(squares / filled);
+    }
+
+    /**
+     * @return most probes started in one tick over the window
+     */
+    synchronized int peak() {
+        int peak = 0;
+        for (int i = 0; i < filled; i++) {
+            peak = Math.max(peak, counts[i]);
+        }
+        return peak;
+    }
+}
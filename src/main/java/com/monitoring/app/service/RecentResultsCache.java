@@ -0,0 +1,149 @@
+package com.monitoring.app.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.exception.ResourceNotFoundException;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the latest results of each endpoint in a fixed-size ring buffer. Buffers are loaded from the
+ * database on first access, then kept current from {@link ResultsPersistedEvent}s, so reading the
+ * latest results of a warm endpoint does not query the database. Total memory is bounded by weight.
+ * In cluster mode results are written by other instances as well, so buffers are not kept.
+ */
+@Service
+public class RecentResultsCache {
+
+    private final MonitoringResultService monitoringResultService;
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final int resultsPerEndpoint;
+    private final boolean clustered;
+    private final Cache<Long, RecentResults> buffers;
+
+    public RecentResultsCache(MonitoringResultService monitoringResultService,
+                              MonitoredEndpointRepository monitoredEndpointRepository,
+                              MonitoringProperties properties, MeterRegistry meterRegistry) {
+        MonitoringProperties.RecentResults recentResults = properties.getRecentResults();
+        this.monitoringResultService = monitoringResultService;
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.resultsPerEndpoint = recentResults.getSize();
+        this.clustered = properties.getCluster().isEnabled();
+        this.buffers = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(recentResults.getMaxMemory().toBytes())
+                .weigher((Long endpointId, RecentResults buffer) -> buffer.estimatedSize())
+                .recordStats()
+                .build(), "recentResults");
+    }
+
+    /**
+     * Get the latest results of an endpoint owned by the user
+     *
+     * @param endpointId the endpoint ID
+     * @param user       the user
+     * @return the latest results, newest first
+     */
+    public List<MonitoringResultDto> getRecentResults(Long endpointId, User user) {
+        RecentResults buffer = clustered ? load(endpointId) : buffers.get(endpointId, this::load);
+        if (buffer == null || !buffer.ownerId.equals(user.getId())) {
+            throw new ResourceNotFoundException("Endpoint not found with id: " + endpointId);
+        }
+        return buffer.newestFirst();
+    }
+
+    /**
+     * Append saved results to the buffers of endpoints that are already cached and update results
+     * that repeated failures were counted in
+     *
+     * @param event the saved results
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onResultsPersisted(ResultsPersistedEvent event) {
+        event.getResults().forEach(this::add);
+        event.getRepeated().forEach(this::add);
+    }
+
+    /**
+     * Drop the buffer of a deleted endpoint
+     *
+     * @param event the deleted endpoint
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onEndpointDeleted(EndpointDeletedEvent event) {
+        buffers.invalidate(event.getEndpointId());
+    }
+
+    private void add(MonitoringResultDto result) {
+        // Re-putting through compute lets the cache re-weigh the grown buffer
+        buffers.asMap().computeIfPresent(result.getMonitoredEndpointId(), (endpointId, buffer) -> buffer.add(result));
+    }
+
+    private RecentResults load(Long endpointId) {
+        return monitoredEndpointRepository.findOwnerIdById(endpointId)
+                .map(ownerId -> {
+                    RecentResults buffer = new RecentResults(ownerId, resultsPerEndpoint);
+                    List<MonitoringResultDto> latest = monitoringResultService.getLatestResults(endpointId, resultsPerEndpoint);
+                    // Oldest first, so the newest result ends up at the head of the ring
+                    for (int i = latest.size() - 1; i >= 0; i--) {
+                        buffer.add(latest.get(i));
+                    }
+                    return buffer;
+                })
+                .orElse(null);
+    }
+
+    private static final class RecentResults {
+        // Rough per-result overhead of the DTO and its fields besides the payload characters
+        private static final int RESULT_OVERHEAD = 256;
+
+        private final Long ownerId;
+        private final MonitoringResultDto[] ring;
+        private int head;
+        private int count;
+
+        private RecentResults(Long ownerId, int capacity) {
+            this.ownerId = ownerId;
+            this.ring = new MonitoringResultDto[capacity];
+        }
+
+        private synchronized RecentResults add(MonitoringResultDto result) {
+            for (int i = 0; i < count; i++) {
+                if (result.getId().equals(ring[i].getId())) {
+                    // Already buffered, e.g. loaded after the save, or updated with repeated failures
+                    ring[i] = result;
+                    return this;
+                }
+            }
+            ring[head] = result;
+            head = (head + 1) % ring.length;
+            count = Math.min(count + 1, ring.length);
+            return this;
+        }
+
+        private synchronized List<MonitoringResultDto> newestFirst() {
+            List<MonitoringResultDto> results = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                results.add(ring[(head - i + ring.length) % ring.length]);
+            }
+            return results;
+        }
+
+        private synchronized int estimatedSize() {
+            int size = 64;
+            for (int i = 0; i < count; i++) {
+                String payload = ring[i].getPayload();
+                size += RESULT_OVERHEAD + (payload != null ? 2 * payload.length() : 0);
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.monitoring.app.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.exception.ResourceNotFoundException;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+/**
+ * Streams monitoring results straight from a forward-only JDBC cursor into an output stream.
+ * Rows are written as they arrive without building entities, so memory use does not depend
+ * on the number of exported results.
+ */
+@Service
+public class ResultExportService {
+
+    private static final String CSV_HEADER =
+            "id,endpoint_id,check_date,status_code,content_length,content_hash,response_time,repeat_count,last_repeat_date";
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    // Open range bounds that MySQL DATETIME columns can still hold
+    private static final LocalDateTime BEGINNING_OF_TIME = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime END_OF_TIME = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final ObjectWriter jsonWriter;
+
+    public ResultExportService(MonitoredEndpointRepository monitoredEndpointRepository, DataSource dataSource,
+                               ObjectMapper objectMapper, MonitoringProperties properties) {
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        // MySQL Connector/J streams rows one by one instead of buffering the whole result only with Integer.MIN_VALUE
+        this.streamingJdbcTemplate.setFetchSize(properties.getExport().getFetchSize());
+        this.jsonWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Verify that an endpoint belongs to the user, before the response is committed
+     *
+     * @param endpointId the endpoint ID
+     * @param user       the user
+     */
+    public void checkAccess(Long endpointId, User user) {
+        monitoredEndpointRepository.findOwnerIdById(endpointId)
+                .filter(ownerId -> ownerId.equals(user.getId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + endpointId));
+    }
+
+    /**
+     * Write results of one endpoint, or of all endpoints of the user, ordered by endpoint and check date
+     *
+     * @param user           the user
+     * @param endpointId     the endpoint ID, null for all endpoints of the user
+     * @param from           oldest check date to include, optional
+     * @param to             check date to stop before, optional
+     * @param format         the output format
+     * @param includePayload whether to include stored payloads
+     * @param out            the stream to write to, left open
+     */
+    public void export(User user, Long endpointId, LocalDateTime from, LocalDateTime to,
+                       ExportFormat format, boolean includePayload, OutputStream out) throws IOException {
+        StringBuilder sql = new StringBuilder("SELECT r.id, r.endpoint_id, r.check_date, r.status_code, " +
+                "r.content_length, r.content_hash, r.response_time, r.repeat_count, r.last_repeat_date");
+        if (includePayload) {
+            sql.append(", r.payload, p.data, p.original_length FROM monitoring_results r " +
+                    "LEFT JOIN payload_contents p ON p.hash = r.payload_hash");
+        } else {
+            sql.append(" FROM monitoring_results r");
+        }
+        Object ownerOrEndpoint;
+        if (endpointId != null) {
+            sql.append(" WHERE r.endpoint_id = ?");
+            ownerOrEndpoint = endpointId;
+        } else {
+            sql.append(" WHERE r.endpoint_id IN " +
+                    "(SELECT e.id FROM monitored_endpoints e WHERE e.owner_id = ? AND e.deleted = false)");
+            ownerOrEndpoint = user.getId();
+        }
+        sql.append(" AND r.check_date >= ? AND r.check_date < ? ORDER BY r.endpoint_id, r.check_date, r.id");
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        JsonGenerator generator = format == ExportFormat.NDJSON ? jsonWriter.getFactory().createGenerator(writer) : null;
+        if (format == ExportFormat.CSV) {
+            writer.write(includePayload ? CSV_HEADER + ",payload\n" : CSV_HEADER + "\n");
+        }
+
+        try {
+            streamingJdbcTemplate.query(sql.toString(), rs -> {
+                MonitoringResultDto result = mapRow(rs, includePayload);
+                try {
+                    if (generator != null) {
+                        jsonWriter.writeValue(generator, result);
+                        generator.writeRaw('\n');
+                    } else {
+                        writeCsv(writer, result, includePayload);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, ownerOrEndpoint,
+                    Timestamp.valueOf(from != null ? from : BEGINNING_OF_TIME),
+                    Timestamp.valueOf(to != null ? to : END_OF_TIME));
+        } catch (UncheckedIOException e) {
+            // The client went away, stop reading rows
+            throw e.getCause();
+        }
+
+        if (generator != null) {
+            generator.flush();
+        }
+        writer.flush();
+    }
+
+    private static MonitoringResultDto mapRow(ResultSet rs, boolean includePayload) throws SQLException {
+        String payload = null;
+        if (includePayload) {
+            byte[] data = rs.getBytes("data");
+            // Rows written before payload deduplication still carry their payload inline
+            payload = data != null
+                    ? PayloadStore.decompress(data, rs.getInt("original_length"))
+                    : rs.getString("payload");
+        }
+        Timestamp lastRepeatDate = rs.getTimestamp("last_repeat_date");
+        return new MonitoringResultDto(
+                rs.getLong("id"),
+                rs.getTimestamp("check_date").toLocalDateTime(),
+                (Integer) rs.getObject("status_code"),
+                payload,
+                (Long) rs.getObject("content_length"),
+                rs.getString("content_hash"),
+                (Long) rs.getObject("response_time"),
+                rs.getLong("endpoint_id"),
+                rs.getInt("repeat_count"),
+                lastRepeatDate != null ? lastRepeatDate.toLocalDateTime() : null
+        );
+    }
+
+    private static void writeCsv(Writer writer, MonitoringResultDto result, boolean includePayload) throws IOException {
+        writer.write(String.valueOf(result.getId()));
+        writer.write(',');
+        writer.write(String.valueOf(result.getMonitoredEndpointId()));
+        writer.write(',');
+        writer.write(result.getCheckDate().toString());
+        writer.write(',');
+        writeNullable(writer, result.getStatusCode());
+        writer.write(',');
+        writeNullable(writer, result.getContentLength());
+        writer.write(',');
+        writeNullable(writer, result.getContentHash());
+        writer.write(',');
+        writeNullable(writer, result.getResponseTime());
+        writer.write(',');
+        writeNullable(writer, result.getRepeatCount());
+        writer.write(',');
+        writeNullable(writer, result.getLastRepeatDate());
+        if (includePayload) {
+            writer.write(',');
+            if (result.getPayload() != null) {
+                writer.write('"');
+                writer.write(result.getPayload().replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static void writeNullable(Writer writer, Object value) throws IOException {
+        if (value != null) {
+            writer.write(value.toString());
+        }
+    }
+}
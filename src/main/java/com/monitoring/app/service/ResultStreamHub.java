@@ -0,0 +1,486 @@
+package com.monitoring.app.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.exception.ServiceUnavailableException;
+import com.monitoring.app.exception.TooManyRequestsException;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans check results out to Server-Sent Event subscribers as probes finish. Each result is serialized
+ * once per user, whatever the number of subscribers. Every subscriber has a bounded buffer drained by a
+ * small dispatcher pool; a slow subscriber loses its oldest events and is told how many it missed.
+ * One that keeps overflowing, or whose write blocks past the send timeout, is dropped, and a blocked
+ * write gets a replacement thread so the other subscribers keep being served.
+ * The latest events of each user are kept so a reconnecting client can resume after its Last-Event-ID.
+ * Repeated failures are streamed once they are written, as the result they were counted in.
+ * In cluster mode each instance only sees the results of its own checks, so streams are refused there.
+ */
+@Slf4j
+@Service
+public class ResultStreamHub {
+
+    private static final String RESULT_EVENT = "result";
+    private static final String OVERFLOW_EVENT = "overflow";
+    private static final String RESET_EVENT = "reset";
+    // Replay history of a user is kept this long after the last subscriber left
+    private static final Duration CHANNEL_IDLE_TIMEOUT = Duration.ofMinutes(5);
+
+    private final ObjectMapper objectMapper;
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final boolean clustered;
+    private final int bufferSize;
+    private final int replaySize;
+    private final int maxSubscribersPerUser;
+    private final long timeoutMillis;
+    private final long sendTimeoutNanos;
+    private final int maxOverflows;
+    private final int dispatchThreads;
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ThreadPoolExecutor dispatcher;
+    // Threads added in place of ones blocked in a stalled write, guarded by the dispatcher
+    private int replacementThreads;
+    private final Counter droppedEvents;
+    private final Counter droppedSubscribers;
+
+    public ResultStreamHub(ObjectMapper objectMapper, MonitoredEndpointRepository monitoredEndpointRepository,
+                           MonitoringProperties properties, MeterRegistry meterRegistry) {
+        MonitoringProperties.Stream stream = properties.getStream();
+        this.objectMapper = objectMapper;
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.clustered = properties.getCluster().isEnabled();
+        this.bufferSize = stream.getBufferSize();
+        this.replaySize = stream.getReplaySize();
+        this.maxSubscribersPerUser = stream.getMaxSubscribersPerUser();
+        this.timeoutMillis = stream.getTimeout().toMillis();
+        this.sendTimeoutNanos = stream.getSendTimeout().toNanos();
+        this.maxOverflows = stream.getMaxOverflows();
+        this.dispatchThreads = stream.getDispatchThreads();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.dispatcher = new ThreadPoolExecutor(
+                dispatchThreads, dispatchThreads,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "stream-dispatch-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+
+        this.droppedEvents = Counter.builder("monitoring.stream.dropped")
+                .description("Events dropped for subscribers that did not keep up")
+                .register(meterRegistry);
+        this.droppedSubscribers = Counter.builder("monitoring.stream.dropped.subscribers")
+                .description("Subscribers dropped for overflowing repeatedly or blocking a write past the send timeout")
+                .register(meterRegistry);
+        Gauge.builder("monitoring.stream.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open result streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Open a result stream for a user
+     *
+     * @param ownerId     the user ID
+     * @param endpointIds the endpoints to stream, null or empty for all endpoints of the user
+     * @param lastEventId the ID of the last event the client received, null for a new stream
+     * @return the emitter to return from the controller
+     */
+    public SseEmitter subscribe(Long ownerId, Set<Long> endpointIds, Long lastEventId) {
+        if (clustered) {
+            throw new ServiceUnavailableException("Result streams are not available in cluster mode");
+        }
+        SseEmitter emitter = newEmitter();
+        Subscriber subscriber = new Subscriber(emitter, endpointIds == null || endpointIds.isEmpty() ? null : endpointIds);
+
+        Channel channel;
+        while (true) {
+            channel = channels.computeIfAbsent(ownerId, id -> new Channel(replaySize));
+            synchronized (channel) {
+                if (channels.get(ownerId) != channel) {
+                    // Dropped as idle in the meantime
+                    continue;
+                }
+                if (channel.subscribers.size() >= maxSubscribersPerUser) {
+                    throw new TooManyRequestsException("Too many open result streams");
+                }
+                subscriber.channel = channel;
+                // Replaying under the channel lock keeps replayed and live events in order
+                if (lastEventId != null) {
+                    List<StreamEvent> missed = channel.eventsAfter(lastEventId);
+                    if (missed == null) {
+                        subscriber.offer(StreamEvent.control(RESET_EVENT, "{}"));
+                    } else {
+                        missed.forEach(subscriber::offer);
+                    }
+                }
+                channel.subscribers.add(subscriber);
+                break;
+            }
+        }
+        subscriberCount.incrementAndGet();
+
+        Channel subscribedChannel = channel;
+        emitter.onCompletion(() -> unsubscribe(subscribedChannel, subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscribedChannel, subscriber));
+        emitter.onError(e -> unsubscribe(subscribedChannel, subscriber));
+        return emitter;
+    }
+
+    /**
+     * Publish a check result to the streams of its owner
+     *
+     * @param ownerId the owner of the checked endpoint
+     * @param result  the result
+     */
+    public void publish(Long ownerId, MonitoringResultDto result) {
+        Channel channel = channels.get(ownerId);
+        if (channel == null) {
+            // Nobody streams the user's results, not even recently
+            return;
+        }
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            log.warn("Could not serialize result of endpoint {}: {}", result.getMonitoredEndpointId(), e.getMessage());
+            return;
+        }
+        synchronized (channel) {
+            StreamEvent event = new StreamEvent(channel.nextSequence++, RESULT_EVENT, result.getMonitoredEndpointId(), json);
+            channel.append(event);
+            channel.subscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    /**
+     * Publish the results that repeated failures were counted in, with their updated repeat count
+     *
+     * @param event the saved results
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onResultsPersisted(ResultsPersistedEvent event) {
+        if (channels.isEmpty()) {
+            return;
+        }
+        event.getRepeated().forEach(result -> monitoredEndpointRepository
+                .findOwnerIdById(result.getMonitoredEndpointId())
+                .ifPresent(ownerId -> publish(ownerId, result)));
+    }
+
+    /**
+     * Keep idle connections alive, detect closed ones, drop subscribers blocked in a write and forget the
+     * history of users without streams
+     */
+    @Scheduled(fixedDelay = 15000)
+    public void heartbeat() {
+        long now = System.nanoTime();
+        channels.forEach((ownerId, channel) -> {
+            synchronized (channel) {
+                if (!channel.subscribers.isEmpty()) {
+                    channel.subscribers.forEach(subscriber -> {
+                        if (subscriber.isStalled(now)) {
+                            subscriber.dropStalled();
+                        } else {
+                            subscriber.offer(StreamEvent.HEARTBEAT);
+                        }
+                    });
+                } else if (now - channel.idleSince > CHANNEL_IDLE_TIMEOUT.toNanos()) {
+                    channels.remove(ownerId, channel);
+                }
+            }
+        });
+    }
+
+    /**
+     * Close all streams, clients reconnect to another instance or after the restart
+     */
+    @PreDestroy
+    public void shutdown() {
+        channels.values().forEach(channel -> channel.subscribers.forEach(subscriber -> subscriber.emitter.complete()));
+        dispatcher.shutdown();
+    }
+
+    /**
+     * Create the emitter of a new stream
+     */
+    SseEmitter newEmitter() {
+        return new SseEmitter(timeoutMillis);
+    }
+
+    private boolean addReplacementThread() {
+        synchronized (dispatcher) {
+            if (replacementThreads >= dispatchThreads) {
+                return false;
+            }
+            replacementThreads++;
+            // The maximum has to grow first and shrink last, it may never be below the core size
+            dispatcher.setMaximumPoolSize(dispatchThreads + replacementThreads);
+            dispatcher.setCorePoolSize(dispatchThreads + replacementThreads);
+            return true;
+        }
+    }
+
+    private void removeReplacementThread() {
+        synchronized (dispatcher) {
+            replacementThreads--;
+            dispatcher.setCorePoolSize(dispatchThreads + replacementThreads);
+            dispatcher.setMaximumPoolSize(dispatchThreads + replacementThreads);
+        }
+    }
+
+    private void unsubscribe(Channel channel, Subscriber subscriber) {
+        subscriber.closed = true;
+        synchronized (channel) {
+            if (channel.subscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+                if (channel.subscribers.isEmpty()) {
+                    channel.idleSince = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    private static final class StreamEvent {
+        private static final StreamEvent HEARTBEAT = new StreamEvent(-1, null, null, null);
+
+        private final long sequence;
+        private final String name;
+        private final Long endpointId;
+        private final String json;
+
+        private StreamEvent(long sequence, String name, Long endpointId, String json) {
+            this.sequence = sequence;
+            this.name = name;
+            this.endpointId = endpointId;
+            this.json = json;
+        }
+
+        private static StreamEvent control(String name, String json) {
+            return new StreamEvent(-1, name, null, json);
+        }
+    }
+
+    private static final class Channel {
+        // Guarded by the channel lock
+        private final StreamEvent[] ring;
+        private final long firstSequence;
+        private long nextSequence;
+        private int head;
+        private int count;
+        private long idleSince = System.nanoTime();
+        private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+        private Channel(int replaySize) {
+            this.ring = new StreamEvent[replaySize];
+            // Time-based so event IDs keep growing when a channel is recreated or the application restarts
+            this.firstSequence = System.currentTimeMillis() * 1000;
+            this.nextSequence = firstSequence;
+        }
+
+        private void append(StreamEvent event) {
+            ring[(head + count) % ring.length] = event;
+            if (count < ring.length) {
+                count++;
+            } else {
+                head = (head + 1) % ring.length;
+            }
+        }
+
+        /**
+         * @return the kept events after the given one, or null if some of them are no longer kept
+         */
+        private List<StreamEvent> eventsAfter(long lastEventId) {
+            long firstAvailable = count == ring.length ? ring[head].sequence : firstSequence;
+            if (lastEventId + 1 < firstAvailable || lastEventId >= nextSequence) {
+                return null;
+            }
+            List<StreamEvent> events = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                StreamEvent event = ring[(head + i) % ring.length];
+                if (event.sequence > lastEventId) {
+                    events.add(event);
+                }
+            }
+            return events;
+        }
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final Set<Long> endpointIds;
+        private final ArrayDeque<StreamEvent> queue = new ArrayDeque<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // Set before the subscriber is added to its channel
+        private Channel channel;
+        private int dropped;
+        // Batches in a row that events were dropped from, guarded by the queue
+        private int overflows;
+        // Nano time the current write started at, 0 while not writing
+        private volatile long writingSince;
+        private final AtomicBoolean replaced = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, Set<Long> endpointIds) {
+            this.emitter = emitter;
+            this.endpointIds = endpointIds;
+        }
+
+        private void offer(StreamEvent event) {
+            if (closed || (event.endpointId != null && endpointIds != null && !endpointIds.contains(event.endpointId))) {
+                return;
+            }
+            boolean overflowing;
+            synchronized (queue) {
+                if (queue.size() >= bufferSize) {
+                    queue.poll();
+                    if (dropped++ == 0) {
+                        overflows++;
+                    }
+                    droppedEvents.increment();
+                }
+                queue.add(event);
+                overflowing = overflows >= maxOverflows;
+            }
+            if (overflowing) {
+                drop();
+                return;
+            }
+            schedule();
+        }
+
+        private boolean isStalled(long now) {
+            long since = writingSince;
+            return since != 0 && now - since > sendTimeoutNanos;
+        }
+
+        /**
+         * Drop the subscriber, called under the channel lock. The drain completes the emitter once its
+         * current write returns, the client then reconnects and resumes from the replay history.
+         */
+        private void drop() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            droppedSubscribers.increment();
+            unsubscribe(channel, this);
+            schedule();
+        }
+
+        private void dropStalled() {
+            drop();
+            // The blocked thread is out of the pool until the write fails, another one takes its place
+            if (replaced.compareAndSet(false, true)) {
+                if (!addReplacementThread()) {
+                    replaced.set(false);
+                } else if (writingSince == 0 && replaced.compareAndSet(true, false)) {
+                    // The write returned in the meantime
+                    removeReplacementThread();
+                }
+            }
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    dispatcher.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    closed = true;
+                }
+            }
+        }
+
+        private void drain() {
+            while (true) {
+                if (closed) {
+                    emitter.complete();
+                    return;
+                }
+                List<StreamEvent> batch;
+                int missed;
+                synchronized (queue) {
+                    batch = new ArrayList<>(queue);
+                    queue.clear();
+                    missed = dropped;
+                    dropped = 0;
+                    if (missed == 0 && !batch.isEmpty()) {
+                        overflows = 0;
+                    }
+                }
+                if (batch.isEmpty()) {
+                    scheduled.set(false);
+                    // An event or a drop may have arrived between the check and the reset
+                    synchronized (queue) {
+                        if ((queue.isEmpty() && !closed) || !scheduled.compareAndSet(false, true)) {
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    writingSince = System.nanoTime();
+                    if (missed > 0) {
+                        emitter.send(SseEmitter.event().name(OVERFLOW_EVENT)
+                                .data("{\"dropped\":" + missed + "}", MediaType.APPLICATION_JSON));
+                    }
+                    for (StreamEvent event : batch) {
+                        send(event);
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away, the emitter callbacks remove the subscriber
+                    closed = true;
+                    emitter.completeWithError(e);
+                    return;
+                } finally {
+                    writingSince = 0;
+                    if (replaced.compareAndSet(true, false)) {
+                        removeReplacementThread();
+                    }
+                }
+            }
+        }
+
+        private void send(StreamEvent event) throws IOException {
+            if (event == StreamEvent.HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+                return;
+            }
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().name(event.name);
+            if (event.sequence >= 0) {
+                builder.id(Long.toString(event.sequence));
+            }
+            emitter.send(builder.data(event.json, MediaType.APPLICATION_JSON));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.dto.MonitoringResultDto;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Published by {@link MonitoringResultService} for each batch of saved check results
+ */
+@Getter
+@AllArgsConstructor
+public class ResultsPersistedEvent {
+    private final List<MonitoringResultDto> results;
+    // Results whose repeat count grew in the batch, as they are after it, including rows of earlier batches
+    private final List<MonitoringResultDto> repeated;
+}
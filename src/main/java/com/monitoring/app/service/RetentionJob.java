@@ -0,0 +1,314 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.RollupResolution;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Purges results past their endpoint's retention and rollups past the retention of their resolution,
+ * then payload contents no result references any more. Every delete statement removes at most one
+ * batch of rows by primary key and is followed by a pause, so purging never holds long locks. A run
+ * stops after its time budget and the next run continues with the endpoint or payload where it stopped.
+ * In cluster mode it runs on one instance only, see {@link EndpointScheduler#runsClusterJobs()}.
+ */
+@Slf4j
+@Service
+public class RetentionJob {
+
+    private static final int ENDPOINT_PAGE_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final EndpointScheduler endpointScheduler;
+    private final MonitoringProperties.Retention retention;
+    private final Duration orphanGrace;
+    private final Map<RollupResolution, Duration> rollupRetention = new EnumMap<>(RollupResolution.class);
+    private final Counter purgedResults;
+    private final Counter purgedRollups;
+    private final Counter purgedPayloads;
+    private final Timer runTimer;
+
+    private long endpointCursor;
+    private long passPurgedResults;
+    private boolean payloadSweepPending;
+    private String payloadCursor = "";
+    private long sweepPurgedPayloads;
+
+    public RetentionJob(JdbcTemplate jdbcTemplate, EndpointScheduler endpointScheduler, MonitoringProperties properties,
+                        MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.endpointScheduler = endpointScheduler;
+        this.retention = properties.getRetention();
+        this.orphanGrace = properties.getPayload().getOrphanGrace();
+        this.rollupRetention.put(RollupResolution.MINUTE, retention.getMinuteRollups());
+        this.rollupRetention.put(RollupResolution.HOUR, retention.getHourRollups());
+        this.rollupRetention.put(RollupResolution.DAY, retention.getDayRollups());
+
+        this.purgedResults = Counter.builder("monitoring.retention.purged")
+                .tag("table", "monitoring_results")
+                .description("Rows removed by the retention job")
+                .register(meterRegistry);
+        this.purgedRollups = Counter.builder("monitoring.retention.purged")
+                .tag("table", "result_rollups")
+                .description("Rows removed by the retention job")
+                .register(meterRegistry);
+        this.purgedPayloads = Counter.builder("monitoring.retention.purged")
+                .tag("table", "payload_contents")
+                .description("Rows removed by the retention job")
+                .register(meterRegistry);
+        this.runTimer = Timer.builder("monitoring.retention.run")
+                .description("Time spent purging per retention run")
+                .register(meterRegistry);
+        if (orphanGrace.isZero()) {
+            log.warn("monitoring.payload.orphan-grace is zero, unreferenced payload contents are never purged");
+        }
+    }
+
+    /**
+     * Purge expired results, rollups and unreferenced payloads within one run's time budget
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void purge() {
+        if (!retention.isEnabled() || !endpointScheduler.runsClusterJobs()) {
+            return;
+        }
+        long start = System.nanoTime();
+        long deadline = start + retention.getMaxRunTime().toNanos();
+        try {
+            // An unfinished sweep goes first, so passes that take whole runs cannot starve it
+            if (payloadSweepPending) {
+                payloadSweepPending = !sweepPayloads(deadline);
+            }
+            boolean passFinished = purgeResults(deadline);
+            if (passFinished) {
+                long rollups = purgeRollups(deadline);
+                log.info("Retention pass finished: purged {} results and {} rollups", passPurgedResults, rollups);
+                passPurgedResults = 0;
+                // The purged results may have been the last references to their payloads
+                payloadSweepPending = !orphanGrace.isZero() && !sweepPayloads(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            runTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Purge results endpoint by endpoint, continuing after the endpoint the previous run stopped at
+     *
+     * @param deadline nano time when the run must stop
+     * @return true if all endpoints were processed
+     */
+    private boolean purgeResults(long deadline) throws InterruptedException {
+        while (System.nanoTime() < deadline) {
+            List<EndpointRetention> endpoints = jdbcTemplate.query(
+                    "SELECT id, retention_days, retention_rows FROM monitored_endpoints " +
+                            "WHERE id > ? AND deleted = false ORDER BY id LIMIT ?",
+                    (rs, rowNum) -> new EndpointRetention(
+                            rs.getLong("id"),
+                            (Integer) rs.getObject("retention_days"),
+                            (Integer) rs.getObject("retention_rows")),
+                    endpointCursor, ENDPOINT_PAGE_SIZE);
+
+            for (EndpointRetention endpoint : endpoints) {
+                if (System.nanoTime() >= deadline) {
+                    return false;
+                }
+                passPurgedResults += purgeResults(endpoint, deadline);
+                endpointCursor = endpoint.id;
+            }
+            if (endpoints.size() < ENDPOINT_PAGE_SIZE) {
+                endpointCursor = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long purgeResults(EndpointRetention endpoint, long deadline) throws InterruptedException {
+        LocalDateTime dateCutoff = null;
+        if (endpoint.retentionDays != null) {
+            dateCutoff = LocalDateTime.now().minusDays(endpoint.retentionDays);
+        } else if (!retention.getResults().isZero()) {
+            dateCutoff = LocalDateTime.now().minus(retention.getResults());
+        }
+        int rows = endpoint.retentionRows != null ? endpoint.retentionRows : retention.getResultRows();
+        ResultAge oldestKept = rows > 0 && exceedsRows(endpoint.id, rows) ? oldestKept(endpoint.id, rows) : null;
+        if (dateCutoff == null && oldestKept == null) {
+            return 0;
+        }
+
+        long purged = 0;
+        while (System.nanoTime() < deadline) {
+            // Expired results are always the oldest ones, read in (check_date, id) index order
+            List<ResultAge> oldest = jdbcTemplate.query(
+                    "SELECT id, check_date FROM monitoring_results WHERE endpoint_id = ? " +
+                    "ORDER BY check_date, id LIMIT ?",
+                    (rs, rowNum) -> new ResultAge(rs.getLong("id"), rs.getTimestamp("check_date").toLocalDateTime()),
+                    endpoint.id, retention.getBatchSize());
+
+            List<Long> expired = new ArrayList<>();
+            for (ResultAge result : oldest) {
+                boolean tooOld = dateCutoff != null && result.checkDate.isBefore(dateCutoff);
+                if (!tooOld && (oldestKept == null || !result.isBefore(oldestKept))) {
+                    break;
+                }
+                expired.add(result.id);
+            }
+            if (expired.isEmpty()) {
+                break;
+            }
+
+            int deleted = deleteByIds("monitoring_results", expired);
+            purged += deleted;
+            purgedResults.increment(deleted);
+            if (expired.size() < oldest.size() || oldest.size() < retention.getBatchSize()) {
+                break;
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Check whether an endpoint has more results than it keeps, counting no further than one past the limit
+     * so endpoints within their limit do not pay for the offset scan of {@link #oldestKept}
+     */
+    private boolean exceedsRows(long endpointId, int rows) {
+        Integer count = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM (SELECT 1 FROM monitoring_results WHERE endpoint_id = ? LIMIT ?) capped",
+                Integer.class, endpointId, rows + 1);
+        return count != null && count > rows;
+    }
+
+    private ResultAge oldestKept(long endpointId, int rows) {
+        List<ResultAge> kept = jdbcTemplate.query(
+                "SELECT id, check_date FROM monitoring_results WHERE endpoint_id = ? " +
+                "ORDER BY check_date DESC, id DESC LIMIT 1 OFFSET ?",
+                (rs, rowNum) -> new ResultAge(rs.getLong("id"), rs.getTimestamp("check_date").toLocalDateTime()),
+                endpointId, rows - 1);
+        return kept.isEmpty() ? null : kept.get(0);
+    }
+
+    private long purgeRollups(long deadline) throws InterruptedException {
+        long purged = 0;
+        for (Map.Entry<RollupResolution, Duration> entry : rollupRetention.entrySet()) {
+            if (entry.getValue().isZero()) {
+                continue;
+            }
+            Timestamp cutoff = Timestamp.valueOf(LocalDateTime.now().minus(entry.getValue()));
+            while (System.nanoTime() < deadline) {
+                List<Long> expired = jdbcTemplate.queryForList(
+                        "SELECT id FROM result_rollups WHERE resolution = ? AND bucket_start < ? LIMIT ?",
+                        Long.class, entry.getKey().name(), cutoff, retention.getBatchSize());
+                if (expired.isEmpty()) {
+                    break;
+                }
+                int deleted = deleteByIds("result_rollups", expired);
+                purged += deleted;
+                purgedRollups.increment(deleted);
+                if (expired.size() < retention.getBatchSize()) {
+                    break;
+                }
+            }
+        }
+        return purged;
+    }
+
+    /**
+     * Purge payload contents that no result references, continuing after the hash the previous run
+     * stopped at. Unreferenced contents are marked first and purged only once they have stayed marked
+     * for the grace period. The payload store checks its known hashes again within that period and
+     * clears the mark of contents it takes back into use, so no writer references a purged content.
+     *
+     * @param deadline nano time when the run must stop
+     * @return true if all contents were checked
+     */
+    private boolean sweepPayloads(long deadline) throws InterruptedException {
+        while (System.nanoTime() < deadline) {
+            List<String> hashes = jdbcTemplate.queryForList(
+                    "SELECT hash FROM payload_contents WHERE hash > ? ORDER BY hash LIMIT ?",
+                    String.class, payloadCursor, retention.getBatchSize());
+            if (!hashes.isEmpty()) {
+                String placeholders = String.join(", ", Collections.nCopies(hashes.size(), "?"));
+                LocalDateTime now = LocalDateTime.now();
+                List<Object> markArgs = new ArrayList<>(hashes.size() + 1);
+                markArgs.add(Timestamp.valueOf(now));
+                markArgs.addAll(hashes);
+                jdbcTemplate.update("UPDATE payload_contents p SET p.orphaned_since = ? " +
+                        "WHERE p.hash IN (" + placeholders + ") AND p.orphaned_since IS NULL " +
+                        "AND NOT EXISTS (SELECT 1 FROM monitoring_results r WHERE r.payload_hash = p.hash)",
+                        markArgs.toArray());
+
+                List<Object> deleteArgs = new ArrayList<>(hashes);
+                deleteArgs.add(Timestamp.valueOf(now.minus(orphanGrace)));
+                // Checked for references again, a marked content may have been taken back into use
+                int deleted = jdbcTemplate.update("DELETE FROM payload_contents " +
+                        "WHERE hash IN (" + placeholders + ") AND orphaned_since < ? " +
+                        "AND NOT EXISTS (SELECT 1 FROM monitoring_results r WHERE r.payload_hash = payload_contents.hash)",
+                        deleteArgs.toArray());
+                sweepPurgedPayloads += deleted;
+                purgedPayloads.increment(deleted);
+                payloadCursor = hashes.get(hashes.size() - 1);
+                Thread.sleep(retention.getPause().toMillis());
+            }
+            if (hashes.size() < retention.getBatchSize()) {
+                log.info("Payload sweep finished: purged {} unreferenced payloads", sweepPurgedPayloads);
+                payloadCursor = "";
+                sweepPurgedPayloads = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int deleteByIds(String table, List<Long> ids) throws InterruptedException {
+        String placeholders = String.join(", ", Collections.nCopies(ids.size(), "?"));
+        int deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE id IN (" + placeholders + ")", ids.toArray());
+        log.debug("Purged {} rows from {}", deleted, table);
+        Thread.sleep(retention.getPause().toMillis());
+        return deleted;
+    }
+
+    private static final class EndpointRetention {
+        private final long id;
+        private final Integer retentionDays;
+        private final Integer retentionRows;
+
+        private EndpointRetention(long id, Integer retentionDays, Integer retentionRows) {
+            this.id = id;
+            this.retentionDays = retentionDays;
+            this.retentionRows = retentionRows;
+        }
+    }
+
+    private static final class ResultAge {
+        private final long id;
+        private final LocalDateTime checkDate;
+
+        private ResultAge(long id, LocalDateTime checkDate) {
+            this.id = id;
+            this.checkDate = checkDate;
+        }
+
+        private boolean isBefore(ResultAge other) {
+            return checkDate.isBefore(other.checkDate) || (checkDate.equals(other.checkDate) && id < other.id);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.HistoryDto;
+import com.monitoring.app.dto.RollupBucketDto;
+import com.monitoring.app.exception.BadRequestException;
+import com.monitoring.app.exception.ResourceNotFoundException;
+import com.monitoring.app.model.ResultRollup;
+import com.monitoring.app.model.RollupResolution;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.repository.ResultRollupRepository;
+import lombok.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Folds check results into per-endpoint minute, hour and day buckets as they are written, and serves
+ * check history from the coarsest buckets needed, so aggregate questions never scan raw results.
+ */
+@Service
+public class RollupService {
+
+    // The increments are bound a second time for the update rather than read back with VALUES(), which
+    // MySQL deprecates, or a row alias, which H2 used by the cluster profile does not parse
+    private static final String UPSERT_SQL =
+            "INSERT INTO result_rollups (endpoint_id, resolution, bucket_start, check_count, error_count, " +
+            "status_2xx, status_3xx, status_4xx, status_5xx, latency_count, latency_sum, latency_min, latency_max) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            "check_count = check_count + ?, " +
+            "error_count = error_count + ?, " +
+            "status_2xx = status_2xx + ?, " +
+            "status_3xx = status_3xx + ?, " +
+            "status_4xx = status_4xx + ?, " +
+            "status_5xx = status_5xx + ?, " +
+            "latency_count = latency_count + ?, " +
+            "latency_sum = latency_sum + ?, " +
+            "latency_min = LEAST(COALESCE(latency_min, ?), COALESCE(?, latency_min)), " +
+            "latency_max = GREATEST(COALESCE(latency_max, ?), COALESCE(?, latency_max))";
+
+    private final ResultRollupRepository resultRollupRepository;
+    private final MonitoredEndpointRepository monitoredEndpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxPoints;
+    private final Duration defaultRange;
+
+    public RollupService(ResultRollupRepository resultRollupRepository,
+                         MonitoredEndpointRepository monitoredEndpointRepository,
+                         JdbcTemplate jdbcTemplate, MonitoringProperties properties) {
+        this.resultRollupRepository = resultRollupRepository;
+        this.monitoredEndpointRepository = monitoredEndpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxPoints = properties.getRollup().getMaxPoints();
+        this.defaultRange = properties.getRollup().getDefaultRange();
+    }
+
+    /**
+     * Add results to the buckets of every resolution.
+     * Must be called in the transaction that saves the results, so a failed batch is not counted.
+     *
+     * @param results the results being saved
+     */
+    public void rollUp(List<PendingResult> results) {
+        Map<BucketKey, Bucket> buckets = new LinkedHashMap<>();
+        for (PendingResult result : results) {
+            for (RollupResolution resolution : RollupResolution.values()) {
+                BucketKey key = new BucketKey(result.getEndpointId(), resolution,
+                        resolution.truncate(result.getCheckDate()));
+                buckets.computeIfAbsent(key, k -> new Bucket()).add(result);
+            }
+        }
+
+        List<Object[]> batchArgs = new ArrayList<>(buckets.size());
+        buckets.forEach((key, bucket) -> batchArgs.add(new Object[]{
+                key.getEndpointId(), key.getResolution().name(), Timestamp.valueOf(key.getBucketStart()),
+                bucket.checkCount, bucket.errorCount,
+                bucket.status2xx, bucket.status3xx, bucket.status4xx, bucket.status5xx,
+                bucket.latencyCount, bucket.latencySum, bucket.latencyMin, bucket.latencyMax,
+                bucket.checkCount, bucket.errorCount,
+                bucket.status2xx, bucket.status3xx, bucket.status4xx, bucket.status5xx,
+                bucket.latencyCount, bucket.latencySum, bucket.latencyMin, bucket.latencyMin,
+                bucket.latencyMax, bucket.latencyMax
+        }));
+        jdbcTemplate.batchUpdate(UPSERT_SQL, batchArgs);
+    }
+
+    /**
+     * Get the check history of an endpoint owned by the user
+     *
+     * @param endpointId the endpoint ID
+     * @param user       the user
+     * @param from       start of the range, defaults to the configured range before {@code to}
+     * @param to         end of the range, defaults to now
+     * @param resolution the bucket size, defaults to the finest one that fits the maximum number of points
+     * @return the buckets of the range, oldest first
+     */
+    @Transactional(readOnly = true)
+    public HistoryDto getHistory(Long endpointId, User user, LocalDateTime from, LocalDateTime to,
+                                 RollupResolution resolution) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        LocalDateTime start = from != null ? from : end.minus(defaultRange);
+        if (!start.isBefore(end)) {
+            throw new BadRequestException("History range must start before it ends");
+        }
+        RollupResolution effectiveResolution = resolution != null ? resolution : resolutionFor(start, end);
+
+        monitoredEndpointRepository.findOwnerIdById(endpointId)
+                .filter(ownerId -> ownerId.equals(user.getId()))
+                .orElseThrow(() -> new ResourceNotFoundException("Endpoint not found with id: " + endpointId));
+
+        List<RollupBucketDto> buckets = resultRollupRepository
+                .findBuckets(endpointId, effectiveResolution, effectiveResolution.truncate(start), end).stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList());
+        return new HistoryDto(endpointId, effectiveResolution, start, end, buckets);
+    }
+
+    private RollupResolution resolutionFor(LocalDateTime from, LocalDateTime to) {
+        Duration range = Duration.between(from, to);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            if (range.dividedBy(resolution.getDuration()) < maxPoints) {
+                return resolution;
+            }
+        }
+        return RollupResolution.DAY;
+    }
+
+    /**
+     * Convert entity to DTO
+     *
+     * @param rollup the rollup entity
+     * @return the bucket DTO
+     */
+    private RollupBucketDto convertToDto(ResultRollup rollup) {
+        Double latencyMean = rollup.getLatencyCount() > 0
+                ? (double) rollup.getLatencySum() / rollup.getLatencyCount()
+                : null;
+        return new RollupBucketDto(
+                rollup.getBucketStart(),
+                rollup.getCheckCount(),
+                rollup.getErrorCount(),
+                rollup.getStatus2xx(),
+                rollup.getStatus3xx(),
+                rollup.getStatus4xx(),
+                rollup.getStatus5xx(),
+                latencyMean,
+                rollup.getLatencyMin(),
+                rollup.getLatencyMax()
+        );
+    }
+
+    @Value
+    private static class BucketKey {
+        Long endpointId;
+        RollupResolution resolution;
+        LocalDateTime bucketStart;
+    }
+
+    private static final class Bucket {
+        private long checkCount;
+        private long errorCount;
+        private long status2xx;
+        private long status3xx;
+        private long status4xx;
+        private long status5xx;
+        private long latencyCount;
+        private long latencySum;
+        private Long latencyMin;
+        private Long latencyMax;
+
+        private void add(PendingResult result) {
+            checkCount++;
+            Integer statusCode = result.getStatusCode();
+            if (statusCode == null || statusCode >= 400) {
+                errorCount++;
+            }
+            if (statusCode != null) {
+                switch (statusCode / 100) {
+                    case 2: status2xx++; break;
+                    case 3: status3xx++; break;
+                    case 4: status4xx++; break;
+                    case 5: status5xx++; break;
+                    default: break;
+                }
+            }
+
+            Long responseTime = result.getResponseTime();
+            if (responseTime != null) {
+                latencyCount++;
+                latencySum += responseTime;
+                latencyMin = latencyMin == null ? responseTime : Math.min(latencyMin, responseTime);
+                latencyMax = latencyMax == null ? responseTime : Math.max(latencyMax, responseTime);
+            }
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package com.monitoring.app.service;
 
+import com.monitoring.app.exception.ResourceNotFoundException;
 import com.monitoring.app.model.User;
 import com.monitoring.app.repository.UserRepository;
+import com.monitoring.app.security.UserChangedEvent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
 import java.util.Arrays;
@@ -15,6 +19,7 @@ import java.util.UUID;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Finds a user by their access token
@@ -26,6 +31,22 @@ public class UserService {
         return userRepository.findByAccessToken(accessToken);
     }
 
+    /**
+     * Replace a user's access token with a newly generated one
+     *
+     * @param userId the user ID
+     * @return the new access token
+     */
+    @Transactional
+    public String regenerateAccessToken(Long userId) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new ResourceNotFoundException("User not found with id: " + userId));
+        user.setAccessToken(UUID.randomUUID().toString());
+        userRepository.save(user);
+        eventPublisher.publishEvent(new UserChangedEvent(userId, user.getAccessToken()));
+        return user.getAccessToken();
+    }
+
     /**
      * Initialize predefined users
      */
@@ -1,15 +1,28 @@
 package com.monitoring.app.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monitoring.app.dto.EndpointDeletionDto;
+import com.monitoring.app.dto.HistoryDto;
+import com.monitoring.app.dto.LatencyStatsDto;
 import com.monitoring.app.dto.MonitoredEndpointDto;
+import com.monitoring.app.dto.ResultPageDto;
+import com.monitoring.app.model.RollupResolution;
 import com.monitoring.app.model.User;
+import com.monitoring.app.security.AccessTokenCache;
+import com.monitoring.app.security.RateLimitFilter;
+import com.monitoring.app.service.LatencyTracker;
 import com.monitoring.app.service.MonitoredEndpointService;
 import com.monitoring.app.service.MonitoringResultService;
+import com.monitoring.app.service.RecentResultsCache;
+import com.monitoring.app.service.RollupService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
@@ -19,12 +32,16 @@ import java.util.Collections;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(MonitoredEndpointController.class)
+// The user is set as a request attribute below, as the authentication filter would
+@AutoConfigureMockMvc(addFilters = false)
+@Import(SimpleMeterRegistry.class)
 public class MonitoredEndpointControllerTest {
 
     @Autowired
@@ -33,12 +50,27 @@ public class MonitoredEndpointControllerTest {
     @Autowired
     private ObjectMapper objectMapper;
 
+    @MockBean
+    private AccessTokenCache accessTokenCache;
+
+    @MockBean
+    private RateLimitFilter rateLimitFilter;
+
     @MockBean
     private MonitoredEndpointService monitoredEndpointService;
 
     @MockBean
     private MonitoringResultService monitoringResultService;
 
+    @MockBean
+    private RecentResultsCache recentResultsCache;
+
+    @MockBean
+    private LatencyTracker latencyTracker;
+
+    @MockBean
+    private RollupService rollupService;
+
     private User testUser;
     private MonitoredEndpointDto testEndpoint;
 
@@ -112,20 +144,77 @@ public class MonitoredEndpointControllerTest {
 
     @Test
     public void testDeleteEndpoint() throws Exception {
+        when(monitoredEndpointService.deleteEndpoint(eq(1L), any(User.class)))
+                .thenReturn(new EndpointDeletionDto(1L, false, 0L, LocalDateTime.now(), null));
+
         mockMvc.perform(delete("/api/endpoints/1")
                         .requestAttr("user", testUser))
-                .andExpect(status().isNoContent());
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.completed").value(false));
+    }
+
+    @Test
+    public void testGetDeletion() throws Exception {
+        when(monitoredEndpointService.getDeletion(eq(1L), any(User.class)))
+                .thenReturn(new EndpointDeletionDto(1L, true, 42L, LocalDateTime.now(), LocalDateTime.now()));
+
+        mockMvc.perform(get("/api/endpoints/1/deletion")
+                        .requestAttr("user", testUser))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.completed").value(true))
+                .andExpect(jsonPath("$.resultsDeleted").value(42));
     }
 
     @Test
     public void testGetMonitoringResults() throws Exception {
-        when(monitoredEndpointService.getEndpointByIdForUser(eq(1L), any(User.class)))
-                .thenReturn(testEndpoint);
-        when(monitoringResultService.getLast10ResultsForEndpoint(any()))
+        when(recentResultsCache.getRecentResults(eq(1L), any(User.class)))
                 .thenReturn(Collections.emptyList());
 
         mockMvc.perform(get("/api/endpoints/1/results")
                         .requestAttr("user", testUser))
                 .andExpect(status().isOk());
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testGetMonitoringResultPage() throws Exception {
+        when(monitoringResultService.getResultPage(eq(1L), any(User.class), isNull(), isNull(),
+                eq("cursor"), eq(50), eq("5xx")))
+                .thenReturn(new ResultPageDto(Collections.emptyList(), "next"));
+
+        mockMvc.perform(get("/api/endpoints/1/results")
+                        .param("after", "cursor")
+                        .param("limit", "50")
+                        .param("status", "5xx")
+                        .requestAttr("user", testUser))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    public void testGetLatency() throws Exception {
+        when(latencyTracker.getStats(eq(1L), any(User.class), eq("15m")))
+                .thenReturn(new LatencyStatsDto(1L, "15m", 3L, 10L, 20.0, 20L, 30L, 30L, 30L));
+
+        mockMvc.perform(get("/api/endpoints/1/latency")
+                        .param("window", "15m")
+                        .requestAttr("user", testUser))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.p50").value(20))
+                .andExpect(jsonPath("$.max").value(30));
+    }
+
+    @Test
+    public void testGetHistory() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime to = from.plusDays(90);
+        when(rollupService.getHistory(eq(1L), any(User.class), eq(from), eq(to), isNull()))
+                .thenReturn(new HistoryDto(1L, RollupResolution.DAY, from, to, Collections.emptyList()));
+
+        mockMvc.perform(get("/api/endpoints/1/history")
+                        .param("from", "2024-01-01T00:00:00")
+                        .param("to", "2024-03-31T00:00:00")
+                        .requestAttr("user", testUser))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resolution").value("DAY"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.monitoring.app.probe;
+
+import com.monitoring.app.util.HashUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BoundedBodyReaderTest {
+
+    // Spans several reads of the internal buffer
+    private static final byte[] BODY = body(20000);
+
+    @Test
+    public void testCaptureIsTruncatedAndTheWholeBodyHashed() throws IOException {
+        CountingStream stream = new CountingStream(BODY);
+        BoundedBodyReader.CapturedBody body = BoundedBodyReader.read(stream, 100, true);
+
+        assertArrayEquals(Arrays.copyOf(BODY, 100), body.captured);
+        assertTrue(body.isComplete());
+        assertEquals(BODY.length, body.length);
+        assertEquals(sha256(BODY), body.hash);
+        assertEquals(BODY.length, stream.consumed());
+    }
+
+    @Test
+    public void testBodyWithinTheLimitIsCapturedWhole() throws IOException {
+        BoundedBodyReader.CapturedBody body = BoundedBodyReader.read(new ByteArrayInputStream(BODY), 65536, false);
+
+        assertArrayEquals(BODY, body.captured);
+        assertEquals(BODY.length, body.length);
+        assertEquals(sha256(BODY), body.hash);
+    }
+
+    @Test
+    public void testReadingStopsAtTheLimitWithoutTheWholeBody() throws IOException {
+        CountingStream stream = new CountingStream(BODY);
+        BoundedBodyReader.CapturedBody body = BoundedBodyReader.read(stream, 100, false);
+
+        assertArrayEquals(Arrays.copyOf(BODY, 100), body.captured);
+        assertFalse(body.isComplete());
+        assertNull(body.length);
+        assertNull(body.hash);
+        assertEquals(100, stream.consumed());
+    }
+
+    @Test
+    public void testNoneModeReadsNothingWithoutTheWholeBody() throws IOException {
+        CountingStream stream = new CountingStream(BODY);
+        BoundedBodyReader.CapturedBody body = BoundedBodyReader.read(stream, 0, false);
+
+        assertEquals(0, body.captured.length);
+        assertFalse(body.isComplete());
+        assertEquals(0, stream.consumed());
+
+        // With the whole body, nothing is kept but the body is still counted and hashed
+        body = BoundedBodyReader.read(new ByteArrayInputStream(BODY), 0, true);
+        assertEquals(0, body.captured.length);
+        assertEquals(BODY.length, body.length);
+        assertEquals(sha256(BODY), body.hash);
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        for (int i = 0; i < length; i++) {
+            body[i] = (byte) ('a' + i % 26);
+        }
+        return body;
+    }
+
+    private static String sha256(byte[] bytes) {
+        return HashUtils.toHex(HashUtils.newSha256().digest(bytes));
+    }
+
+    private static final class CountingStream extends ByteArrayInputStream {
+        private final int length;
+
+        private CountingStream(byte[] bytes) {
+            super(bytes);
+            this.length = bytes.length;
+        }
+
+        private int consumed() {
+            return length - available();
+        }
+    }
+}
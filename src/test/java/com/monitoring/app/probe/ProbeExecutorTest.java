@@ -0,0 +1,217 @@
+package com.monitoring.app.probe;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.config.ProbeHttpClientConfig;
+import com.monitoring.app.model.CaptureMode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProbeExecutorTest {
+
+    private HttpServer server;
+    private CountDownLatch release;
+    private CloseableHttpClient httpClient;
+    private MonitoringProperties properties;
+    private BlockingQueue<ProbeResult> results;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        release = new CountDownLatch(1);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/ok", exchange -> respond(exchange, 200));
+        server.createContext("/held", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 202);
+        });
+        server.createContext("/trickle", exchange -> {
+            // Headers right away, then a byte at a time, each within the read timeout
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 50; i++) {
+                    out.write('x');
+                    out.flush();
+                    Thread.sleep(100);
+                }
+            } catch (IOException | InterruptedException e) {
+                // The client gave up
+            }
+        });
+        server.start();
+
+        properties = new MonitoringProperties();
+        properties.getProbe().setConcurrency(1);
+        properties.getProbe().setReadTimeout(Duration.ofSeconds(1));
+        properties.getProbe().setTotalTimeout(Duration.ofMillis(500));
+        results = new LinkedBlockingQueue<>();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        release.countDown();
+        if (httpClient != null) {
+            httpClient.close();
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testProbeThatThrowsStillCallsBackWithAFailure() throws InterruptedException {
+        RestTemplate throwing = new RestTemplate() {
+            @Override
+            public <T> T execute(String url, HttpMethod method, RequestCallback requestCallback,
+                                 ResponseExtractor<T> responseExtractor, Object... uriVariables) {
+                throw new IllegalStateException("broken client");
+            }
+        };
+        ProbeExecutor probeExecutor = new ProbeExecutor(throwing, properties);
+
+        assertTrue(probeExecutor.trySubmit(request("/ok"), results::add));
+        ProbeResult result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(500, result.getStatusCode());
+        assertTrue(result.getPayload().contains("broken client"));
+        waitForFreePermit(probeExecutor);
+        probeExecutor.shutdown();
+    }
+
+    @Test
+    public void testProbesBeyondTheConcurrencyAreRejected() throws InterruptedException {
+        ProbeExecutor probeExecutor = new ProbeExecutor(restTemplate(), properties);
+
+        assertTrue(probeExecutor.trySubmit(request("/held"), results::add));
+        assertEquals(0, probeExecutor.availablePermits());
+        assertFalse(probeExecutor.trySubmit(request("/ok"), results::add));
+
+        // The slot is free again once the running probe is done
+        release.countDown();
+        assertEquals(202, results.poll(5, TimeUnit.SECONDS).getStatusCode());
+        waitForFreePermit(probeExecutor);
+        assertTrue(probeExecutor.trySubmit(request("/ok"), results::add));
+        assertEquals(200, results.poll(5, TimeUnit.SECONDS).getStatusCode());
+        probeExecutor.shutdown();
+    }
+
+    @Test
+    public void testTricklingResponseFailsAtTheTotalTimeout() throws InterruptedException {
+        ProbeExecutor probeExecutor = new ProbeExecutor(restTemplate(), properties);
+
+        assertTrue(probeExecutor.trySubmit(request("/trickle"), results::add));
+        ProbeResult result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        assertEquals(500, result.getStatusCode());
+        // Aborted after the total timeout, long before the five seconds the body would take
+        assertTrue(result.getResponseTime() >= 500 && result.getResponseTime() < 2000, result.getResponseTime() + " ms");
+        probeExecutor.shutdown();
+    }
+
+    @Test
+    public void testBodyIsNotReadWithoutFullHashInNoneMode() throws InterruptedException {
+        properties.getProbe().setFullBodyHash(false);
+        properties.getProbe().setTotalTimeout(Duration.ofSeconds(30));
+        ProbeExecutor probeExecutor = new ProbeExecutor(restTemplate(), properties);
+
+        long start = System.nanoTime();
+        assertTrue(probeExecutor.trySubmit(new ProbeRequest(url("/trickle"), CaptureMode.NONE, null), results::add));
+        ProbeResult result = results.poll(5, TimeUnit.SECONDS);
+        assertNotNull(result);
+        // Done with the headers, and the response closed without draining the five second body
+        assertEquals(200, result.getStatusCode());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        assertNull(result.getPayload());
+        assertNull(result.getContentLength());
+        assertNull(result.getContentHash());
+
+        // The dropped connection is not handed out again
+        waitForFreePermit(probeExecutor);
+        assertTrue(probeExecutor.trySubmit(request("/ok"), results::add));
+        assertEquals(200, results.poll(5, TimeUnit.SECONDS).getStatusCode());
+        probeExecutor.shutdown();
+    }
+
+    @Test
+    public void testShutdownWaitsForRunningProbesAndRejectsNewOnes() throws InterruptedException {
+        ProbeExecutor probeExecutor = new ProbeExecutor(restTemplate(), properties);
+        assertTrue(probeExecutor.trySubmit(request("/held"), results::add));
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            release.countDown();
+        });
+        releaser.start();
+        probeExecutor.shutdown();
+
+        // The running probe was completed before shutdown returned
+        assertEquals(1, results.size());
+        assertEquals(1, probeExecutor.availablePermits());
+        assertFalse(probeExecutor.trySubmit(request("/ok"), results::add));
+        assertEquals(1, probeExecutor.availablePermits());
+        releaser.join();
+    }
+
+    private static void respond(HttpExchange exchange, int status) throws IOException {
+        byte[] body = "done".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private RestTemplate restTemplate() {
+        ProbeHttpClientConfig config = new ProbeHttpClientConfig();
+        httpClient = config.probeHttpClient(config.probeConnectionManager(properties, new SimpleMeterRegistry()), properties);
+        return config.restTemplate(new RestTemplateBuilder(), config.probeRequestFactory(httpClient, properties));
+    }
+
+    private ProbeRequest request(String path) {
+        return new ProbeRequest(url(path), null, null);
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private static void waitForFreePermit(ProbeExecutor probeExecutor) throws InterruptedException {
+        // The permit is released right after the callback returns
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (probeExecutor.availablePermits() == 0) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.model.CaptureMode;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class EndpointChangeFeedTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private EndpointScheduler endpointScheduler;
+    private EndpointChangeFeed endpointChangeFeed;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:changes;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE monitored_endpoints (id BIGINT PRIMARY KEY, owner_id BIGINT NOT NULL, " +
+                "url VARCHAR(255) NOT NULL, monitoring_interval INT NOT NULL, capture_mode VARCHAR(16), " +
+                "capture_limit INT, last_check_date TIMESTAMP, deleted BOOLEAN NOT NULL, modified_at TIMESTAMP)");
+        endpointScheduler = mock(EndpointScheduler.class);
+        endpointChangeFeed = new EndpointChangeFeed(endpointScheduler, jdbcTemplate);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE monitored_endpoints");
+    }
+
+    @Test
+    public void testChangesAreAppliedOnce() {
+        LocalDateTime lastCheck = LocalDateTime.of(2024, 3, 10, 12, 0);
+        insert(1L, "https://a.com", LocalDateTime.now());
+        jdbcTemplate.update("UPDATE monitored_endpoints SET capture_mode = 'HEADERS', capture_limit = 100, " +
+                "last_check_date = ? WHERE id = 1", Timestamp.valueOf(lastCheck));
+
+        endpointChangeFeed.poll();
+
+        ArgumentCaptor<ScheduledEndpoint> scheduled = ArgumentCaptor.forClass(ScheduledEndpoint.class);
+        verify(endpointScheduler).schedule(scheduled.capture());
+        ScheduledEndpoint endpoint = scheduled.getValue();
+        assertEquals(1L, endpoint.getId());
+        assertEquals(7L, endpoint.getOwnerId());
+        assertEquals("https://a.com", endpoint.getUrl());
+        assertEquals(60, endpoint.getMonitoringInterval());
+        assertEquals(CaptureMode.HEADERS, endpoint.getCaptureMode());
+        assertEquals(100, endpoint.getCaptureLimit());
+        assertEquals(lastCheck, endpoint.getLastCheckDate());
+
+        // Read again within the overlap window, but not applied again
+        endpointChangeFeed.poll();
+        verify(endpointScheduler, times(1)).schedule(any());
+
+        // A later change of the same endpoint is
+        modify(1L, LocalDateTime.now().plusSeconds(1));
+        endpointChangeFeed.poll();
+        verify(endpointScheduler, times(2)).schedule(any());
+    }
+
+    @Test
+    public void testLateCommitWithinTheOverlapIsNotMissed() {
+        LocalDateTime now = LocalDateTime.now();
+        insert(1L, "https://a.com", now);
+        endpointChangeFeed.poll();
+
+        // Committed after the poll, stamped before the newest change already seen
+        insert(2L, "https://late.com", now.minusSeconds(5));
+        clearInvocations(endpointScheduler);
+        endpointChangeFeed.poll();
+
+        ArgumentCaptor<ScheduledEndpoint> scheduled = ArgumentCaptor.forClass(ScheduledEndpoint.class);
+        verify(endpointScheduler).schedule(scheduled.capture());
+        assertEquals(2L, scheduled.getValue().getId());
+        assertNull(scheduled.getValue().getCaptureMode());
+    }
+
+    @Test
+    public void testDeletedEndpointIsUnscheduled() {
+        insert(1L, "https://a.com", LocalDateTime.now());
+        endpointChangeFeed.poll();
+
+        jdbcTemplate.update("UPDATE monitored_endpoints SET deleted = true, modified_at = ? WHERE id = 1",
+                Timestamp.valueOf(LocalDateTime.now().plusSeconds(1)));
+        endpointChangeFeed.poll();
+
+        verify(endpointScheduler).unschedule(1L);
+        verify(endpointScheduler, times(1)).schedule(any());
+    }
+
+    @Test
+    public void testChangesBeforeTheFeedStartedAreIgnored() {
+        insert(1L, "https://old.com", LocalDateTime.now().minusMinutes(5));
+
+        endpointChangeFeed.poll();
+
+        verify(endpointScheduler, never()).schedule(any());
+    }
+
+    private void insert(Long id, String url, LocalDateTime modifiedAt) {
+        jdbcTemplate.update("INSERT INTO monitored_endpoints (id, owner_id, url, monitoring_interval, deleted, " +
+                "modified_at) VALUES (?, 7, ?, 60, false, ?)", id, url, Timestamp.valueOf(modifiedAt));
+    }
+
+    private void modify(Long id, LocalDateTime modifiedAt) {
+        jdbcTemplate.update("UPDATE monitored_endpoints SET monitoring_interval = 30, modified_at = ? WHERE id = ?",
+                Timestamp.valueOf(modifiedAt), id);
+    }
+}
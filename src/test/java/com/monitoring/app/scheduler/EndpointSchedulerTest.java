@@ -0,0 +1,297 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.CaptureMode;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class EndpointSchedulerTest {
+
+    private EndpointScheduler scheduler;
+    private Clock clock;
+    private LocalDateTime now;
+
+    @BeforeEach
+    public void setup() {
+        // The scheduler reads the same instant, so due times are exact
+        clock = Clock.fixed(Instant.now(), ZoneId.systemDefault());
+        now = LocalDateTime.now(clock);
+        MonitoredEndpointRepository repository = mock(MonitoredEndpointRepository.class);
+        when(repository.findAllSchedules()).thenReturn(Arrays.asList(
+                new ScheduledEndpoint(1L, 1L, "https://never-checked.com", 60, null, null, null),
+                new ScheduledEndpoint(2L, 1L, "https://due.com", 10, null, null, now.minusSeconds(30)),
+                new ScheduledEndpoint(3L, 1L, "https://not-due.com", 60, null, null, now.minusSeconds(5))
+        ));
+        MonitoringProperties properties = new MonitoringProperties();
+        // Due times exactly at last check plus interval, phase spreading is tested separately
+        properties.getScheduler().setPhaseSpread(false);
+        scheduler = new EndpointScheduler(repository, properties, clock);
+        scheduler.init();
+    }
+
+    @Test
+    public void testPollDueReturnsOnlyDueEndpoints() {
+        List<ScheduledEndpoint> due = scheduler.pollDue(now, Integer.MAX_VALUE);
+
+        assertEquals(2, due.size());
+        assertTrue(due.stream().noneMatch(endpoint -> endpoint.getId() == 3L));
+    }
+
+    @Test
+    public void testPolledEndpointIsNotReturnedUntilCompleted() {
+        List<ScheduledEndpoint> due = scheduler.pollDue(now, Integer.MAX_VALUE);
+        assertTrue(scheduler.pollDue(now, Integer.MAX_VALUE).isEmpty());
+
+        due.forEach(endpoint -> scheduler.complete(endpoint, now));
+
+        assertTrue(scheduler.pollDue(now.plusSeconds(9), Integer.MAX_VALUE).isEmpty());
+        assertEquals(1, scheduler.pollDue(now.plusSeconds(10), Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testUnscheduledEndpointIsNeverPolled() {
+        scheduler.unschedule(1L);
+        scheduler.unschedule(2L);
+
+        assertTrue(scheduler.pollDue(now.plusDays(1), Integer.MAX_VALUE).stream()
+                .allMatch(endpoint -> endpoint.getId() == 3L));
+    }
+
+    @Test
+    public void testRescheduleAppliesNewInterval() {
+        scheduler.schedule(new ScheduledEndpoint(3L, 1L, "https://not-due.com", 5, null, null, now.minusSeconds(5)));
+
+        List<ScheduledEndpoint> due = scheduler.pollDue(now, Integer.MAX_VALUE);
+
+        assertEquals(3, due.size());
+    }
+
+    @Test
+    public void testPollDueRespectsLimit() {
+        assertEquals(1, scheduler.pollDue(now, 1).size());
+        assertEquals(1, scheduler.pollDue(now, 1).size());
+        assertTrue(scheduler.pollDue(now, 1).isEmpty());
+    }
+
+    @Test
+    public void testLagTracksEndpointsLeftDue() {
+        LocalDateTime later = now.plusSeconds(5);
+
+        assertEquals(1, scheduler.pollDue(later, 1).size());
+        assertTrue(scheduler.lagMillis() >= 4000);
+
+        scheduler.pollDue(later, Integer.MAX_VALUE);
+        assertEquals(0, scheduler.lagMillis());
+    }
+
+    @Test
+    public void testFailingEndpointBacksOffUntilItRecovers() {
+        List<ScheduledEndpoint> due = scheduler.pollDue(now, Integer.MAX_VALUE);
+        ScheduledEndpoint failing = due.stream().filter(endpoint -> endpoint.getId() == 2L).findFirst().orElseThrow();
+        due.stream().filter(endpoint -> endpoint != failing).forEach(endpoint -> scheduler.complete(endpoint, now));
+
+        LocalDateTime checkDate = now;
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i > 0, scheduler.recordOutcome(failing, "500:Connection refused"));
+            scheduler.complete(failing, checkDate);
+            checkDate = checkDate.plusSeconds(10);
+            if (i < 2) {
+                assertEquals(Collections.singletonList(failing), scheduler.pollDue(checkDate, Integer.MAX_VALUE));
+            }
+        }
+        assertEquals(CircuitState.OPEN, failing.getCircuitState());
+
+        // The third failure at +20 s opens the circuit and doubles the 10 s interval
+        assertTrue(scheduler.pollDue(now.plusSeconds(39), Integer.MAX_VALUE).isEmpty());
+        assertEquals(Collections.singletonList(failing), scheduler.pollDue(now.plusSeconds(40), Integer.MAX_VALUE));
+        assertEquals(CircuitState.HALF_OPEN, failing.getCircuitState());
+
+        assertFalse(scheduler.recordOutcome(failing, null));
+        scheduler.complete(failing, now.plusSeconds(40));
+        assertEquals(CircuitState.CLOSED, failing.getCircuitState());
+        assertEquals(Collections.singletonList(failing), scheduler.pollDue(now.plusSeconds(50), Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testPhaseSpreadFlattensBurstsAndKeepsPhase() {
+        List<ScheduledEndpoint> created = new ArrayList<>();
+        List<ScheduledEndpoint> overdue = new ArrayList<>();
+        for (long id = 1; id <= 100; id++) {
+            created.add(new ScheduledEndpoint(id, 1L, "https://created.com", 60, null, null, null));
+            overdue.add(new ScheduledEndpoint(id + 100, 1L, "https://overdue.com", 300, null, null, now.minusHours(1)));
+        }
+        MonitoredEndpointRepository repository = mock(MonitoredEndpointRepository.class);
+        when(repository.findAllSchedules()).thenReturn(overdue);
+        MonitoringProperties properties = new MonitoringProperties();
+        // Phases derived from the endpoint IDs
+        properties.getCoalescing().setEnabled(false);
+        EndpointScheduler spreadScheduler = new EndpointScheduler(repository, properties, clock);
+        spreadScheduler.init();
+        created.forEach(spreadScheduler::schedule);
+
+        // Neither the endpoints created together nor the ones overdue after downtime fire at once
+        List<ScheduledEndpoint> firstSecond = spreadScheduler.pollDue(now.plusSeconds(1), Integer.MAX_VALUE);
+        assertTrue(firstSecond.size() < 20);
+        // The overdue ones are caught up within the one minute window, the new ones within their interval
+        List<ScheduledEndpoint> firstMinute = spreadScheduler.pollDue(now.plusSeconds(60), Integer.MAX_VALUE);
+        assertEquals(200, firstSecond.size() + firstMinute.size());
+
+        // A check completing late is next due at its phase slot, not at completion plus interval
+        ScheduledEndpoint endpoint = created.get(0);
+        LocalDateTime checkDate = now.plusSeconds(64).plusNanos(TimeUnit.MILLISECONDS.toNanos(321));
+        spreadScheduler.complete(endpoint, checkDate);
+        long phase = EndpointScheduler.phaseHash(endpoint.getId()) % 60000;
+        long from = EndpointScheduler.toEpochMilli(checkDate) + 30001;
+        long dueAt = from + Math.floorMod(phase - from, 60000L);
+        LocalDateTime dueDate = checkDate.plus(Duration.ofMillis(dueAt - EndpointScheduler.toEpochMilli(checkDate)));
+        assertTrue(spreadScheduler.pollDue(dueDate.minusNanos(TimeUnit.MILLISECONDS.toNanos(1)), Integer.MAX_VALUE).isEmpty());
+        assertEquals(Collections.singletonList(endpoint), spreadScheduler.pollDue(dueDate, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testNewEndpointIsFirstDueAtItsPhaseSlot() {
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getCoalescing().setEnabled(false);
+        EndpointScheduler spreadScheduler = new EndpointScheduler(mock(MonitoredEndpointRepository.class), properties, clock);
+        ScheduledEndpoint endpoint = new ScheduledEndpoint(7L, 1L, "https://new.com", 60, null, null, null);
+        spreadScheduler.schedule(endpoint);
+
+        long nowMillis = EndpointScheduler.toEpochMilli(now);
+        long untilSlot = Math.floorMod(EndpointScheduler.phaseHash(7L) % 60000 - nowMillis, 60000L);
+        LocalDateTime slot = now.plus(Duration.ofMillis(untilSlot));
+        if (untilSlot > 0) {
+            assertTrue(spreadScheduler.pollDue(slot.minusNanos(TimeUnit.MILLISECONDS.toNanos(1)), Integer.MAX_VALUE).isEmpty());
+        }
+        assertEquals(Collections.singletonList(endpoint), spreadScheduler.pollDue(slot, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testEndpointsSharingProbeArePolledEarly() {
+        MonitoredEndpointRepository repository = mock(MonitoredEndpointRepository.class);
+        when(repository.findAllSchedules()).thenReturn(Arrays.asList(
+                new ScheduledEndpoint(1L, 1L, "https://status.example.com", 60, null, null, now.minusSeconds(60)),
+                new ScheduledEndpoint(2L, 2L, "HTTPS://Status.Example.com:443/", 60, null, null, now.minusSeconds(57)),
+                new ScheduledEndpoint(3L, 3L, "https://status.example.com/", 60, null, null, now.minusSeconds(30)),
+                new ScheduledEndpoint(4L, 4L, "https://status.example.com/", 60, CaptureMode.NONE, null, now.minusSeconds(58))
+        ));
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getScheduler().setPhaseSpread(false);
+        EndpointScheduler coalescingScheduler = new EndpointScheduler(repository, properties, clock);
+        coalescingScheduler.init();
+
+        List<ScheduledEndpoint> due = coalescingScheduler.pollDue(now, Integer.MAX_VALUE);
+        assertEquals(1, due.size());
+
+        // Only the same URL with the same capture settings due within the window is taken early
+        List<ScheduledEndpoint> sharing = coalescingScheduler.pollSharing(due, now.plusSeconds(5));
+        assertEquals(1, sharing.size());
+        assertEquals(2L, sharing.get(0).getId());
+        assertEquals(due.get(0).getProbeRequest(), sharing.get(0).getProbeRequest());
+        assertTrue(coalescingScheduler.pollSharing(due, now.plusSeconds(5)).isEmpty());
+    }
+
+    @Test
+    public void testFairDispatchSharesCapacityAcrossOwnersWithinQuotas() {
+        List<ScheduledEndpoint> schedules = new ArrayList<>();
+        for (long id = 1; id <= 10; id++) {
+            schedules.add(new ScheduledEndpoint(id, 1L, "https://busy.com/" + id, 60, null, null, now.minusSeconds(120)));
+        }
+        schedules.add(new ScheduledEndpoint(11L, 2L, "https://quiet.com/1", 60, null, null, now.minusSeconds(61)));
+        schedules.add(new ScheduledEndpoint(12L, 2L, "https://quiet.com/2", 60, null, null, now.minusSeconds(61)));
+        MonitoredEndpointRepository repository = mock(MonitoredEndpointRepository.class);
+        when(repository.findAllSchedules()).thenReturn(schedules);
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getScheduler().setPhaseSpread(false);
+        MonitoringProperties.Tenant quota = new MonitoringProperties.Tenant();
+        quota.setMaxConcurrency(3);
+        properties.getFairness().getTenants().put(1L, quota);
+        EndpointScheduler fairScheduler = new EndpointScheduler(repository, properties, clock);
+        fairScheduler.init();
+
+        // The quiet owner is not queued behind the busy owner's earlier backlog
+        List<ScheduledEndpoint> due = fairScheduler.pollDue(now, 4);
+        assertEquals(2, due.stream().filter(endpoint -> endpoint.getOwnerId() == 2L).count());
+
+        // The busy owner gets no more than three checks running at once
+        assertEquals(1, fairScheduler.pollDue(now, Integer.MAX_VALUE).size());
+        assertTrue(fairScheduler.pollDue(now, Integer.MAX_VALUE).isEmpty());
+        fairScheduler.complete(due.get(0), now);
+        assertEquals(1, fairScheduler.pollDue(now, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    public void testRevokedPartitionIsNotPolledAndTracksRunningChecks() {
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getCluster().setEnabled(true);
+        properties.getCluster().setPartitions(2);
+        properties.getScheduler().setPhaseSpread(false);
+        MonitoredEndpointRepository repository = mock(MonitoredEndpointRepository.class);
+        when(repository.findSchedulesInPartitions(eq(2), any())).thenReturn(Arrays.asList(
+                new ScheduledEndpoint(1L, 1L, "https://odd.com", 60, null, null, null),
+                new ScheduledEndpoint(2L, 1L, "https://even.com", 60, null, null, null)
+        ));
+        EndpointScheduler clusteredScheduler = new EndpointScheduler(repository, properties, clock);
+        clusteredScheduler.init();
+        clusteredScheduler.assignPartitions(Arrays.asList(0, 1));
+        clusteredScheduler.extendLeases(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+
+        List<ScheduledEndpoint> due = clusteredScheduler.pollDue(now, Integer.MAX_VALUE);
+        assertEquals(2, due.size());
+
+        clusteredScheduler.revokePartition(1);
+        assertTrue(clusteredScheduler.hasInFlight(1));
+        assertFalse(clusteredScheduler.hasInFlight(0));
+
+        due.forEach(endpoint -> clusteredScheduler.complete(endpoint, now));
+        assertFalse(clusteredScheduler.hasInFlight(1));
+        List<ScheduledEndpoint> later = clusteredScheduler.pollDue(now.plusDays(1), Integer.MAX_VALUE);
+        assertEquals(1, later.size());
+        assertEquals(2L, later.get(0).getId());
+    }
+
+    @Test
+    public void testClusterJobsRunOnTheHolderOfPartitionZero() {
+        assertTrue(scheduler.runsClusterJobs());
+
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getCluster().setEnabled(true);
+        properties.getCluster().setPartitions(2);
+        EndpointScheduler clusteredScheduler = new EndpointScheduler(mock(MonitoredEndpointRepository.class),
+                properties, clock);
+        clusteredScheduler.init();
+        assertFalse(clusteredScheduler.runsClusterJobs());
+
+        clusteredScheduler.assignPartitions(Collections.singletonList(1));
+        clusteredScheduler.extendLeases(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        assertFalse(clusteredScheduler.runsClusterJobs());
+        clusteredScheduler.assignPartitions(Collections.singletonList(0));
+        assertTrue(clusteredScheduler.runsClusterJobs());
+
+        // Not once the leases may have expired, nor after handing the partition over
+        clusteredScheduler.extendLeases(System.nanoTime() - 1);
+        assertFalse(clusteredScheduler.runsClusterJobs());
+        clusteredScheduler.extendLeases(System.nanoTime() + TimeUnit.MINUTES.toNanos(1));
+        clusteredScheduler.revokePartition(0);
+        assertFalse(clusteredScheduler.runsClusterJobs());
+    }
+}
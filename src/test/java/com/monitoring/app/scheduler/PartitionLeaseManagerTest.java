@@ -0,0 +1,170 @@
+package com.monitoring.app.scheduler;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.service.MonitoringResultWriter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PartitionLeaseManagerTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private MonitoringProperties properties;
+    private EndpointScheduler schedulerA;
+    private EndpointScheduler schedulerB;
+    private MonitoringResultWriter writerA;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:leases;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE partition_leases (partition_id INT PRIMARY KEY, " +
+                "owner_node VARCHAR(64), lease_until TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE cluster_nodes (node_id VARCHAR(64) PRIMARY KEY, " +
+                "started_at TIMESTAMP NOT NULL, heartbeat_at TIMESTAMP NOT NULL)");
+
+        properties = new MonitoringProperties();
+        properties.getCluster().setEnabled(true);
+        properties.getCluster().setPartitions(4);
+        schedulerA = mock(EndpointScheduler.class);
+        schedulerB = mock(EndpointScheduler.class);
+        writerA = mock(MonitoringResultWriter.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS partition_leases, cluster_nodes");
+    }
+
+    @Test
+    public void testSingleNodeClaimsAllPartitions() {
+        PartitionLeaseManager a = manager("a", schedulerA, writerA);
+
+        a.renewLeases();
+
+        verify(schedulerA).assignPartitions(Arrays.asList(0, 1, 2, 3));
+        assertEquals(Arrays.asList(0, 1, 2, 3), partitionsOf("a"));
+        // Heartbeats update the existing row
+        a.renewLeases();
+        assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM cluster_nodes", Integer.class));
+    }
+
+    @Test
+    public void testSurplusIsHandedOverOnceChecksCompleteAndResultsAreWritten() {
+        PartitionLeaseManager a = manager("a", schedulerA, writerA);
+        PartitionLeaseManager b = manager("b", schedulerB, mock(MonitoringResultWriter.class));
+        a.renewLeases();
+
+        // B joins, nothing is free yet
+        b.renewLeases();
+        verify(schedulerB, never()).assignPartitions(any());
+
+        // A gives up its highest partitions, but keeps the leases while a check is still running
+        when(schedulerA.hasInFlight(3)).thenReturn(true);
+        when(writerA.enqueuedCount()).thenReturn(7L);
+        a.renewLeases();
+        verify(schedulerA).revokePartition(3);
+        verify(schedulerA).revokePartition(2);
+        a.renewLeases();
+        assertEquals(Arrays.asList(0, 1, 2, 3), partitionsOf("a"));
+
+        // Done running, then waiting for the writer to reach the position taken after the checks
+        when(schedulerA.hasInFlight(3)).thenReturn(false);
+        a.renewLeases();
+        a.renewLeases();
+        assertEquals(Arrays.asList(0, 1, 2, 3), partitionsOf("a"));
+        when(writerA.isWritten(7L)).thenReturn(true);
+        a.renewLeases();
+        assertEquals(Arrays.asList(0, 1), partitionsOf("a"));
+
+        b.renewLeases();
+        verify(schedulerB).assignPartitions(Arrays.asList(2, 3));
+        assertEquals(Arrays.asList(2, 3), partitionsOf("b"));
+
+        // Stable from now on
+        a.renewLeases();
+        b.renewLeases();
+        assertEquals(Arrays.asList(0, 1), partitionsOf("a"));
+        assertEquals(Arrays.asList(2, 3), partitionsOf("b"));
+    }
+
+    @Test
+    public void testExpiredLeasesAreTakenOverAndRevokedFromTheirFormerOwner() {
+        PartitionLeaseManager a = manager("a", schedulerA, writerA);
+        PartitionLeaseManager b = manager("b", schedulerB, mock(MonitoringResultWriter.class));
+        a.renewLeases();
+        b.renewLeases();
+
+        // A stalls past the expiry of its leases, B takes its share of them
+        jdbcTemplate.update("UPDATE partition_leases SET lease_until = DATEADD('SECOND', -1, CURRENT_TIMESTAMP)");
+        b.renewLeases();
+        verify(schedulerB).assignPartitions(Arrays.asList(0, 1));
+
+        a.renewLeases();
+        verify(schedulerA).revokePartition(0);
+        verify(schedulerA).revokePartition(1);
+        assertEquals(Arrays.asList(2, 3), partitionsOf("a"));
+    }
+
+    @Test
+    public void testPartitionsAreRevokedWhenLeasesCannotBeRenewedInTime() throws InterruptedException {
+        // Valid for a second locally, the renewal margin is five seconds
+        properties.getCluster().setLeaseDuration(Duration.ofSeconds(6));
+        PartitionLeaseManager a = manager("a", schedulerA, writerA);
+        a.renewLeases();
+        // Renewed once more right before the failures, so the first claim's setup time does not count
+        a.renewLeases();
+        verify(schedulerA, times(2)).extendLeases(anyLong());
+
+        jdbcTemplate.execute("DROP TABLE cluster_nodes");
+        a.renewLeases();
+        verify(schedulerA, never()).revokePartition(anyInt());
+
+        Thread.sleep(1100);
+        a.renewLeases();
+        for (int partition = 0; partition < 4; partition++) {
+            verify(schedulerA).revokePartition(partition);
+        }
+    }
+
+    @Test
+    public void testShutdownReleasesLeasesAndLeavesTheCluster() {
+        PartitionLeaseManager a = manager("a", schedulerA, writerA);
+        a.renewLeases();
+        when(writerA.isWritten(anyLong())).thenReturn(true);
+
+        a.shutdown();
+
+        assertEquals(Collections.emptyList(), partitionsOf("a"));
+        assertNull(jdbcTemplate.queryForObject("SELECT MAX(node_id) FROM cluster_nodes", String.class));
+    }
+
+    private PartitionLeaseManager manager(String nodeId, EndpointScheduler scheduler, MonitoringResultWriter writer) {
+        properties.getCluster().setNodeId(nodeId);
+        return new PartitionLeaseManager(scheduler, writer, jdbcTemplate, properties, new SimpleMeterRegistry());
+    }
+
+    private List<Integer> partitionsOf(String nodeId) {
+        return jdbcTemplate.queryForList("SELECT partition_id FROM partition_leases WHERE owner_node = ? " +
+                "ORDER BY partition_id", Integer.class, nodeId);
+    }
+}
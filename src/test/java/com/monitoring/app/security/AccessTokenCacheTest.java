@@ -0,0 +1,94 @@
+package com.monitoring.app.security;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.User;
+import com.monitoring.app.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AccessTokenCacheTest {
+
+    private UserService userService;
+    private AccessTokenCache accessTokenCache;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        userService = mock(UserService.class);
+        accessTokenCache = new AccessTokenCache(userService, new MonitoringProperties(), new SimpleMeterRegistry());
+        user = new User();
+        user.setId(1L);
+        user.setAccessToken("old-token");
+    }
+
+    @Test
+    public void testUserChangeDropsCachedTokens() {
+        when(userService.findByAccessToken("old-token")).thenReturn(Optional.of(user));
+        when(userService.findByAccessToken("new-token")).thenReturn(Optional.empty());
+
+        assertEquals(Optional.of(user), accessTokenCache.findUser("old-token"));
+        assertTrue(accessTokenCache.findUser("new-token").isEmpty());
+        // Both answers are served from the cache now
+        accessTokenCache.findUser("old-token");
+        accessTokenCache.findUser("new-token");
+        verify(userService, times(1)).findByAccessToken("old-token");
+        verify(userService, times(1)).findByAccessToken("new-token");
+
+        // The token is regenerated: the old one is gone and the new one was cached as invalid
+        when(userService.findByAccessToken("old-token")).thenReturn(Optional.empty());
+        when(userService.findByAccessToken("new-token")).thenReturn(Optional.of(user));
+        accessTokenCache.onUserChanged(new UserChangedEvent(1L, "new-token"));
+
+        assertTrue(accessTokenCache.findUser("old-token").isEmpty());
+        assertEquals(Optional.of(user), accessTokenCache.findUser("new-token"));
+    }
+
+    @Test
+    public void testUserChangeKeepsTokensOfOtherUsers() {
+        User other = new User();
+        other.setId(2L);
+        when(userService.findByAccessToken("other-token")).thenReturn(Optional.of(other));
+        accessTokenCache.findUser("other-token");
+        // Unknown tokens other than the new one stay cached as well
+        when(userService.findByAccessToken("bad-token")).thenReturn(Optional.empty());
+        accessTokenCache.findUser("bad-token");
+
+        accessTokenCache.onUserChanged(new UserChangedEvent(1L, "new-token"));
+
+        assertEquals(Optional.of(other), accessTokenCache.findUser("other-token"));
+        assertTrue(accessTokenCache.findUser("bad-token").isEmpty());
+        verify(userService, times(1)).findByAccessToken("other-token");
+        verify(userService, times(1)).findByAccessToken("bad-token");
+    }
+
+    @Test
+    public void testLookupOverlappingAChangeIsNotKept() {
+        // The old token is read just before the change commits, and the new one as still unknown
+        when(userService.findByAccessToken("old-token")).thenAnswer(invocation -> {
+            accessTokenCache.onUserChanged(new UserChangedEvent(1L, "new-token"));
+            return Optional.of(user);
+        });
+        when(userService.findByAccessToken("new-token")).thenAnswer(invocation -> {
+            accessTokenCache.onUserChanged(new UserChangedEvent(1L, "new-token"));
+            return Optional.empty();
+        });
+        accessTokenCache.findUser("old-token");
+        accessTokenCache.findUser("new-token");
+
+        // Neither stale answer was cached
+        when(userService.findByAccessToken("old-token")).thenReturn(Optional.empty());
+        when(userService.findByAccessToken("new-token")).thenReturn(Optional.of(user));
+        assertTrue(accessTokenCache.findUser("old-token").isEmpty());
+        assertEquals(Optional.of(user), accessTokenCache.findUser("new-token"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.monitoring.app.security;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.User;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RateLimitFilterTest {
+
+    private MonitoringProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitFilter rateLimitFilter;
+
+    @BeforeEach
+    public void setup() {
+        properties = new MonitoringProperties();
+        properties.getRateLimit().getDefaults().setRequestsPerSecond(0.1);
+        properties.getRateLimit().getDefaults().setBurst(2);
+        MonitoringProperties.Limit unlimited = new MonitoringProperties.Limit();
+        unlimited.setRequestsPerSecond(0);
+        properties.getRateLimit().getUsers().put(2L, unlimited);
+        meterRegistry = new SimpleMeterRegistry();
+        rateLimitFilter = new RateLimitFilter(properties, Jackson2ObjectMapperBuilder.json().build(), meterRegistry);
+    }
+
+    @Test
+    public void testRequestsOverTheBurstGetTooManyRequests() throws ServletException, IOException {
+        assertEquals(HttpStatus.OK.value(), filter(1L, "token-1").getStatus());
+        assertEquals(HttpStatus.OK.value(), filter(1L, "token-1").getStatus());
+
+        MockFilterChain filterChain = new MockFilterChain();
+        MockHttpServletResponse response = filter(1L, "token-1", filterChain);
+
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+        assertNull(filterChain.getRequest());
+        // One token every 10 s, rounded up to whole seconds
+        String retryAfter = response.getHeader(HttpHeaders.RETRY_AFTER);
+        assertNotNull(retryAfter);
+        assertTrue(Long.parseLong(retryAfter) >= 9 && Long.parseLong(retryAfter) <= 10, retryAfter);
+        assertTrue(response.getContentAsString().contains("\"status\":429"));
+        assertTrue(response.getContentAsString().contains("Rate limit exceeded"));
+        assertEquals(2, meterRegistry.get("monitoring.rate.limit.requests").tag("outcome", "allowed").counter().count());
+        assertEquals(1, meterRegistry.get("monitoring.rate.limit.requests").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    public void testBudgetIsKeptPerAccessToken() throws ServletException, IOException {
+        filter(1L, "token-1");
+        filter(1L, "token-1");
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), filter(1L, "token-1").getStatus());
+
+        assertEquals(HttpStatus.OK.value(), filter(1L, "token-2").getStatus());
+    }
+
+    @Test
+    public void testUsersWithoutLimitAreNotLimited() throws ServletException, IOException {
+        for (int i = 0; i < 10; i++) {
+            assertEquals(HttpStatus.OK.value(), filter(2L, "token-2").getStatus());
+        }
+    }
+
+    @Test
+    public void testRequestsWithoutUserPassThrough() throws ServletException, IOException {
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("OPTIONS", "/api/endpoints");
+            MockFilterChain filterChain = new MockFilterChain();
+            rateLimitFilter.doFilter(request, new MockHttpServletResponse(), filterChain);
+            assertNotNull(filterChain.getRequest());
+        }
+    }
+
+    private MockHttpServletResponse filter(Long userId, String accessToken) throws ServletException, IOException {
+        return filter(userId, accessToken, new MockFilterChain());
+    }
+
+    private MockHttpServletResponse filter(Long userId, String accessToken, MockFilterChain filterChain)
+            throws ServletException, IOException {
+        User user = new User();
+        user.setId(userId);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/endpoints");
+        request.setAttribute("user", user);
+        request.addHeader("X-Access-Token", accessToken);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        rateLimitFilter.doFilter(request, response, filterChain);
+        return response;
+    }
+}
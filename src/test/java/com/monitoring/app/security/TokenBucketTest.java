@@ -0,0 +1,59 @@
+package com.monitoring.app.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TokenBucketTest {
+
+    private static final long START = 1_000_000_000L;
+
+    @Test
+    public void testBurstIsAllowedAtOnce() {
+        TokenBucket bucket = new TokenBucket(10, 3, START);
+
+        assertEquals(0, bucket.tryConsume(START));
+        assertEquals(0, bucket.tryConsume(START));
+        assertEquals(0, bucket.tryConsume(START));
+        // The fourth request has to wait for one token at 10 per second
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryConsume(START));
+    }
+
+    @Test
+    public void testTokensRefillAtTheSustainedRate() {
+        TokenBucket bucket = new TokenBucket(10, 3, START);
+        for (int i = 0; i < 3; i++) {
+            bucket.tryConsume(START);
+        }
+
+        long halfway = START + TimeUnit.MILLISECONDS.toNanos(50);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(50), bucket.tryConsume(halfway));
+
+        long refilled = START + TimeUnit.MILLISECONDS.toNanos(100);
+        assertEquals(0, bucket.tryConsume(refilled));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryConsume(refilled));
+    }
+
+    @Test
+    public void testRejectedRequestsDoNotTakeTokens() {
+        TokenBucket bucket = new TokenBucket(10, 1, START);
+        assertEquals(0, bucket.tryConsume(START));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryConsume(START));
+        }
+        assertEquals(0, bucket.tryConsume(START + TimeUnit.MILLISECONDS.toNanos(100)));
+    }
+
+    @Test
+    public void testIdleBucketHoldsNoMoreThanTheBurst() {
+        TokenBucket bucket = new TokenBucket(10, 3, START);
+
+        long later = START + TimeUnit.SECONDS.toNanos(60);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, bucket.tryConsume(later));
+        }
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.tryConsume(later));
+    }
+}
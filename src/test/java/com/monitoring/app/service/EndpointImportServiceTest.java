@@ -0,0 +1,169 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.EndpointImportDto;
+import com.monitoring.app.dto.EndpointImportErrorDto;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class EndpointImportServiceTest {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private MonitoredEndpointRepository monitoredEndpointRepository;
+    private EndpointScheduler endpointScheduler;
+    private EndpointImportService endpointImportService;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:import;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE monitored_endpoints (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, url VARCHAR(255) NOT NULL, creation_date TIMESTAMP NOT NULL, " +
+                "monitoring_interval INT NOT NULL, capture_mode VARCHAR(16), capture_limit INT, retention_days INT, " +
+                "retention_rows INT, owner_id BIGINT NOT NULL, deleted BOOLEAN NOT NULL, modified_at TIMESTAMP)");
+
+        monitoredEndpointRepository = mock(MonitoredEndpointRepository.class);
+        when(monitoredEndpointRepository.findForImport(anyLong(), anyCollection(), anyCollection()))
+                .thenReturn(Collections.emptyList());
+        endpointScheduler = mock(EndpointScheduler.class);
+        endpointImportService = service(new MonitoringProperties());
+
+        user = new User();
+        user.setId(1L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE monitored_endpoints");
+    }
+
+    @Test
+    public void testFailedItemsAreReportedAndTheOthersImported() throws IOException {
+        EndpointImportDto report = importNdjson(
+                "{\"name\": \"ok\", \"url\": \"https://example.com/ok\", \"monitoringInterval\": 60}",
+                "{\"url\": \"https://example.com/unnamed\", \"monitoringInterval\": 60}",
+                "{\"name\": \"broken\", ",
+                "{\"id\": 999, \"name\": \"missing\", \"url\": \"https://example.com/missing\", \"monitoringInterval\": 60}",
+                "{\"name\": \"ok too\", \"url\": \"https://example.com/ok-too\", \"monitoringInterval\": 30}");
+
+        assertEquals(2, report.getCreated());
+        assertEquals(0, report.getUpdated());
+        assertEquals(3, report.getFailed());
+        List<EndpointImportErrorDto> errors = report.getErrors();
+        assertEquals(1, errors.get(0).getIndex());
+        assertEquals("https://example.com/unnamed", errors.get(0).getUrl());
+        assertEquals("name: Name is required", errors.get(0).getMessage());
+        assertEquals(2, errors.get(1).getIndex());
+        assertTrue(errors.get(1).getMessage().startsWith("Malformed JSON"));
+        assertEquals(3, errors.get(2).getIndex());
+        assertEquals("Endpoint not found with id: 999", errors.get(2).getMessage());
+
+        assertEquals(2, count());
+        verify(endpointScheduler, times(2)).schedule(any(ScheduledEndpoint.class));
+    }
+
+    @Test
+    public void testDuplicateUrlsInOneBatchCreateOneEndpoint() throws IOException {
+        EndpointImportDto report = endpointImportService.importEndpoints(body("[" +
+                "{\"name\": \"first\", \"url\": \"https://example.com/same\", \"monitoringInterval\": 60}," +
+                "{\"name\": \"second\", \"url\": \"https://example.com/same\", \"monitoringInterval\": 30}" +
+                "]"), false, user);
+
+        assertEquals(1, report.getCreated());
+        assertEquals(0, report.getUpdated());
+        assertEquals(1, report.getFailed());
+        assertEquals(1, report.getErrors().get(0).getIndex());
+        assertEquals("https://example.com/same", report.getErrors().get(0).getUrl());
+        assertEquals(1, count());
+        // The first item wins
+        assertEquals("first", jdbcTemplate.queryForObject("SELECT name FROM monitored_endpoints", String.class));
+        assertEquals(60, jdbcTemplate.queryForObject("SELECT monitoring_interval FROM monitored_endpoints", Integer.class));
+    }
+
+    @Test
+    public void testDuplicateUrlsInLaterBatchesAreNotCountedAsUpdates() throws IOException {
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getBulkImport().setBatchSize(2);
+        endpointImportService = service(properties);
+
+        EndpointImportDto report = importNdjson(
+                "{\"name\": \"a\", \"url\": \"https://example.com/a\", \"monitoringInterval\": 60}",
+                "{\"name\": \"b\", \"url\": \"https://example.com/b\", \"monitoringInterval\": 60}",
+                "{\"name\": \"c\", \"url\": \"https://example.com/c\", \"monitoringInterval\": 60}",
+                "{\"name\": \"a again\", \"url\": \"https://example.com/a\", \"monitoringInterval\": 30}");
+
+        assertEquals(3, report.getCreated());
+        assertEquals(0, report.getUpdated());
+        assertEquals(1, report.getFailed());
+        assertEquals(3, report.getErrors().get(0).getIndex());
+        assertEquals(3, count());
+        verify(endpointScheduler, times(3)).schedule(any(ScheduledEndpoint.class));
+    }
+
+    @Test
+    public void testFailedBatchIsRetriedOneByOne() throws IOException {
+        String tooLong = "https://example.com/" + String.join("", Collections.nCopies(300, "x"));
+        EndpointImportDto report = importNdjson(
+                "{\"name\": \"first\", \"url\": \"https://example.com/first\", \"monitoringInterval\": 60}",
+                "{\"name\": \"too long\", \"url\": \"" + tooLong + "\", \"monitoringInterval\": 60}",
+                "{\"name\": \"third\", \"url\": \"https://example.com/third\", \"monitoringInterval\": 60}");
+
+        assertEquals(2, report.getCreated());
+        assertEquals(1, report.getFailed());
+        assertEquals(1, report.getErrors().get(0).getIndex());
+        assertEquals("Could not be saved", report.getErrors().get(0).getMessage());
+        // The rolled back batch left nothing behind and was never scheduled
+        assertEquals(2, count());
+        verify(endpointScheduler, times(2)).schedule(any(ScheduledEndpoint.class));
+    }
+
+    private EndpointImportService service(MonitoringProperties properties) {
+        return new EndpointImportService(monitoredEndpointRepository, endpointScheduler, jdbcTemplate,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                Jackson2ObjectMapperBuilder.json().build(),
+                Validation.buildDefaultValidatorFactory().getValidator(),
+                properties);
+    }
+
+    private EndpointImportDto importNdjson(String... lines) throws IOException {
+        return endpointImportService.importEndpoints(body(String.join("\n", lines)), true, user);
+    }
+
+    private static ByteArrayInputStream body(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM monitored_endpoints", Integer.class);
+    }
+}
@@ -0,0 +1,133 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.model.MonitoredEndpoint;
+import com.monitoring.app.model.MonitoringResult;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.repository.MonitoringResultRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MonitoringResultServiceTest {
+
+    private static final Long ENDPOINT_ID = 1L;
+    private static final Long OWNER_ID = 10L;
+    private static final Long RESULT_ID = 7L;
+
+    private MonitoringResultRepository monitoringResultRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private JdbcTemplate jdbcTemplate;
+    private MonitoringResultService monitoringResultService;
+    private RecentResultsCache recentResultsCache;
+    private User user;
+    private LocalDateTime now;
+
+    @BeforeEach
+    public void setup() {
+        monitoringResultRepository = mock(MonitoringResultRepository.class);
+        MonitoredEndpointRepository monitoredEndpointRepository = mock(MonitoredEndpointRepository.class);
+        PayloadStore payloadStore = mock(PayloadStore.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        jdbcTemplate = mock(JdbcTemplate.class);
+        monitoringResultService = new MonitoringResultService(monitoringResultRepository, monitoredEndpointRepository,
+                mock(MonitoredEndpointService.class), payloadStore, mock(RollupService.class), eventPublisher, jdbcTemplate);
+
+        MonitoredEndpoint endpoint = new MonitoredEndpoint();
+        endpoint.setId(ENDPOINT_ID);
+        when(monitoredEndpointRepository.getReferenceById(ENDPOINT_ID)).thenReturn(endpoint);
+        when(monitoredEndpointRepository.findOwnerIdById(ENDPOINT_ID)).thenReturn(Optional.of(OWNER_ID));
+        when(payloadStore.storeAll(anyList())).thenAnswer(invocation -> ((List<String>) invocation.getArgument(0))
+                .stream().map(payload -> payload != null ? "hash" : null).collect(Collectors.toList()));
+        doAnswer(invocation -> {
+            ((List<MonitoringResult>) invocation.getArgument(0)).forEach(result -> result.setId(RESULT_ID));
+            return invocation.getArgument(0);
+        }).when(monitoringResultRepository).saveAll(anyList());
+
+        // Warmed up empty before the failures, so it is kept current from the events alone
+        MonitoringResultService loader = mock(MonitoringResultService.class);
+        when(loader.getLatestResults(eq(ENDPOINT_ID), any(Integer.class))).thenReturn(Collections.emptyList());
+        recentResultsCache = new RecentResultsCache(loader, monitoredEndpointRepository,
+                new MonitoringProperties(), new SimpleMeterRegistry());
+        user = new User();
+        user.setId(OWNER_ID);
+        recentResultsCache.getRecentResults(ENDPOINT_ID, user);
+
+        now = LocalDateTime.of(2024, 1, 1, 12, 0);
+    }
+
+    @Test
+    public void testRepeatedFailuresAcrossBatchesUpdateTheStoredResult() {
+        // First batch: the failure and one repeat collapsed into it
+        monitoringResultService.saveResults(Arrays.asList(
+                failure(now, false),
+                failure(now.plusMinutes(1), true)));
+
+        ResultsPersistedEvent first = publishedEvent();
+        assertEquals(1, first.getResults().size());
+        assertEquals(2, first.getResults().get(0).getRepeatCount());
+        assertEquals(first.getResults(), first.getRepeated());
+        recentResultsCache.onResultsPersisted(first);
+
+        // Second batch: two more repeats of the result written by the first one
+        when(monitoringResultRepository.findLatestByEndpointId(eq(ENDPOINT_ID), any())).thenReturn(Collections.singletonList(
+                new MonitoringResultRow(RESULT_ID, now, 503, null, "hash", 11L, "content", 5L, ENDPOINT_ID,
+                        2, now.plusMinutes(1))));
+        monitoringResultService.saveResults(Arrays.asList(
+                failure(now.plusMinutes(2), true),
+                failure(now.plusMinutes(3), true)));
+
+        verify(jdbcTemplate).update(startsWith("UPDATE monitoring_results SET repeat_count"),
+                eq(2), eq(Timestamp.valueOf(now.plusMinutes(3))), eq(RESULT_ID));
+        ResultsPersistedEvent second = publishedEvent();
+        assertTrue(second.getResults().isEmpty());
+        assertEquals(1, second.getRepeated().size());
+        MonitoringResultDto updated = second.getRepeated().get(0);
+        assertEquals(RESULT_ID, updated.getId());
+        assertEquals(4, updated.getRepeatCount());
+        assertEquals(now.plusMinutes(3), updated.getLastRepeatDate());
+        assertEquals("maintenance", updated.getPayload());
+
+        // The cached result is replaced rather than kept stale or added twice
+        recentResultsCache.onResultsPersisted(second);
+        List<MonitoringResultDto> recent = recentResultsCache.getRecentResults(ENDPOINT_ID, user);
+        assertEquals(1, recent.size());
+        assertEquals(4, recent.get(0).getRepeatCount());
+        assertEquals(now.plusMinutes(3), recent.get(0).getLastRepeatDate());
+    }
+
+    private ResultsPersistedEvent publishedEvent() {
+        ArgumentCaptor<ResultsPersistedEvent> events = ArgumentCaptor.forClass(ResultsPersistedEvent.class);
+        verify(eventPublisher, atLeastOnce()).publishEvent(events.capture());
+        return events.getValue();
+    }
+
+    private static PendingResult failure(LocalDateTime checkDate, boolean repeat) {
+        return new PendingResult(ENDPOINT_ID, checkDate, 503, "maintenance", 11L, "content", 5L, repeat);
+    }
+}
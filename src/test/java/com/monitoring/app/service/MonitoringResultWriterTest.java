@@ -0,0 +1,87 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class MonitoringResultWriterTest {
+
+    private MonitoringResultService monitoringResultService;
+    private MonitoringResultWriter monitoringResultWriter;
+    // Endpoint IDs of the saved results and the threads that saved them, in save order
+    private final List<Long> savedEndpointIds = new CopyOnWriteArrayList<>();
+    private final List<String> savingThreads = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstSaveStarted = new CountDownLatch(1);
+    private final CountDownLatch releaseFirstSave = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setup() {
+        MonitoringProperties properties = new MonitoringProperties();
+        properties.getPersistence().setBatchSize(10);
+        properties.getPersistence().setFlushInterval(Duration.ofMillis(20));
+        monitoringResultService = mock(MonitoringResultService.class);
+        // The writer reuses its batch list, so the results are copied out while saving
+        doAnswer(invocation -> {
+            List<PendingResult> batch = invocation.getArgument(0);
+            firstSaveStarted.countDown();
+            releaseFirstSave.await(5, TimeUnit.SECONDS);
+            batch.forEach(result -> savedEndpointIds.add(result.getEndpointId()));
+            savingThreads.add(Thread.currentThread().getName());
+            return null;
+        }).when(monitoringResultService).saveResults(anyList());
+        monitoringResultWriter = new MonitoringResultWriter(monitoringResultService, properties, new SimpleMeterRegistry());
+        monitoringResultWriter.start();
+    }
+
+    @Test
+    public void testStopDrainsQueuedResults() throws InterruptedException {
+        monitoringResultWriter.enqueue(result(0));
+        // Everything else is still queued when the shutdown starts
+        assertTrue(firstSaveStarted.await(5, TimeUnit.SECONDS));
+        for (long i = 1; i < 25; i++) {
+            monitoringResultWriter.enqueue(result(i));
+        }
+        assertEquals(24, monitoringResultWriter.queueDepth());
+
+        releaseFirstSave.countDown();
+        monitoringResultWriter.stop();
+
+        assertEquals(25, savedEndpointIds.size());
+        for (int i = 0; i < 25; i++) {
+            assertEquals(i, savedEndpointIds.get(i));
+        }
+        assertEquals(0, monitoringResultWriter.queueDepth());
+        assertTrue(monitoringResultWriter.isWritten(monitoringResultWriter.enqueuedCount()));
+        // Drained in batches, not one by one
+        assertTrue(savingThreads.size() <= 4);
+    }
+
+    @Test
+    public void testResultsAfterStopAreWrittenDirectly() {
+        releaseFirstSave.countDown();
+        monitoringResultWriter.stop();
+
+        monitoringResultWriter.enqueue(result(1));
+
+        assertEquals(List.of(1L), savedEndpointIds);
+        assertEquals(Thread.currentThread().getName(), savingThreads.get(0));
+    }
+
+    private static PendingResult result(long endpointId) {
+        return new PendingResult(endpointId, LocalDateTime.now(), 200, "ok", 2L, "hash", 5L, false);
+    }
+}
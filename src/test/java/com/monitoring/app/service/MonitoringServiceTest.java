@@ -0,0 +1,148 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.config.ProbeHttpClientConfig;
+import com.monitoring.app.probe.ProbeExecutor;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import com.monitoring.app.scheduler.ScheduledEndpoint;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.notNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MonitoringServiceTest {
+
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private ProbeExecutor probeExecutor;
+    private EndpointScheduler endpointScheduler;
+    private MonitoringResultWriter monitoringResultWriter;
+    private SimpleMeterRegistry meterRegistry;
+    private MonitoringService monitoringService;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/missing", exchange -> respond(exchange, 404, "not here"));
+        server.createContext("/down", exchange -> respond(exchange, 503, "maintenance"));
+        server.start();
+
+        MonitoringProperties properties = new MonitoringProperties();
+        meterRegistry = new SimpleMeterRegistry();
+        // The real probe client, so its error handling is what gets tested
+        ProbeHttpClientConfig config = new ProbeHttpClientConfig();
+        httpClient = config.probeHttpClient(config.probeConnectionManager(properties, meterRegistry), properties);
+        RestTemplate restTemplate = config.restTemplate(new RestTemplateBuilder(),
+                config.probeRequestFactory(httpClient, properties));
+        probeExecutor = new ProbeExecutor(restTemplate, properties);
+
+        endpointScheduler = mock(EndpointScheduler.class);
+        monitoringResultWriter = mock(MonitoringResultWriter.class);
+        monitoringService = new MonitoringService(endpointScheduler, probeExecutor, monitoringResultWriter,
+                mock(LatencyTracker.class), mock(ResultStreamHub.class), properties, meterRegistry,
+                Clock.systemDefaultZone());
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        probeExecutor.shutdown();
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testErrorResponsesAreRecordedWithTheirStatus() {
+        String baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        ScheduledEndpoint missing = new ScheduledEndpoint(1L, 1L, baseUrl + "/missing", 60, null, null, null);
+        ScheduledEndpoint down = new ScheduledEndpoint(2L, 1L, baseUrl + "/down", 60, null, null, null);
+        when(endpointScheduler.pollDue(any(), anyInt())).thenReturn(Arrays.asList(missing, down));
+
+        monitoringService.checkEndpoints();
+
+        verify(endpointScheduler, timeout(5000).times(2)).complete(any(), any(LocalDateTime.class));
+        ArgumentCaptor<PendingResult> results = ArgumentCaptor.forClass(PendingResult.class);
+        verify(monitoringResultWriter, times(2)).enqueue(results.capture());
+        Map<Long, PendingResult> byEndpoint = results.getAllValues().stream()
+                .collect(Collectors.toMap(PendingResult::getEndpointId, Function.identity()));
+
+        assertEquals(404, byEndpoint.get(1L).getStatusCode());
+        assertEquals("not here", byEndpoint.get(1L).getPayload());
+        assertEquals(503, byEndpoint.get(2L).getStatusCode());
+        assertEquals("maintenance", byEndpoint.get(2L).getPayload());
+        assertNotNull(byEndpoint.get(2L).getResponseTime());
+
+        // Only the server error counts as a failure towards backoff
+        verify(endpointScheduler).recordOutcome(eq(missing), isNull());
+        verify(endpointScheduler).recordOutcome(eq(down), notNull());
+        assertEquals(1, meterRegistry.get("monitoring.probe.duration").tag("outcome", "client_error").timer().count());
+        assertEquals(1, meterRegistry.get("monitoring.probe.duration").tag("outcome", "server_error").timer().count());
+        assertEquals(0, meterRegistry.get("monitoring.probe.duration").tag("outcome", "success").timer().count());
+    }
+
+    @Test
+    public void testProbeThatThrowsStillCompletesTheEndpoint() {
+        RestTemplate throwing = new RestTemplate() {
+            @Override
+            public <T> T execute(String url, HttpMethod method, RequestCallback requestCallback,
+                                 ResponseExtractor<T> responseExtractor, Object... uriVariables) {
+                throw new IllegalStateException("broken client");
+            }
+        };
+        ProbeExecutor throwingExecutor = new ProbeExecutor(throwing, new MonitoringProperties());
+        MonitoringService service = new MonitoringService(endpointScheduler, throwingExecutor, monitoringResultWriter,
+                mock(LatencyTracker.class), mock(ResultStreamHub.class), new MonitoringProperties(), meterRegistry,
+                Clock.systemDefaultZone());
+        ScheduledEndpoint endpoint = new ScheduledEndpoint(1L, 1L, "http://127.0.0.1/", 60, null, null, null);
+        when(endpointScheduler.pollDue(any(), anyInt())).thenReturn(Collections.singletonList(endpoint));
+
+        service.checkEndpoints();
+
+        // Recorded as a failed check and scheduled again rather than left in flight
+        verify(endpointScheduler, timeout(5000)).complete(eq(endpoint), any(LocalDateTime.class));
+        verify(endpointScheduler).recordOutcome(eq(endpoint), notNull());
+        throwingExecutor.shutdown();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.model.PayloadContent;
+import com.monitoring.app.repository.PayloadContentRepository;
+import com.monitoring.app.util.HashUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PayloadStoreTest {
+
+    private PayloadContentRepository payloadContentRepository;
+    private JdbcTemplate jdbcTemplate;
+    private PayloadStore payloadStore;
+
+    @BeforeEach
+    public void setup() {
+        payloadContentRepository = mock(PayloadContentRepository.class);
+        when(payloadContentRepository.findExistingHashes(anyCollection())).thenReturn(Collections.emptyList());
+        jdbcTemplate = mock(JdbcTemplate.class);
+        payloadStore = new PayloadStore(payloadContentRepository, jdbcTemplate, new SimpleMeterRegistry(),
+                new MonitoringProperties());
+    }
+
+    @Test
+    public void testCompressDecompressRoundTrip() {
+        String repetitive = String.join("", Collections.nCopies(5000, "{\"status\":\"UP\"}"));
+        for (String payload : Arrays.asList("", "ok", "Grüße, 世界 🌍", repetitive)) {
+            byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+            byte[] compressed = PayloadStore.compress(bytes);
+            assertEquals(payload, PayloadStore.decompress(compressed, bytes.length));
+        }
+        assertTrue(PayloadStore.compress(repetitive.getBytes(StandardCharsets.UTF_8)).length < repetitive.length() / 20);
+    }
+
+    @Test
+    public void testDuplicatePayloadsAreStoredOnce() {
+        List<String> hashes = payloadStore.storeAll(Arrays.asList("a", "b", "a", null));
+
+        assertEquals(Arrays.asList(hash("a"), hash("b"), hash("a"), null), hashes);
+        List<Object[]> inserted = insertedRows();
+        assertEquals(2, inserted.size());
+        assertEquals(hash("a"), inserted.get(0)[0]);
+        assertEquals(hash("b"), inserted.get(1)[0]);
+        assertEquals(1.5, payloadStore.dedupRatio());
+    }
+
+    @Test
+    public void testKnownContentsSkipTheExistenceCheck() {
+        payloadStore.storeAll(Collections.singletonList("a"));
+        payloadStore.storeAll(Arrays.asList("a", "a"));
+
+        verify(payloadContentRepository, times(1)).findExistingHashes(anyCollection());
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+        assertEquals(3.0, payloadStore.dedupRatio());
+    }
+
+    @Test
+    public void testContentsStoredByOtherWritersAreNotInsertedAgain() {
+        when(payloadContentRepository.findExistingHashes(anyCollection())).thenReturn(Collections.singletonList(hash("a")));
+
+        payloadStore.storeAll(Collections.singletonList("a"));
+
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    public void testStoredPayloadsLoadBackAndAreCached() {
+        String payload = "{\"message\": \"Grüße\"}";
+        payloadStore.storeAll(Collections.singletonList(payload));
+        Object[] row = insertedRows().get(0);
+        PayloadContent content = new PayloadContent((String) row[0], (byte[]) row[1], (Integer) row[2],
+                LocalDateTime.now(), null);
+        assertArrayEquals(PayloadStore.compress(payload.getBytes(StandardCharsets.UTF_8)), content.getData());
+        when(payloadContentRepository.findAllById(anyCollection())).thenReturn(Collections.singletonList(content));
+
+        Set<String> wanted = Collections.singleton(hash(payload));
+        Map<String, String> loaded = payloadStore.loadAll(wanted);
+        assertEquals(payload, loaded.get(hash(payload)));
+
+        // Served from the cache the second time
+        assertEquals(payload, payloadStore.loadAll(wanted).get(hash(payload)));
+        verify(payloadContentRepository, times(1)).findAllById(anyCollection());
+        assertNull(payloadStore.loadAll(Collections.singleton("missing")).get("missing"));
+    }
+
+    private List<Object[]> insertedRows() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), rows.capture());
+        return rows.getValue();
+    }
+
+    private static String hash(String payload) {
+        return HashUtils.sha256Hex(payload.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,228 @@
+package com.monitoring.app.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.MonitoringResultDto;
+import com.monitoring.app.exception.ServiceUnavailableException;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ResultStreamHubTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+    private MonitoringProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private Queue<RecordingEmitter> emitters;
+    private ResultStreamHub resultStreamHub;
+
+    @BeforeEach
+    public void setup() {
+        properties = new MonitoringProperties();
+        properties.getStream().setBufferSize(4);
+        properties.getStream().setReplaySize(3);
+        properties.getStream().setMaxOverflows(2);
+        properties.getStream().setDispatchThreads(1);
+        properties.getStream().setSendTimeout(Duration.ofMillis(50));
+        meterRegistry = new SimpleMeterRegistry();
+        emitters = new ConcurrentLinkedQueue<>();
+        resultStreamHub = new ResultStreamHub(new ObjectMapper(), mock(MonitoredEndpointRepository.class),
+                properties, meterRegistry) {
+            @Override
+            SseEmitter newEmitter() {
+                return emitters.remove();
+            }
+        };
+    }
+
+    @AfterEach
+    public void tearDown() {
+        resultStreamHub.shutdown();
+    }
+
+    @Test
+    public void testSlowSubscriberIsToldHowManyEventsItMissed() throws InterruptedException {
+        RecordingEmitter emitter = subscribe(1L, 0, null);
+        publish(1L, 0);
+        waitUntil(() -> emitter.waiting.get() == 1);
+
+        // Six more events while the first is being written, the buffer keeps the last four
+        for (int i = 1; i <= 6; i++) {
+            publish(1L, i);
+        }
+        emitter.permits.release(100);
+        waitUntil(() -> emitter.events.size() == 6);
+
+        assertTrue(emitter.events.get(0).contains("\"monitoredEndpointId\":0"));
+        assertTrue(emitter.events.get(1).startsWith("event:overflow"));
+        assertTrue(emitter.events.get(1).contains("{\"dropped\":2}"));
+        for (int i = 2; i < 6; i++) {
+            assertTrue(emitter.events.get(i).contains("\"monitoredEndpointId\":" + (i + 1)));
+        }
+        // One overflow is not enough to be dropped
+        assertEquals(1, subscribers());
+        assertEquals(2, meterRegistry.get("monitoring.stream.dropped").counter().count());
+    }
+
+    @Test
+    public void testSubscriberThatKeepsOverflowingIsDropped() throws InterruptedException {
+        RecordingEmitter emitter = subscribe(1L, 0, null);
+        publish(1L, 0);
+        waitUntil(() -> emitter.waiting.get() == 1);
+        for (int i = 1; i <= 5; i++) {
+            publish(1L, i);
+        }
+
+        // The drain takes the buffered events and blocks again on the overflow notice
+        emitter.permits.release();
+        waitUntil(() -> emitter.events.size() == 1 && emitter.waiting.get() == 1);
+        for (int i = 6; i <= 10; i++) {
+            publish(1L, i);
+        }
+        assertEquals(0, subscribers());
+        assertEquals(1, meterRegistry.get("monitoring.stream.dropped.subscribers").counter().count());
+
+        // The stream is completed once the blocked write returns, without the events buffered since
+        emitter.permits.release(100);
+        assertTrue(emitter.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(6, emitter.events.size());
+    }
+
+    @Test
+    public void testStalledWriteIsDroppedAndOthersKeepBeingServed() throws InterruptedException {
+        RecordingEmitter stalled = subscribe(1L, 0, null);
+        RecordingEmitter healthy = subscribe(2L, 100, null);
+        publish(1L, 1);
+        // Blocks the only dispatcher thread
+        waitUntil(() -> stalled.waiting.get() == 1);
+
+        Thread.sleep(100);
+        resultStreamHub.heartbeat();
+        assertEquals(1, subscribers());
+
+        publish(2L, 2);
+        waitUntil(() -> healthy.events.stream().anyMatch(event -> event.contains("\"monitoredEndpointId\":2")));
+
+        stalled.permits.release(100);
+        assertTrue(stalled.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReconnectingClientResumesAfterLastEventId() throws InterruptedException {
+        RecordingEmitter first = subscribe(1L, 100, null);
+        for (int i = 1; i <= 3; i++) {
+            publish(1L, i);
+        }
+        waitUntil(() -> first.events.size() == 3);
+        long firstId = eventId(first.events.get(0));
+
+        RecordingEmitter resumed = subscribe(1L, 100, firstId);
+        waitUntil(() -> resumed.events.size() == 2);
+        assertTrue(resumed.events.get(0).contains("\"monitoredEndpointId\":2"));
+        assertTrue(resumed.events.get(1).contains("\"monitoredEndpointId\":3"));
+        assertEquals(firstId + 1, eventId(resumed.events.get(0)));
+
+        // Only the last three events are kept, the ones after the first are partly gone
+        publish(1L, 4);
+        publish(1L, 5);
+        RecordingEmitter tooLate = subscribe(1L, 100, firstId);
+        waitUntil(() -> tooLate.events.size() == 1);
+        assertTrue(tooLate.events.get(0).startsWith("event:reset"));
+    }
+
+    @Test
+    public void testStreamsAreRefusedInClusterMode() {
+        properties.getCluster().setEnabled(true);
+        ResultStreamHub clustered = new ResultStreamHub(new ObjectMapper(), mock(MonitoredEndpointRepository.class),
+                properties, meterRegistry);
+        try {
+            assertThrows(ServiceUnavailableException.class, () -> clustered.subscribe(1L, null, null));
+        } finally {
+            clustered.shutdown();
+        }
+    }
+
+    private RecordingEmitter subscribe(Long ownerId, int permits, Long lastEventId) {
+        RecordingEmitter emitter = new RecordingEmitter(permits);
+        emitters.add(emitter);
+        resultStreamHub.subscribe(ownerId, null, lastEventId);
+        return emitter;
+    }
+
+    private void publish(Long ownerId, long endpointId) {
+        MonitoringResultDto result = new MonitoringResultDto();
+        result.setMonitoredEndpointId(endpointId);
+        result.setStatusCode(200);
+        resultStreamHub.publish(ownerId, result);
+    }
+
+    private double subscribers() {
+        return meterRegistry.get("monitoring.stream.subscribers").gauge().value();
+    }
+
+    private static long eventId(String event) {
+        Matcher matcher = EVENT_ID.matcher(event);
+        assertTrue(matcher.find());
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting");
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Records what is sent, each write waits for a permit
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<String> events = new CopyOnWriteArrayList<>();
+        private final Semaphore permits;
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private RecordingEmitter(int permits) {
+            this.permits = new Semaphore(permits);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            waiting.incrementAndGet();
+            permits.acquireUninterruptibly();
+            waiting.decrementAndGet();
+            events.add(builder.build().stream()
+                    .map(part -> part.getData().toString())
+                    .collect(Collectors.joining()));
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+    }
+}
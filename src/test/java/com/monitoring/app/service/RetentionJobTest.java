@@ -0,0 +1,222 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.scheduler.EndpointScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class RetentionJobTest {
+
+    private JdbcTemplate jdbcTemplate;
+    private EndpointScheduler endpointScheduler;
+    private MonitoringProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private LocalDateTime now;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:retention;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE monitored_endpoints (id BIGINT PRIMARY KEY, retention_days INT, " +
+                "retention_rows INT, deleted BOOLEAN NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE monitoring_results (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "endpoint_id BIGINT NOT NULL, check_date TIMESTAMP NOT NULL, payload_hash VARCHAR(64))");
+        jdbcTemplate.execute("CREATE TABLE result_rollups (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "resolution VARCHAR(8) NOT NULL, bucket_start TIMESTAMP NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE payload_contents (hash VARCHAR(64) PRIMARY KEY, orphaned_since TIMESTAMP)");
+
+        endpointScheduler = mock(EndpointScheduler.class);
+        when(endpointScheduler.runsClusterJobs()).thenReturn(true);
+        properties = new MonitoringProperties();
+        properties.getRetention().setPause(Duration.ZERO);
+        properties.getRetention().setBatchSize(3);
+        meterRegistry = new SimpleMeterRegistry();
+        now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE monitored_endpoints, monitoring_results, result_rollups, payload_contents");
+    }
+
+    @Test
+    public void testResultsAreKeptForTheirEndpointsDays() {
+        properties.getRetention().setResults(Duration.ofDays(30));
+        endpoint(1L, null, null);
+        endpoint(2L, 5, null);
+        for (int days : new int[]{1, 4, 6, 10, 29, 31, 40, 50}) {
+            result(1L, now.minusDays(days), null);
+            result(2L, now.minusDays(days), null);
+        }
+
+        job().purge();
+
+        // The global 30 days, and the endpoint's own 5 days over several batches
+        assertEquals(5, results(1L));
+        assertEquals(2, results(2L));
+        assertEquals(9, meterRegistry.get("monitoring.retention.purged").tag("table", "monitoring_results")
+                .counter().count());
+    }
+
+    @Test
+    public void testOnlyTheNewestRowsAreKept() {
+        properties.getRetention().setResults(Duration.ZERO);
+        properties.getRetention().setResultRows(4);
+        endpoint(1L, null, null);
+        endpoint(2L, null, 2);
+        endpoint(3L, null, null);
+        for (int i = 0; i < 10; i++) {
+            result(1L, now.minusMinutes(i), null);
+            result(2L, now.minusMinutes(i), null);
+        }
+        // Within the limit, nothing to purge
+        result(3L, now, null);
+        result(3L, now, null);
+        // Ties on the check date are broken by ID
+        result(1L, now.minusMinutes(3), null);
+
+        job().purge();
+
+        assertEquals(4, results(1L));
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L), minutesAgo(1L));
+        assertEquals(Arrays.asList(0L, 1L), minutesAgo(2L));
+        assertEquals(2, results(3L));
+        long newestTie = jdbcTemplate.queryForObject("SELECT MAX(id) FROM monitoring_results", Long.class);
+        assertEquals(1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM monitoring_results WHERE id = ?", Integer.class, newestTie));
+    }
+
+    @Test
+    public void testRollupsAreKeptForTheirResolution() {
+        properties.getRetention().setMinuteRollups(Duration.ofDays(7));
+        properties.getRetention().setHourRollups(Duration.ofDays(180));
+        properties.getRetention().setDayRollups(Duration.ZERO);
+        for (int days : new int[]{1, 6, 8, 9, 10, 11, 200}) {
+            rollup("MINUTE", now.minusDays(days));
+            rollup("HOUR", now.minusDays(days));
+            rollup("DAY", now.minusDays(days));
+        }
+
+        job().purge();
+
+        assertEquals(2, rollups("MINUTE"));
+        assertEquals(6, rollups("HOUR"));
+        assertEquals(7, rollups("DAY"));
+    }
+
+    @Test
+    public void testUnreferencedPayloadsArePurgedAfterTheGracePeriod() {
+        endpoint(1L, null, null);
+        payload("kept");
+        payload("orphan");
+        payload("reused");
+        result(1L, now, "kept");
+        RetentionJob retentionJob = job();
+
+        // First marked, not purged yet
+        retentionJob.purge();
+        assertNull(orphanedSince("kept"));
+        assertNotNull(orphanedSince("orphan"));
+        assertNotNull(orphanedSince("reused"));
+
+        // A writer takes one of them back into use within the grace period, then the period passes
+        result(1L, now, "reused");
+        jdbcTemplate.update("UPDATE payload_contents SET orphaned_since = ? WHERE orphaned_since IS NOT NULL",
+                Timestamp.valueOf(now.minusHours(2)));
+        retentionJob.purge();
+
+        assertEquals(Arrays.asList("kept", "reused"), jdbcTemplate.queryForList(
+                "SELECT hash FROM payload_contents ORDER BY hash", String.class));
+        assertEquals(1, meterRegistry.get("monitoring.retention.purged").tag("table", "payload_contents")
+                .counter().count());
+    }
+
+    @Test
+    public void testZeroGraceNeverPurgesPayloads() {
+        properties.getPayload().setOrphanGrace(Duration.ZERO);
+        payload("orphan");
+
+        job().purge();
+
+        assertNull(orphanedSince("orphan"));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM payload_contents", Integer.class));
+    }
+
+    @Test
+    public void testNothingIsPurgedWhereClusterJobsDoNotRun() {
+        when(endpointScheduler.runsClusterJobs()).thenReturn(false);
+        endpoint(1L, null, null);
+        result(1L, now.minusDays(100), null);
+        rollup("MINUTE", now.minusDays(100));
+        payload("orphan");
+
+        job().purge();
+
+        assertEquals(1, results(1L));
+        assertEquals(1, rollups("MINUTE"));
+        assertNull(orphanedSince("orphan"));
+    }
+
+    private RetentionJob job() {
+        return new RetentionJob(jdbcTemplate, endpointScheduler, properties, meterRegistry);
+    }
+
+    private void endpoint(Long id, Integer retentionDays, Integer retentionRows) {
+        jdbcTemplate.update("INSERT INTO monitored_endpoints (id, retention_days, retention_rows, deleted) " +
+                "VALUES (?, ?, ?, false)", id, retentionDays, retentionRows);
+    }
+
+    private void result(Long endpointId, LocalDateTime checkDate, String payloadHash) {
+        jdbcTemplate.update("INSERT INTO monitoring_results (endpoint_id, check_date, payload_hash) VALUES (?, ?, ?)",
+                endpointId, Timestamp.valueOf(checkDate), payloadHash);
+    }
+
+    private void rollup(String resolution, LocalDateTime bucketStart) {
+        jdbcTemplate.update("INSERT INTO result_rollups (resolution, bucket_start) VALUES (?, ?)",
+                resolution, Timestamp.valueOf(bucketStart));
+    }
+
+    private void payload(String hash) {
+        jdbcTemplate.update("INSERT INTO payload_contents (hash) VALUES (?)", hash);
+    }
+
+    private int results(Long endpointId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM monitoring_results WHERE endpoint_id = ?",
+                Integer.class, endpointId);
+    }
+
+    private List<Long> minutesAgo(Long endpointId) {
+        return jdbcTemplate.queryForList("SELECT DISTINCT check_date FROM monitoring_results WHERE endpoint_id = ? " +
+                "ORDER BY check_date DESC", Timestamp.class, endpointId).stream()
+                .map(checkDate -> Duration.between(checkDate.toLocalDateTime(), now).toMinutes())
+                .collect(Collectors.toList());
+    }
+
+    private int rollups(String resolution) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM result_rollups WHERE resolution = ?",
+                Integer.class, resolution);
+    }
+
+    private Timestamp orphanedSince(String hash) {
+        return jdbcTemplate.queryForObject("SELECT orphaned_since FROM payload_contents WHERE hash = ?",
+                Timestamp.class, hash);
+    }
+}
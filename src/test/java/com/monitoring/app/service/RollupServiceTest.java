@@ -0,0 +1,165 @@
+package com.monitoring.app.service;
+
+import com.monitoring.app.config.MonitoringProperties;
+import com.monitoring.app.dto.HistoryDto;
+import com.monitoring.app.exception.ResourceNotFoundException;
+import com.monitoring.app.model.RollupResolution;
+import com.monitoring.app.model.User;
+import com.monitoring.app.repository.MonitoredEndpointRepository;
+import com.monitoring.app.repository.ResultRollupRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RollupServiceTest {
+
+    private static final LocalDateTime TO = LocalDateTime.of(2024, 3, 10, 12, 0);
+
+    private JdbcTemplate jdbcTemplate;
+    private ResultRollupRepository resultRollupRepository;
+    private RollupService rollupService;
+    private User user;
+
+    @BeforeEach
+    public void setup() {
+        jdbcTemplate = new JdbcTemplate(new DriverManagerDataSource(
+                "jdbc:h2:mem:rollup;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE result_rollups (id BIGINT AUTO_INCREMENT PRIMARY KEY, " +
+                "endpoint_id BIGINT NOT NULL, resolution VARCHAR(8) NOT NULL, bucket_start TIMESTAMP NOT NULL, " +
+                "check_count BIGINT NOT NULL, error_count BIGINT NOT NULL, status_2xx BIGINT NOT NULL, " +
+                "status_3xx BIGINT NOT NULL, status_4xx BIGINT NOT NULL, status_5xx BIGINT NOT NULL, " +
+                "latency_count BIGINT NOT NULL, latency_sum BIGINT NOT NULL, latency_min BIGINT, latency_max BIGINT, " +
+                "CONSTRAINT uk_result_rollups_bucket UNIQUE (endpoint_id, resolution, bucket_start))");
+
+        resultRollupRepository = mock(ResultRollupRepository.class);
+        MonitoredEndpointRepository monitoredEndpointRepository = mock(MonitoredEndpointRepository.class);
+        when(monitoredEndpointRepository.findOwnerIdById(anyLong())).thenReturn(Optional.of(1L));
+        rollupService = new RollupService(resultRollupRepository, monitoredEndpointRepository, jdbcTemplate,
+                new MonitoringProperties());
+
+        user = new User();
+        user.setId(1L);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        jdbcTemplate.execute("DROP TABLE result_rollups");
+    }
+
+    @Test
+    public void testBatchesAddUpInEveryResolution() {
+        LocalDateTime minute = LocalDateTime.of(2024, 3, 10, 10, 15);
+        rollupService.rollUp(Arrays.asList(
+                result(minute.plusSeconds(5), 200, 40L),
+                result(minute.plusSeconds(30), 301, 10L),
+                // Failed without a response, counted but not part of the latency
+                result(minute.plusSeconds(50), null, null)));
+        rollupService.rollUp(Arrays.asList(
+                result(minute.plusSeconds(55), 503, 90L),
+                result(minute.plusMinutes(1), 404, 5L)));
+
+        Map<String, Object> first = bucket(RollupResolution.MINUTE, minute);
+        assertEquals(4L, first.get("CHECK_COUNT"));
+        assertEquals(2L, first.get("ERROR_COUNT"));
+        assertEquals(1L, first.get("STATUS_2XX"));
+        assertEquals(1L, first.get("STATUS_3XX"));
+        assertEquals(0L, first.get("STATUS_4XX"));
+        assertEquals(1L, first.get("STATUS_5XX"));
+        assertEquals(3L, first.get("LATENCY_COUNT"));
+        assertEquals(140L, first.get("LATENCY_SUM"));
+        assertEquals(10L, first.get("LATENCY_MIN"));
+        assertEquals(90L, first.get("LATENCY_MAX"));
+
+        Map<String, Object> next = bucket(RollupResolution.MINUTE, minute.plusMinutes(1));
+        assertEquals(1L, next.get("CHECK_COUNT"));
+        assertEquals(1L, next.get("STATUS_4XX"));
+        assertEquals(5L, next.get("LATENCY_MIN"));
+
+        for (RollupResolution resolution : Arrays.asList(RollupResolution.HOUR, RollupResolution.DAY)) {
+            Map<String, Object> coarse = bucket(resolution, resolution.truncate(minute));
+            assertEquals(5L, coarse.get("CHECK_COUNT"));
+            assertEquals(3L, coarse.get("ERROR_COUNT"));
+            assertEquals(4L, coarse.get("LATENCY_COUNT"));
+            assertEquals(145L, coarse.get("LATENCY_SUM"));
+            assertEquals(5L, coarse.get("LATENCY_MIN"));
+            assertEquals(90L, coarse.get("LATENCY_MAX"));
+        }
+        assertEquals(4, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM result_rollups", Integer.class));
+    }
+
+    @Test
+    public void testLatencyOfABucketWithoutResponseTimesIsFilledLater() {
+        LocalDateTime minute = LocalDateTime.of(2024, 3, 10, 10, 15);
+        rollupService.rollUp(Collections.singletonList(result(minute, null, null)));
+        assertNull(bucket(RollupResolution.MINUTE, minute).get("LATENCY_MIN"));
+
+        rollupService.rollUp(Collections.singletonList(result(minute.plusSeconds(10), 200, 25L)));
+        Map<String, Object> bucket = bucket(RollupResolution.MINUTE, minute);
+        assertEquals(25L, bucket.get("LATENCY_MIN"));
+        assertEquals(25L, bucket.get("LATENCY_MAX"));
+
+        // And a later batch without response times keeps them
+        rollupService.rollUp(Collections.singletonList(result(minute.plusSeconds(20), null, null)));
+        bucket = bucket(RollupResolution.MINUTE, minute);
+        assertEquals(3L, bucket.get("CHECK_COUNT"));
+        assertEquals(25L, bucket.get("LATENCY_MIN"));
+        assertEquals(25L, bucket.get("LATENCY_MAX"));
+    }
+
+    @Test
+    public void testFinestResolutionWithinTheMaximumNumberOfPoints() {
+        // 720 points by default: 11 hours of minutes, 12 hours no longer
+        assertEquals(RollupResolution.MINUTE, history(TO.minusHours(11), null).getResolution());
+        assertEquals(RollupResolution.HOUR, history(TO.minusHours(12), null).getResolution());
+        assertEquals(RollupResolution.HOUR, history(TO.minusDays(29), null).getResolution());
+        assertEquals(RollupResolution.DAY, history(TO.minusDays(30), null).getResolution());
+        // Beyond the days, the days are returned anyway
+        assertEquals(RollupResolution.DAY, history(TO.minusDays(1000), null).getResolution());
+
+        // An explicit resolution wins, the range start is widened to its bucket
+        LocalDateTime from = TO.minusMinutes(90);
+        assertEquals(RollupResolution.HOUR, history(from, RollupResolution.HOUR).getResolution());
+        verify(resultRollupRepository).findBuckets(1L, RollupResolution.HOUR, LocalDateTime.of(2024, 3, 10, 10, 0), TO);
+    }
+
+    @Test
+    public void testHistoryOfAnotherUsersEndpointIsNotFound() {
+        User other = new User();
+        other.setId(2L);
+        assertThrows(ResourceNotFoundException.class,
+                () -> rollupService.getHistory(1L, other, TO.minusHours(1), TO, null));
+        verify(resultRollupRepository, never()).findBuckets(any(), any(), any(), any());
+    }
+
+    private HistoryDto history(LocalDateTime from, RollupResolution resolution) {
+        return rollupService.getHistory(1L, user, from, TO, resolution);
+    }
+
+    private Map<String, Object> bucket(RollupResolution resolution, LocalDateTime bucketStart) {
+        return jdbcTemplate.queryForMap(
+                "SELECT * FROM result_rollups WHERE endpoint_id = 1 AND resolution = ? AND bucket_start = ?",
+                resolution.name(), bucketStart);
+    }
+
+    private static PendingResult result(LocalDateTime checkDate, Integer statusCode, Long responseTime) {
+        return new PendingResult(1L, checkDate, statusCode, null, null, null, responseTime, false);
+    }
+}